@@ -0,0 +1,368 @@
+package com.nasarover.loadtest;
+
+import com.nasarover.model.RoverMission;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for the NASA Mars Rover Photos API, for load tests that the rate limits of
+ * api.nasa.gov do not allow. It implements {@code /mars-photos/api/v1/rovers/{rover}/photos}
+ * with the {@code earth_date}, {@code page} and {@code camera} parameters and serves synthetic images of a
+ * fixed size under {@code /images/}.
+ * <p>
+ * Faults can be injected into every response: a latency before the response headers, a
+ * bandwidth cap on the body, a share of 429 and 503 responses, and a redirect in front of
+ * each image. The settings may be changed while the server runs.
+ */
+public class FakeNasaApi implements Closeable {
+
+    /** Photos per page, as the real API pages them. */
+    public static final int PAGE_SIZE = 25;
+
+    private static final Pattern PHOTOS_PATH = Pattern.compile("/mars-photos/api/v1/rovers/([^/]+)/photos");
+    private static final Pattern IMAGE_PATH = Pattern.compile("/images/(\\d+)\\.jpg");
+    private static final String[] CAMERAS = {"FHAZ", "RHAZ", "MAST", "CHEMCAM", "NAVCAM"};
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String baseUrl;
+
+    private volatile int photosPerDay = 30;
+    private volatile byte[] image = newImage(256 * 1024);
+    private volatile long latencyMillis;
+    private volatile long bytesPerSecond;
+    private volatile double rateLimitRate;
+    private volatile double serverErrorRate;
+    private volatile boolean redirectImages;
+
+    private final LongAdder apiRequests = new LongAdder();
+    private final LongAdder imageRequests = new LongAdder();
+    private final LongAdder bytesServed = new LongAdder();
+    private final LongAdder injectedFaults = new LongAdder();
+
+    /**
+     * Starts a server on a free port of the loopback interface.
+     *
+     * @param threads the number of threads serving requests
+     * @throws IOException if the server cannot be started
+     */
+    public FakeNasaApi(int threads) throws IOException {
+        this(0, threads);
+    }
+
+    /**
+     * Starts a server on the loopback interface.
+     *
+     * @param port the port, or 0 for a free one
+     * @param threads the number of threads serving requests; injected latency holds a thread
+     * @throws IOException if the server cannot be started
+     */
+    public FakeNasaApi(int port, int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        server.setExecutor(executor);
+        server.createContext("/mars-photos/api/v1/rovers/", this::handlePhotos);
+        server.createContext("/images/", this::handleImage);
+        server.createContext("/redirect/", this::handleRedirect);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Gets the URL to configure as {@code nasa.api.base.url}.
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public void setPhotosPerDay(int photosPerDay) {
+        this.photosPerDay = Math.max(0, photosPerDay);
+    }
+
+    /**
+     * Sets the size of the served images. Each image starts with its id, so no two are equal.
+     */
+    public void setImageSize(int bytes) {
+        this.image = newImage(Math.max(Long.BYTES, bytes));
+    }
+
+    /**
+     * Sets the delay before the headers of every response.
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = Math.max(0, latencyMillis);
+    }
+
+    /**
+     * Caps the rate each response body is sent at.
+     *
+     * @param bytesPerSecond the cap, or 0 for none
+     */
+    public void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+    }
+
+    /**
+     * Sets the share of API requests answered with 429 and a one second Retry-After.
+     */
+    public void setRateLimitRate(double rate) {
+        this.rateLimitRate = rate;
+    }
+
+    /**
+     * Sets the share of API and image requests answered with 503.
+     */
+    public void setServerErrorRate(double rate) {
+        this.serverErrorRate = rate;
+    }
+
+    /**
+     * Makes image URLs point at a redirect to the image, as the real API's image hosts do.
+     */
+    public void setRedirectImages(boolean redirectImages) {
+        this.redirectImages = redirectImages;
+    }
+
+    public long getApiRequests() {
+        return apiRequests.sum();
+    }
+
+    public long getImageRequests() {
+        return imageRequests.sum();
+    }
+
+    public long getBytesServed() {
+        return bytesServed.sum();
+    }
+
+    /**
+     * Gets the number of 429 and 503 responses sent.
+     */
+    public long getInjectedFaults() {
+        return injectedFaults.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handlePhotos(HttpExchange exchange) throws IOException {
+        apiRequests.increment();
+        try {
+            delay();
+            if (chance(rateLimitRate)) {
+                injectedFaults.increment();
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                exchange.getResponseHeaders().add("X-RateLimit-Remaining", "0");
+                send(exchange, 429, "application/json", "{\"error\":\"OVER_RATE_LIMIT\"}");
+                return;
+            }
+            if (injectServerError(exchange)) {
+                return;
+            }
+            Matcher path = PHOTOS_PATH.matcher(exchange.getRequestURI().getPath());
+            RoverMission rover = path.matches() ? RoverMission.fromName(path.group(1)) : null;
+            if (rover == null) {
+                send(exchange, 400, "application/json", "{\"errors\":\"Invalid Rover Name\"}");
+                return;
+            }
+            Map<String, String> query = query(exchange.getRequestURI());
+            LocalDate date;
+            int page;
+            try {
+                date = LocalDate.parse(query.getOrDefault("earth_date", ""));
+                page = Integer.parseInt(query.getOrDefault("page", "0"));
+            } catch (DateTimeException | NumberFormatException e) {
+                send(exchange, 400, "application/json", "{\"errors\":\"Invalid parameters\"}");
+                return;
+            }
+            exchange.getResponseHeaders().add("X-RateLimit-Limit", "1000000");
+            exchange.getResponseHeaders().add("X-RateLimit-Remaining", "999999");
+            send(exchange, 200, "application/json", photosJson(rover, date, page, query.get("camera")));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleImage(HttpExchange exchange) throws IOException {
+        imageRequests.increment();
+        try {
+            delay();
+            if (injectServerError(exchange)) {
+                return;
+            }
+            Matcher path = IMAGE_PATH.matcher(exchange.getRequestURI().getPath());
+            if (!path.matches()) {
+                send(exchange, 404, "text/plain", "Not found");
+                return;
+            }
+            byte[] body = image.clone();
+            ByteBuffer.wrap(body).putLong(Long.parseLong(path.group(1)));
+            exchange.getResponseHeaders().add("Content-Type", "image/jpeg");
+            exchange.getResponseHeaders().add("ETag", "\"" + path.group(1) + "-" + body.length + "\"");
+            exchange.sendResponseHeaders(200, body.length);
+            writeBody(exchange, body);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleRedirect(HttpExchange exchange) throws IOException {
+        try {
+            delay();
+            String target = exchange.getRequestURI().getPath().substring("/redirect".length());
+            exchange.getResponseHeaders().add("Location", target);
+            exchange.sendResponseHeaders(302, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Builds the photos of a rover and date: ids, sols and cameras follow from the date, so
+     * repeated requests return the same photos. Like the real API, a camera parameter narrows
+     * the list to that camera's photos before it is paged.
+     */
+    private String photosJson(RoverMission rover, LocalDate date, int page, String cameraParam) {
+        List<Integer> indexes = new ArrayList<>(photosPerDay);
+        for (int i = 0; i < photosPerDay; i++) {
+            if (cameraParam == null || CAMERAS[i % CAMERAS.length].equalsIgnoreCase(cameraParam)) {
+                indexes.add(i);
+            }
+        }
+        int count = indexes.size();
+        int from = 0;
+        int to = count;
+        if (page > 0) {
+            from = Math.min(count, (page - 1) * PAGE_SIZE);
+            to = Math.min(count, page * PAGE_SIZE);
+        }
+        long sol = Math.max(0, rover.solOn(date));
+        String imagePrefix = baseUrl + (redirectImages ? "/redirect/images/" : "/images/");
+        StringBuilder json = new StringBuilder(128 + (to - from) * 400);
+        json.append("{\"photos\":[");
+        for (int n = from; n < to; n++) {
+            int i = indexes.get(n);
+            long id = (date.toEpochDay() * 8 + rover.ordinal()) * 10_000 + i;
+            String camera = CAMERAS[i % CAMERAS.length];
+            if (n > from) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(id)
+                .append(",\"sol\":").append(sol)
+                .append(",\"camera\":{\"id\":").append(i % CAMERAS.length + 1)
+                .append(",\"name\":\"").append(camera)
+                .append("\",\"rover_id\":").append(rover.ordinal() + 1)
+                .append(",\"full_name\":\"").append(camera).append(" Camera\"}")
+                .append(",\"img_src\":\"").append(imagePrefix).append(id).append(".jpg\"")
+                .append(",\"earth_date\":\"").append(date)
+                .append("\",\"rover\":{\"id\":").append(rover.ordinal() + 1)
+                .append(",\"name\":\"").append(rover.getDisplayName())
+                .append("\",\"landing_date\":\"").append(rover.getLandingDate())
+                .append("\",\"status\":\"active\"}}");
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    private boolean injectServerError(HttpExchange exchange) throws IOException {
+        if (!chance(serverErrorRate)) {
+            return false;
+        }
+        injectedFaults.increment();
+        send(exchange, 503, "text/plain", "Service Unavailable");
+        return true;
+    }
+
+    private void send(HttpExchange exchange, int status, String contentType, String text) throws IOException {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        writeBody(exchange, body);
+    }
+
+    /**
+     * Writes a body in chunks, sleeping between them to keep under the bandwidth cap.
+     */
+    private void writeBody(HttpExchange exchange, byte[] body) throws IOException {
+        long cap = bytesPerSecond;
+        long start = System.nanoTime();
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int offset = 0; offset < body.length; offset += CHUNK_SIZE) {
+                int length = Math.min(CHUNK_SIZE, body.length - offset);
+                out.write(body, offset, length);
+                bytesServed.add(length);
+                if (cap > 0) {
+                    long due = start + TimeUnit.SECONDS.toNanos(offset + length) / cap;
+                    sleepNanos(due - System.nanoTime());
+                }
+            }
+        }
+    }
+
+    private void delay() throws IOException {
+        sleepNanos(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+    }
+
+    private static void sleepNanos(long nanos) throws IOException {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    private static boolean chance(double rate) {
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private static Map<String, String> query(URI uri) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = uri.getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0) {
+                parameters.put(parameter.substring(0, equals), parameter.substring(equals + 1));
+            }
+        }
+        return parameters;
+    }
+
+    private static byte[] newImage(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,158 @@
+package com.nasarover.loadtest;
+
+import com.nasarover.config.AppConfig;
+import com.nasarover.service.DateParser;
+import com.nasarover.service.DatePipeline;
+import com.nasarover.service.RoverImageService;
+import com.nasarover.util.ArchiveIndex;
+import com.nasarover.util.LineReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * Runs the whole downloader, from the dates file to the images on disk, against a
+ * {@link FakeNasaApi} and reports the end-to-end throughput.
+ * <p>
+ * Arguments are {@code key=value} pairs. The harness's own keys shape the load and the fake
+ * server; any other key containing a dot is passed on as an application property, e.g.
+ * {@code download.concurrency=16}.
+ * <pre>
+ * java -cp target/benchmarks.jar com.nasarover.loadtest.LoadHarness dates=60 photos=50 latencyMs=20
+ * </pre>
+ */
+public class LoadHarness {
+
+    private static final LocalDate FIRST_DATE = LocalDate.of(2016, 1, 1);
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("dates", "30");
+        DEFAULTS.put("photos", "30");
+        DEFAULTS.put("imageSize", "262144");
+        DEFAULTS.put("latencyMs", "0");
+        DEFAULTS.put("bandwidth", "0");
+        DEFAULTS.put("rateLimitRate", "0");
+        DEFAULTS.put("errorRate", "0");
+        DEFAULTS.put("redirects", "false");
+        DEFAULTS.put("serverThreads", "64");
+        DEFAULTS.put("keep", "false");
+    }
+
+    /**
+     * Main method to run a load test.
+     *
+     * @param args the settings as key=value pairs; "help" lists them
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> settings = new LinkedHashMap<>(DEFAULTS);
+        Properties appProperties = new Properties();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            String key = equals > 0 ? arg.substring(0, equals) : arg;
+            if (equals > 0 && DEFAULTS.containsKey(key)) {
+                settings.put(key, arg.substring(equals + 1));
+            } else if (equals > 0 && key.contains(".")) {
+                appProperties.setProperty(key, arg.substring(equals + 1));
+            } else {
+                System.err.println("Usage: LoadHarness [key=value ...] with keys (and defaults) " + DEFAULTS
+                        + " or application properties such as download.concurrency=16");
+                System.exit("help".equals(arg) ? 0 : 2);
+                return;
+            }
+        }
+
+        int dates = Integer.parseInt(settings.get("dates"));
+        Path workDir = Files.createTempDirectory("nasa_rover_load");
+        try (FakeNasaApi api = new FakeNasaApi(Integer.parseInt(settings.get("serverThreads")))) {
+            api.setPhotosPerDay(Integer.parseInt(settings.get("photos")));
+            api.setImageSize(Integer.parseInt(settings.get("imageSize")));
+            api.setLatencyMillis(Long.parseLong(settings.get("latencyMs")));
+            api.setBytesPerSecond(Long.parseLong(settings.get("bandwidth")));
+            api.setRateLimitRate(Double.parseDouble(settings.get("rateLimitRate")));
+            api.setServerErrorRate(Double.parseDouble(settings.get("errorRate")));
+            api.setRedirectImages(Boolean.parseBoolean(settings.get("redirects")));
+
+            Path datesFile = workDir.resolve("dates.txt");
+            Files.write(datesFile, (FIRST_DATE + ".." + FIRST_DATE.plusDays(dates - 1L) + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            Properties overrides = new Properties();
+            overrides.setProperty("rovers", "curiosity");
+            overrides.putAll(appProperties);
+            overrides.setProperty("nasa.api.base.url", api.getBaseUrl());
+            overrides.setProperty("output.directory", workDir.resolve("images").toString());
+            overrides.setProperty("dates.file.path", datesFile.toString());
+            AppConfig config = new AppConfig(overrides);
+            Files.createDirectories(workDir.resolve("images"));
+
+            System.out.println("Load: " + settings);
+            long start = System.nanoTime();
+            DatePipeline.Summary summary;
+            try (RoverImageService service = new RoverImageService(config);
+                 LineReader lines = new LineReader(datesFile)) {
+                DatePipeline pipeline = new DatePipeline(new DateParser(config.getRovers()), service,
+                        config.getPipelineFetchWorkers(), config.getPipelineDownloadWorkers(),
+                        config.getPipelineQueueCapacity());
+                summary = pipeline.run(lines);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            long images = countFiles(workDir.resolve("images"));
+            System.out.printf("Elapsed:        %.2f s%n", seconds);
+            System.out.printf("Dates:          %d of %d with images (%.1f dates/s)%n",
+                    summary.count(DatePipeline.Outcome.SUCCESS), summary.getTotal(), summary.getTotal() / seconds);
+            System.out.printf("Images:         %d (%.1f images/s)%n", images, images / seconds);
+            System.out.printf("Transferred:    %.1f MB (%.1f MB/s)%n",
+                    api.getBytesServed() / 1e6, api.getBytesServed() / 1e6 / seconds);
+            System.out.printf("Requests:       %d API, %d image%n", api.getApiRequests(), api.getImageRequests());
+            System.out.printf("Faults:         %d injected, %d retried requests%n",
+                    api.getInjectedFaults(), summary.getTotalRetries());
+        } finally {
+            if (Boolean.parseBoolean(settings.get("keep"))) {
+                System.out.println("Output kept in " + workDir);
+            } else {
+                deleteRecursively(workDir);
+            }
+        }
+    }
+
+    /**
+     * Counts the images written, as files or as entries of archive indexes.
+     */
+    private static long countFiles(Path directory) throws IOException {
+        long count = 0;
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                // Leaves out the content store and caches, kept in dot directories
+                if (directory.relativize(file).getName(0).toString().startsWith(".")) {
+                    continue;
+                }
+                if (file.toString().endsWith(".jpg")) {
+                    count++;
+                } else if (file.toString().endsWith(".idx")) {
+                    count += ArchiveIndex.read(file.resolveSibling(
+                            file.getFileName().toString().replaceFirst("\\.idx$", ""))).getEntries().size();
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.nasarover.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the Jackson deserialization of photo list responses, configured as the
+ * service configures it, for pages from 10 to 10k photos.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoverResponseBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int photos;
+
+    private ObjectMapper objectMapper;
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        body = response(photos);
+    }
+
+    @Benchmark
+    public RoverResponse deserialize() throws IOException {
+        return objectMapper.readValue(body, RoverResponse.class);
+    }
+
+    /**
+     * Builds a response shaped like the API's, including the fields the model ignores.
+     */
+    static byte[] response(int count) {
+        StringBuilder json = new StringBuilder("{\"photos\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(102693 + i)
+                .append(",\"sol\":1000,\"camera\":{\"id\":20,\"name\":\"FHAZ\",\"rover_id\":5,")
+                .append("\"full_name\":\"Front Hazard Avoidance Camera\"},")
+                .append("\"img_src\":\"https://mars.nasa.gov/msl-raw-images/proj/msl/redops/ods/surface/sol/01000/opgs/")
+                .append("edr/fcam/FRB_486265257EDR_F0481570FHAZ00323M_").append(i).append(".JPG\",")
+                .append("\"earth_date\":\"2015-05-30\",\"rover\":{\"id\":5,\"name\":\"Curiosity\",")
+                .append("\"landing_date\":\"2012-08-06\",\"launch_date\":\"2011-11-26\",\"status\":\"active\",")
+                .append("\"max_sol\":4102,\"max_date\":\"2024-02-19\",\"total_photos\":695670}}");
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
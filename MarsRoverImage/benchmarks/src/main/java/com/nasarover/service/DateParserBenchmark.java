@@ -0,0 +1,64 @@
+package com.nasarover.service;
+
+import com.nasarover.exception.DateParsingException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of date parsing: {@link DateParser#parseDate(String)} on valid and invalid
+ * input, and the hand-written parsing path against trying each formatter in turn.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DateParserBenchmark {
+
+    @Param({
+        // Valid, one per supported shape
+        "02/27/17", "June 2, 2018", "Jul-13-2016", "2017-02-27", "June 2",
+        // Invalid: a day the month does not have, a future date, and no date at all
+        "April 31, 2018", "01/01/99", "Invalid Date Format"
+    })
+    public String input;
+
+    private DateParser parser;
+
+    @Setup
+    public void setUp() {
+        parser = new DateParser();
+    }
+
+    @Benchmark
+    public Object parseDate() {
+        try {
+            return parser.parseDate(input);
+        } catch (DateParsingException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public LocalDate fastPath() {
+        return parser.tryParse(input);
+    }
+
+    @Benchmark
+    public LocalDate formatters() {
+        return parser.parseWithFormatters(input);
+    }
+}
@@ -0,0 +1,121 @@
+package com.nasarover.service;
+
+import com.nasarover.config.AppConfig;
+import com.nasarover.model.Photo;
+import com.nasarover.model.RoverMission;
+import com.nasarover.model.RoverResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of image download throughput, in photos per second, against the download
+ * concurrency level. Each simulated download sleeps for a fixed latency, so the results
+ * reflect how well the download engine overlaps round trips rather than real network
+ * bandwidth.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DownloadConcurrencyBenchmark {
+
+    private static final int PHOTO_COUNT = 200;
+    private static final long LATENCY_MILLIS = 20;
+    private static final LocalDate DATE = LocalDate.of(2017, 2, 27);
+
+    @Param({"1", "2", "4", "8", "16", "32", "64"})
+    public int concurrency;
+
+    @Param({"false"})
+    public boolean virtualThreads;
+
+    private Path outputDir;
+    private SimulatedService service;
+
+    @Setup
+    public void setUp() throws IOException {
+        outputDir = Files.createTempDirectory("nasa_rover_benchmark");
+        Properties overrides = new Properties();
+        overrides.setProperty("output.directory", outputDir.toString());
+        overrides.setProperty("download.concurrency", Integer.toString(concurrency));
+        overrides.setProperty("download.virtual.threads", Boolean.toString(virtualThreads));
+        // The simulated photo list replaces the API call, and nothing is recorded between runs
+        overrides.setProperty("api.streaming.parse", "false");
+        overrides.setProperty("manifest.enabled", "false");
+        overrides.setProperty("photo.index.enabled", "false");
+        overrides.setProperty("photo.filter", "");
+        service = new SimulatedService(new AppConfig(overrides));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        service.close();
+        Files.walk(outputDir)
+            .sorted(Comparator.reverseOrder())
+            .map(Path::toFile)
+            .forEach(File::delete);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PHOTO_COUNT)
+    public boolean downloadRoverImages() {
+        return service.downloadRoverImages(RoverMission.CURIOSITY, DATE);
+    }
+
+    /**
+     * Service returning synthetic photos and simulating download latency.
+     */
+    private static class SimulatedService extends RoverImageService {
+
+        SimulatedService(AppConfig config) {
+            super(config);
+        }
+
+        @Override
+        RoverResponse fetchRoverData(RoverMission rover, LocalDate date) {
+            List<Photo> photos = new ArrayList<>();
+            for (int i = 1; i <= PHOTO_COUNT; i++) {
+                Photo photo = new Photo();
+                photo.setId(i);
+                photo.setImgSrc("https://example.com/photo" + i + ".jpg");
+                photos.add(photo);
+            }
+            RoverResponse response = new RoverResponse();
+            response.setPhotos(photos);
+            return response;
+        }
+
+        @Override
+        void downloadImage(Photo photo, String outputDir) {
+            try {
+                Thread.sleep(LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.nasarover.util;
+
+import com.nasarover.config.AppConfig;
+import com.nasarover.exception.ImageDownloadException;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of image downloads from a local HTTP server, so the results reflect the client
+ * and the disk rather than the network: into memory with {@link HttpUtil#downloadFile} and
+ * to disk with {@link HttpUtil#downloadToFile}, as the service downloads images.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DownloadBenchmark {
+
+    @Param({"65536", "1048576", "8388608"})
+    public int size;
+
+    private HttpServer server;
+    private HttpTransport transport;
+    private String url;
+    private Path outputDir;
+    private Path target;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] image = new byte[size];
+        ThreadLocalRandom.current().nextBytes(image);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/image.jpg", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "image/jpeg");
+            exchange.sendResponseHeaders(200, image.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(image);
+            }
+        });
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/image.jpg";
+        transport = new HttpTransport(new AppConfig());
+        outputDir = Files.createTempDirectory("nasa_rover_benchmark");
+        target = outputDir.resolve("image.jpg");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        transport.close();
+        server.stop(0);
+        Files.walk(outputDir)
+            .sorted(Comparator.reverseOrder())
+            .map(Path::toFile)
+            .forEach(File::delete);
+    }
+
+    @Benchmark
+    public byte[] downloadFile() throws ImageDownloadException {
+        return HttpUtil.downloadFile(transport, url);
+    }
+
+    @Benchmark
+    public DownloadResult downloadToFile() throws ImageDownloadException {
+        return HttpUtil.downloadToFile(transport, url, target);
+    }
+}
@@ -0,0 +1,69 @@
+package com.nasarover.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the file write behind each image download: the body is copied through the
+ * pooled buffer into the part file and hashed on the way, without any HTTP, so changes to the
+ * write path can be measured on their own.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileWriteBenchmark {
+
+    @Param({"65536", "1048576", "8388608"})
+    public int size;
+
+    private byte[] image;
+    private Path outputDir;
+    private Path target;
+
+    @Setup
+    public void setUp() throws IOException {
+        image = new byte[size];
+        ThreadLocalRandom.current().nextBytes(image);
+        outputDir = Files.createTempDirectory("nasa_rover_benchmark");
+        target = outputDir.resolve("image.jpg.part");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.walk(outputDir)
+            .sorted(Comparator.reverseOrder())
+            .map(Path::toFile)
+            .forEach(File::delete);
+    }
+
+    @Benchmark
+    public long write() throws IOException, NoSuchAlgorithmException {
+        return HttpUtil.transfer(Channels.newChannel(new ByteArrayInputStream(image)), target, 0,
+                MessageDigest.getInstance("SHA-256"));
+    }
+}
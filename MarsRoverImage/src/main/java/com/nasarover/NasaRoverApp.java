@@ -1,35 +1,62 @@
 package com.nasarover;
 
 import com.nasarover.config.AppConfig;
-import com.nasarover.exception.DateParsingException;
+import com.nasarover.metrics.MetricsExporter;
+import com.nasarover.metrics.MetricsRegistry;
+import com.nasarover.model.Photo;
+import com.nasarover.model.RoverMission;
+import com.nasarover.server.ImageDirectory;
+import com.nasarover.server.ImageServer;
 import com.nasarover.service.DateParser;
+import com.nasarover.service.DatePipeline;
+import com.nasarover.service.PhotoIndex;
+import com.nasarover.service.PollingDaemon;
 import com.nasarover.service.RoverImageService;
+import com.nasarover.util.LineReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.Duration;
 import java.time.LocalDate;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main application class for the NASA Mars Rover Image Downloader.
  * This application reads dates from a text file, queries the NASA Mars Rover API,
- * and downloads images taken on those dates.
+ * and downloads the images each configured rover took on those dates.
+ * <p>
+ * Run with {@code query key=value ...} it instead lists the photos recorded in the local
+ * photo index, without using the network; see {@link #query(AppConfig, String[])}. Run with
+ * {@code daemon}, or with daemon.enabled set, it keeps running and polls the recent dates
+ * until it is stopped; see {@link PollingDaemon}. Run with {@code serve} it serves the
+ * downloaded images over HTTP until it is stopped; see {@link ImageServer}.
  */
 public class NasaRoverApp {
     private static final Logger logger = LoggerFactory.getLogger(NasaRoverApp.class);
 
     public static void main(String[] args) {
+        if (args.length > 0 && "query".equals(args[0])) {
+            System.exit(query(new AppConfig(), Arrays.copyOfRange(args, 1, args.length)));
+            return;
+        }
+        if (args.length > 0 && "serve".equals(args[0])) {
+            System.exit(serve(new AppConfig()));
+            return;
+        }
+        
         logger.info("Starting NASA Mars Rover Image Downloader");
         
         AppConfig config = new AppConfig();
-        DateParser dateParser = new DateParser();
+        DateParser dateParser = new DateParser(config.getRovers());
         RoverImageService roverService = new RoverImageService(config);
         
         // Create output directory if it doesn't exist
@@ -44,75 +71,256 @@ public class NasaRoverApp {
             System.exit(1);
         }
         
-        // Read dates from file
-        List<String> dateStrings = readDatesFromFile(config.getDatesFilePath());
-        if (dateStrings.isEmpty()) {
-            logger.error("No dates found in the dates file. Exiting.");
+        if ((args.length > 0 && "daemon".equals(args[0])) || config.isDaemonEnabled()) {
+            if (!runDaemon(config, dateParser, roverService)) {
+                System.exit(1);
+            }
+            return;
+        }
+        
+        // Read dates from file as the pipeline takes them
+        LineReader dateStrings = openDatesFile(config.getDatesFilePath());
+        if (dateStrings == null) {
+            roverService.close();
             System.exit(1);
+            return;
         }
         
-        // Process each date
-        int successCount = 0;
-        int invalidDateCount = 0;
-        int noImagesCount = 0;
+        // Expose the metrics while the pipeline runs
+        MetricsExporter metrics = new MetricsExporter(MetricsRegistry.getDefault(), config);
         
-        for (String dateString : dateStrings) {
-            logger.info("Processing date: {}", dateString);
-            try {
-                LocalDate date = dateParser.parseDate(dateString);
-                boolean success = roverService.downloadRoverImages(date);
-                if (success) {
-                    successCount++;
-                    logger.info("Successfully downloaded images for date: {}", dateString);
-                } else {
-                    noImagesCount++;
-                    logger.info("No images found for date: {}", dateString);
-                }
-            } catch (DateParsingException e) {
-                invalidDateCount++;
-                // Print a user-friendly error message
-                System.out.println("ERROR: " + e.getMessage());
-                logger.error("Invalid date {}: {}", dateString, e.getMessage());
-            } catch (Exception e) {
-                logger.error("Error processing date {}: {}", dateString, e.getMessage());
-                System.out.println("ERROR: Failed to process date " + dateString + ": " + e.getMessage());
-            }
+        // Process the dates through the parse -> fetch -> download pipeline
+        DatePipeline pipeline = new DatePipeline(dateParser, roverService,
+                config.getPipelineFetchWorkers(), config.getPipelineDownloadWorkers(),
+                config.getPipelineQueueCapacity());
+        DatePipeline.Summary summary;
+        try {
+            summary = pipeline.run(dateStrings);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while processing dates");
+            System.exit(1);
+            return;
+        } finally {
+            closeQuietly(dateStrings);
+            roverService.close();
+            metrics.close();
         }
         
+        int successCount = summary.count(DatePipeline.Outcome.SUCCESS);
+        int invalidDateCount = summary.count(DatePipeline.Outcome.INVALID_DATE);
+        int noImagesCount = summary.count(DatePipeline.Outcome.NO_IMAGES);
+        
         // Print summary
         logger.info("Image download complete. Summary:");
-        logger.info("- Successfully processed dates: {}/{}", successCount, dateStrings.size());
+        logger.info("- Successfully processed dates: {}/{}", successCount, summary.getTotal());
         logger.info("- Invalid dates: {}", invalidDateCount);
         logger.info("- Dates with no images: {}", noImagesCount);
+        logger.info("- Unique dates fetched: {}", summary.getUniqueDates());
+        logger.info("- Retried requests: {}", summary.getTotalRetries());
+        for (RoverMission rover : summary.getRovers()) {
+            logger.info("- {}: {} dates with images, {} without, {} failed", rover.getDisplayName(),
+                    summary.count(rover, DatePipeline.Outcome.SUCCESS),
+                    summary.count(rover, DatePipeline.Outcome.NO_IMAGES),
+                    summary.count(rover, DatePipeline.Outcome.FAILED));
+        }
         
         // Print a user-friendly summary
         System.out.println("\n=== NASA Mars Rover Image Download Summary ===");
-        System.out.println("Total dates processed: " + dateStrings.size());
+        System.out.println("Total dates processed: " + summary.getTotal());
         System.out.println("Successfully downloaded images: " + successCount);
         System.out.println("Invalid dates: " + invalidDateCount);
         System.out.println("Dates with no images: " + noImagesCount);
+        System.out.println("Unique dates fetched: " + summary.getUniqueDates());
+        for (RoverMission rover : summary.getRovers()) {
+            System.out.println(rover.getDisplayName() + ": "
+                    + summary.count(rover, DatePipeline.Outcome.SUCCESS) + " dates with images, "
+                    + summary.count(rover, DatePipeline.Outcome.NO_IMAGES) + " without, "
+                    + summary.count(rover, DatePipeline.Outcome.FAILED) + " failed");
+        }
+        System.out.println("Retried requests: " + summary.getTotalRetries());
+        // Only the lines that were retried or failed are kept; invalid dates were reported as read
+        for (DatePipeline.DateResult result : summary.getDetails()) {
+            if (result.getRetries() > 0) {
+                System.out.println("  " + result.getInput() + ": " + result.getRetries() + " retries");
+            }
+        }
         System.out.println("=============================================");
+        
+        if (summary.getReadError() != null) {
+            System.out.println("ERROR: " + summary.getReadError().getMessage());
+            System.exit(1);
+        }
     }
     
     /**
-     * Reads dates from the specified file.
+     * Polls the recent dates until the JVM is asked to shut down, e.g. by SIGTERM or Ctrl-C.
+     * The shutdown hook stops the daemon and waits, up to the configured timeout, for the
+     * downloads in progress to finish and the service to be closed.
      * 
-     * @param filePath path to the dates file
-     * @return list of date strings
+     * @return false if polling was interrupted
+     */
+    private static boolean runDaemon(AppConfig config, DateParser dateParser, RoverImageService roverService) {
+        MetricsExporter metrics = new MetricsExporter(MetricsRegistry.getDefault(), config);
+        DatePipeline pipeline = new DatePipeline(dateParser, roverService,
+                config.getPipelineFetchWorkers(), config.getPipelineDownloadWorkers(),
+                config.getPipelineQueueCapacity());
+        PollingDaemon daemon = new PollingDaemon(pipeline, roverService, dateParser.getRovers(),
+                Duration.ofMinutes(config.getDaemonPollIntervalMinutes()), config.getDaemonLookbackDays());
+        CountDownLatch closed = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            logger.info("Shutting down, finishing downloads in progress");
+            daemon.stop();
+            try {
+                if (!closed.await(config.getDaemonShutdownTimeoutSeconds(), TimeUnit.SECONDS)) {
+                    logger.warn("Downloads in progress did not finish within {} seconds",
+                            config.getDaemonShutdownTimeoutSeconds());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "daemon-shutdown"));
+        
+        try {
+            daemon.run();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while polling");
+            return false;
+        } finally {
+            roverService.close();
+            metrics.close();
+            closed.countDown();
+        }
+    }
+    
+    /**
+     * Serves the output directory over HTTP until the JVM is asked to shut down.
+     * 
+     * @param config the application configuration
+     * @return the exit status
+     */
+    static int serve(AppConfig config) {
+        MetricsExporter metrics = new MetricsExporter(MetricsRegistry.getDefault(), config);
+        ImageServer server;
+        try {
+            server = new ImageServer(new ImageDirectory(Paths.get(config.getOutputDirectory())),
+                    config.getServerPort(), config.getServerThreads(),
+                    Duration.ofSeconds(config.getServerIndexRefreshSeconds()));
+        } catch (IOException e) {
+            logger.error("Failed to start the image server: {}", e.getMessage());
+            metrics.close();
+            return 1;
+        }
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            logger.info("Shutting down the image server");
+            server.close();
+            metrics.close();
+            stopped.countDown();
+        }, "server-shutdown"));
+        try {
+            stopped.await();
+            return 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+    
+    /**
+     * Lists the photos in the photo index matching the criteria, one per line. Criteria are
+     * {@code date=2015-06-03} or {@code date=2015-06-01..2015-06-30}, {@code sol=1000} or
+     * {@code sol=1000..1100}, and comma-separated {@code camera=NAVCAM,FHAZ} and
+     * {@code rover=curiosity}.
+     * 
+     * @param config the application configuration
+     * @param criteria the criteria as key=value pairs
+     * @return the exit status
      */
-    private static List<String> readDatesFromFile(String filePath) {
-        List<String> dates = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (!line.isEmpty()) {
-                    dates.add(line);
+    static int query(AppConfig config, String[] criteria) {
+        PhotoIndex.Filter filter = new PhotoIndex.Filter();
+        try {
+            for (String criterion : criteria) {
+                int equals = criterion.indexOf('=');
+                String key = equals > 0 ? criterion.substring(0, equals) : criterion;
+                String value = criterion.substring(equals + 1).trim();
+                String[] range = value.split("\\.\\.", 2);
+                String last = range[range.length - 1];
+                switch (key) {
+                    case "date":
+                        filter.dates(range[0].isEmpty() ? null : LocalDate.parse(range[0]),
+                                last.isEmpty() ? null : LocalDate.parse(last));
+                        break;
+                    case "sol":
+                        filter.sols(range[0].isEmpty() ? Long.MIN_VALUE : Long.parseLong(range[0]),
+                                last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last));
+                        break;
+                    case "camera":
+                        filter.cameras(Arrays.asList(value.split(",")));
+                        break;
+                    case "rover":
+                        filter.rovers(Arrays.asList(value.split(",")));
+                        break;
+                    default:
+                        System.err.println("Usage: query [date=FROM..TO] [sol=FROM..TO] [camera=NAME,...] [rover=NAME,...]");
+                        return 2;
                 }
             }
+        } catch (DateTimeException | NumberFormatException e) {
+            System.err.println("Invalid criterion: " + e.getMessage());
+            return 2;
+        }
+        
+        Path directory = Paths.get(config.getOutputDirectory(), config.getPhotoIndexDirectory());
+        if (!Files.isDirectory(directory)) {
+            System.err.println("No photo index in " + directory);
+            return 1;
+        }
+        PhotoIndex index = new PhotoIndex(directory);
+        List<Photo> photos = index.query(filter);
+        for (Photo photo : photos) {
+            System.out.println(photo.getId() + "\t" + photo.getEarthDate() + "\tsol " + photo.getSol()
+                    + "\t" + (photo.getRover() != null ? photo.getRover().getName() : "-")
+                    + "\t" + (photo.getCamera() != null ? photo.getCamera().getName() : "-")
+                    + "\t" + photo.getImgSrc());
+        }
+        System.out.println(photos.size() + " of " + index.size() + " indexed photos");
+        return 0;
+    }
+    
+    /**
+     * Opens the dates file and checks that it holds at least one date.
+     * 
+     * @param filePath path to the dates file
+     * @return a reader positioned at the first date, or null if there is none
+     */
+    private static LineReader openDatesFile(String filePath) {
+        LineReader reader = null;
+        try {
+            reader = new LineReader(Paths.get(filePath));
+            if (reader.hasNext()) {
+                return reader;
+            }
+            logger.error("No dates found in the dates file. Exiting.");
         } catch (IOException e) {
             logger.error("Error reading dates file: {}", e.getMessage());
+        } catch (UncheckedIOException e) {
+            logger.error("Error reading dates file: {}", e.getCause().getMessage());
+        }
+        closeQuietly(reader);
+        return null;
+    }
+    
+    private static void closeQuietly(LineReader reader) {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close dates file: {}", e.getMessage());
         }
-        return dates;
     }
 }
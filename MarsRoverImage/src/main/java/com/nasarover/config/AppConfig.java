@@ -1,14 +1,18 @@
 package com.nasarover.config;
 
+import com.nasarover.model.RoverMission;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 /**
- * Configuration class for the application.
+ * Configuration class for the application. Properties are read from application.properties
+ * and can be overridden with system properties of the same name.
  */
 public class AppConfig {
     private static final Logger logger = LoggerFactory.getLogger(AppConfig.class);
@@ -20,10 +24,76 @@ public class AppConfig {
     private static final String DEFAULT_API_KEY = "DEMO_KEY";
     private static final String DEFAULT_OUTPUT_DIRECTORY = "nasa_images";
     private static final String DEFAULT_DATES_FILE_PATH = "src/main/resources/dates.txt";
+    private static final String DEFAULT_ROVERS = "curiosity";
+    private static final int DEFAULT_DOWNLOAD_CONCURRENCY = 8;
+    private static final boolean DEFAULT_DOWNLOAD_VIRTUAL_THREADS = false;
+    private static final int DEFAULT_PIPELINE_FETCH_WORKERS = 2;
+    private static final int DEFAULT_PIPELINE_DOWNLOAD_WORKERS = 2;
+    private static final int DEFAULT_PIPELINE_QUEUE_CAPACITY = 16;
+    private static final int DEFAULT_HTTP_MAX_CONNECTIONS_PER_HOST = 16;
+    private static final int DEFAULT_HTTP_CONNECTION_POOL_SIZE = 0;
+    private static final int DEFAULT_HTTP_KEEPALIVE_SECONDS = 60;
+    private static final int DEFAULT_HTTP_CONNECT_TIMEOUT = 10000;
+    private static final int DEFAULT_HTTP_READ_TIMEOUT = 30000;
+    private static final String DEFAULT_HTTP_VERSION = "HTTP_2";
+    private static final boolean DEFAULT_MANIFEST_ENABLED = true;
+    private static final boolean DEFAULT_MANIFEST_REVALIDATE = false;
+    private static final String DEFAULT_MANIFEST_FILE_NAME = ".manifest.jsonl";
+    private static final boolean DEFAULT_API_STREAMING_PARSE = true;
+    private static final boolean DEFAULT_API_PAGINATION_ENABLED = true;
+    private static final int DEFAULT_API_PAGE_PREFETCH = 3;
+    private static final int DEFAULT_API_PAGE_SIZE = 25;
+    private static final boolean DEFAULT_API_RATE_LIMIT_ENABLED = true;
+    private static final int DEFAULT_RETRY_MAX_ATTEMPTS = 3;
+    private static final int DEFAULT_RETRY_BASE_DELAY_MS = 250;
+    private static final int DEFAULT_RETRY_MAX_DELAY_MS = 8000;
+    private static final int DEFAULT_RETRY_BUDGET_PERCENT = 20;
+    private static final int DEFAULT_RETRY_BUDGET_MIN = 20;
+    private static final int DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD = 5;
+    private static final int DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS = 30;
+    private static final int DEFAULT_API_RATE_LIMIT = 1000;
+    private static final int DEFAULT_API_RATE_LIMIT_WINDOW_SECONDS = 3600;
+    private static final int DEFAULT_API_RATE_LIMIT_MAX_WAIT_SECONDS = 3600;
+    private static final boolean DEFAULT_METADATA_CACHE_ENABLED = true;
+    private static final String DEFAULT_METADATA_CACHE_DIRECTORY = ".metadata-cache";
+    private static final int DEFAULT_METADATA_CACHE_RECENT_DAYS = 7;
+    private static final int DEFAULT_METADATA_CACHE_TTL_RECENT_MINUTES = 60;
+    private static final int DEFAULT_METADATA_CACHE_TTL_HISTORICAL_DAYS = 30;
+    private static final int DEFAULT_METADATA_CACHE_MAX_ENTRIES = 10000;
+    private static final String DEFAULT_STORAGE_MODE = "files";
+    private static final String DEFAULT_STORAGE_OBJECTS_DIRECTORY = ".objects";
+    private static final String DEFAULT_OUTPUT_FORMAT = "files";
+    private static final String DEFAULT_ARCHIVE_SPOOL_DIRECTORY = "";
+    private static final boolean DEFAULT_PHOTO_INDEX_ENABLED = true;
+    private static final String DEFAULT_PHOTO_FILTER = "";
+    private static final boolean DEFAULT_DAEMON_ENABLED = false;
+    private static final int DEFAULT_DAEMON_POLL_INTERVAL_MINUTES = 60;
+    private static final int DEFAULT_DAEMON_LOOKBACK_DAYS = 7;
+    private static final int DEFAULT_DAEMON_SHUTDOWN_TIMEOUT_SECONDS = 120;
+    private static final int DEFAULT_SERVER_PORT = 8080;
+    private static final int DEFAULT_SERVER_THREADS = 16;
+    private static final int DEFAULT_SERVER_INDEX_REFRESH_SECONDS = 60;
+    private static final String DEFAULT_PHOTO_INDEX_DIRECTORY = ".photo-index";
+    private static final String DEFAULT_METRICS_FILE = "";
+    private static final int DEFAULT_METRICS_HTTP_PORT = 0;
+    private static final boolean DEFAULT_METRICS_JMX_ENABLED = true;
     
     public AppConfig() {
+        this(System.getProperties());
+    }
+    
+    /**
+     * Creates a configuration from application.properties, with some properties replaced.
+     * 
+     * @param overrides the properties taking precedence over the file, e.g. the system
+     *                  properties given with {@code -Dnasa.api.base.url=...}
+     */
+    public AppConfig(Properties overrides) {
         properties = new Properties();
         loadProperties();
+        for (String key : overrides.stringPropertyNames()) {
+            properties.setProperty(key, overrides.getProperty(key));
+        }
     }
     
     /**
@@ -84,4 +154,534 @@ public class AppConfig {
     public String getDatesFilePath() {
         return properties.getProperty("dates.file.path", DEFAULT_DATES_FILE_PATH);
     }
+    
+    /**
+     * Gets the rovers whose images are collected for dates that do not name a rover.
+     * Unknown names are ignored.
+     * 
+     * @return the rovers, in configured order
+     */
+    public List<RoverMission> getRovers() {
+        String value = properties.getProperty("rovers", DEFAULT_ROVERS);
+        List<RoverMission> rovers = new ArrayList<>();
+        for (String name : value.split(",")) {
+            if (name.trim().isEmpty()) {
+                continue;
+            }
+            RoverMission rover = RoverMission.fromName(name);
+            if (rover == null) {
+                logger.warn("Ignoring unknown rover '{}' in rovers", name.trim());
+            } else if (!rovers.contains(rover)) {
+                rovers.add(rover);
+            }
+        }
+        if (rovers.isEmpty()) {
+            rovers.add(RoverMission.fromName(DEFAULT_ROVERS));
+        }
+        return rovers;
+    }
+    
+    /**
+     * Gets the maximum number of images downloaded in parallel.
+     * 
+     * @return the download concurrency level
+     */
+    public int getDownloadConcurrency() {
+        return getIntProperty("download.concurrency", DEFAULT_DOWNLOAD_CONCURRENCY);
+    }
+    
+    /**
+     * Checks whether downloads should run on virtual threads when the JDK supports them.
+     * 
+     * @return true if virtual threads are requested
+     */
+    public boolean isDownloadVirtualThreads() {
+        return getBooleanProperty("download.virtual.threads", DEFAULT_DOWNLOAD_VIRTUAL_THREADS);
+    }
+    
+    /**
+     * Gets the number of dates whose metadata is fetched concurrently.
+     * 
+     * @return the number of fetch workers
+     */
+    public int getPipelineFetchWorkers() {
+        return getIntProperty("pipeline.fetch.workers", DEFAULT_PIPELINE_FETCH_WORKERS);
+    }
+    
+    /**
+     * Gets the number of dates whose images are downloaded concurrently.
+     * 
+     * @return the number of download workers
+     */
+    public int getPipelineDownloadWorkers() {
+        return getIntProperty("pipeline.download.workers", DEFAULT_PIPELINE_DOWNLOAD_WORKERS);
+    }
+    
+    /**
+     * Gets the capacity of the queues between the pipeline stages.
+     * 
+     * @return the queue capacity
+     */
+    public int getPipelineQueueCapacity() {
+        return getIntProperty("pipeline.queue.capacity", DEFAULT_PIPELINE_QUEUE_CAPACITY);
+    }
+    
+    /**
+     * Gets the maximum number of concurrent requests to a single host.
+     * 
+     * @return the per-host connection limit
+     */
+    public int getHttpMaxConnectionsPerHost() {
+        return getIntProperty("http.max.connections.per.host", DEFAULT_HTTP_MAX_CONNECTIONS_PER_HOST);
+    }
+    
+    /**
+     * Gets the maximum number of idle connections kept in the pool (0 for no limit).
+     * 
+     * @return the connection pool size
+     */
+    public int getHttpConnectionPoolSize() {
+        return getIntProperty("http.connection.pool.size", DEFAULT_HTTP_CONNECTION_POOL_SIZE);
+    }
+    
+    /**
+     * Gets how long idle pooled connections are kept alive.
+     * 
+     * @return the keep-alive timeout in seconds
+     */
+    public int getHttpKeepAliveSeconds() {
+        return getIntProperty("http.keepalive.timeout.seconds", DEFAULT_HTTP_KEEPALIVE_SECONDS);
+    }
+    
+    /**
+     * Gets the HTTP connect timeout.
+     * 
+     * @return the connect timeout in milliseconds
+     */
+    public int getHttpConnectTimeout() {
+        return getIntProperty("http.connect.timeout.ms", DEFAULT_HTTP_CONNECT_TIMEOUT);
+    }
+    
+    /**
+     * Gets the HTTP read timeout.
+     * 
+     * @return the read timeout in milliseconds
+     */
+    public int getHttpReadTimeout() {
+        return getIntProperty("http.read.timeout.ms", DEFAULT_HTTP_READ_TIMEOUT);
+    }
+    
+    /**
+     * Gets the preferred HTTP version, either HTTP_2 (with fallback to HTTP/1.1) or HTTP_1_1.
+     * 
+     * @return the HTTP version
+     */
+    public String getHttpVersion() {
+        return properties.getProperty("http.version", DEFAULT_HTTP_VERSION);
+    }
+    
+    /**
+     * Checks whether downloaded images are recorded in a manifest and skipped on later runs.
+     * 
+     * @return true if the download manifest is enabled
+     */
+    public boolean isManifestEnabled() {
+        return getBooleanProperty("manifest.enabled", DEFAULT_MANIFEST_ENABLED);
+    }
+    
+    /**
+     * Checks whether images already in the manifest are revalidated with conditional requests
+     * instead of being skipped outright.
+     * 
+     * @return true if known images are revalidated
+     */
+    public boolean isManifestRevalidate() {
+        return getBooleanProperty("manifest.revalidate", DEFAULT_MANIFEST_REVALIDATE);
+    }
+    
+    /**
+     * Gets the name of the manifest file inside the output directory.
+     * 
+     * @return the manifest file name
+     */
+    public String getManifestFileName() {
+        return properties.getProperty("manifest.file", DEFAULT_MANIFEST_FILE_NAME);
+    }
+    
+    /**
+     * Checks whether API responses are parsed as a stream, so downloads start while the photo
+     * list is still being read.
+     * 
+     * @return true if streaming parsing is enabled
+     */
+    public boolean isApiStreamingParse() {
+        return getBooleanProperty("api.streaming.parse", DEFAULT_API_STREAMING_PARSE);
+    }
+    
+    /**
+     * Checks whether photo lists are requested page by page instead of in a single response.
+     * 
+     * @return true if pagination is enabled
+     */
+    public boolean isApiPaginationEnabled() {
+        return getBooleanProperty("api.pagination.enabled", DEFAULT_API_PAGINATION_ENABLED);
+    }
+    
+    /**
+     * Gets the maximum number of pages of a date that are fetched concurrently.
+     * 
+     * @return the page prefetch limit
+     */
+    public int getApiPagePrefetch() {
+        return getIntProperty("api.page.prefetch", DEFAULT_API_PAGE_PREFETCH);
+    }
+    
+    /**
+     * Gets the number of photos the API returns on a full page. A shorter page is the last one;
+     * 0 relies on an empty page alone to detect the end.
+     * 
+     * @return the page size
+     */
+    public int getApiPageSize() {
+        return getIntProperty("api.page.size", DEFAULT_API_PAGE_SIZE);
+    }
+    
+    /**
+     * Checks whether API calls are throttled by the client-side rate limiter.
+     * 
+     * @return true if the rate limiter is enabled
+     */
+    public boolean isApiRateLimitEnabled() {
+        return getBooleanProperty("api.rate.limit.enabled", DEFAULT_API_RATE_LIMIT_ENABLED);
+    }
+    
+    /**
+     * Gets the number of API requests allowed per window, used until the API reports its limit.
+     * 
+     * @return the initial rate limit
+     */
+    public int getApiRateLimit() {
+        return getIntProperty("api.rate.limit", DEFAULT_API_RATE_LIMIT);
+    }
+    
+    /**
+     * Gets the length of the API rate limit window.
+     * 
+     * @return the window in seconds
+     */
+    public int getApiRateLimitWindowSeconds() {
+        return getIntProperty("api.rate.limit.window.seconds", DEFAULT_API_RATE_LIMIT_WINDOW_SECONDS);
+    }
+    
+    /**
+     * Gets how long a request waits in total on rate limit responses before it fails.
+     * 
+     * @return the maximum wait in seconds
+     */
+    public int getApiRateLimitMaxWaitSeconds() {
+        return getIntProperty("api.rate.limit.max.wait.seconds", DEFAULT_API_RATE_LIMIT_MAX_WAIT_SECONDS);
+    }
+    
+    /**
+     * Gets the maximum number of attempts of an API request or image download.
+     * 
+     * @return the maximum number of attempts, 1 for no retries
+     */
+    public int getRetryMaxAttempts() {
+        return getIntProperty("retry.max.attempts", DEFAULT_RETRY_MAX_ATTEMPTS);
+    }
+    
+    /**
+     * Gets the backoff of the first retry, doubled for each further retry.
+     * 
+     * @return the base delay in milliseconds
+     */
+    public int getRetryBaseDelay() {
+        return getIntProperty("retry.base.delay.ms", DEFAULT_RETRY_BASE_DELAY_MS);
+    }
+    
+    /**
+     * Gets the upper bound of the retry backoff.
+     * 
+     * @return the maximum delay in milliseconds
+     */
+    public int getRetryMaxDelay() {
+        return getIntProperty("retry.max.delay.ms", DEFAULT_RETRY_MAX_DELAY_MS);
+    }
+    
+    /**
+     * Gets the number of retries allowed per hundred requests over the whole run.
+     * 
+     * @return the retry budget in percent
+     */
+    public int getRetryBudgetPercent() {
+        return getIntProperty("retry.budget.percent", DEFAULT_RETRY_BUDGET_PERCENT);
+    }
+    
+    /**
+     * Gets the number of retries allowed regardless of the retry budget.
+     * 
+     * @return the minimum number of retries
+     */
+    public int getRetryBudgetMin() {
+        return getIntProperty("retry.budget.min", DEFAULT_RETRY_BUDGET_MIN);
+    }
+    
+    /**
+     * Gets the number of consecutive failures after which requests to an image host are
+     * suspended.
+     * 
+     * @return the failure threshold, 0 to disable the circuit breaker
+     */
+    public int getCircuitBreakerFailureThreshold() {
+        return getIntProperty("circuit.breaker.failure.threshold", DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD);
+    }
+    
+    /**
+     * Gets how long requests to a failing image host stay suspended before a trial request.
+     * 
+     * @return the open period in seconds
+     */
+    public int getCircuitBreakerOpenSeconds() {
+        return getIntProperty("circuit.breaker.open.seconds", DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS);
+    }
+    
+    /**
+     * Checks whether NASA API responses are cached on disk.
+     * 
+     * @return true if the metadata cache is enabled
+     */
+    public boolean isMetadataCacheEnabled() {
+        return getBooleanProperty("metadata.cache.enabled", DEFAULT_METADATA_CACHE_ENABLED);
+    }
+    
+    /**
+     * Gets the name of the metadata cache directory inside the output directory.
+     * 
+     * @return the metadata cache directory name
+     */
+    public String getMetadataCacheDirectory() {
+        return properties.getProperty("metadata.cache.directory", DEFAULT_METADATA_CACHE_DIRECTORY);
+    }
+    
+    /**
+     * Gets the number of days for which an earth date counts as recent and gets the short TTL.
+     * 
+     * @return the number of recent days
+     */
+    public int getMetadataCacheRecentDays() {
+        return getIntProperty("metadata.cache.recent.days", DEFAULT_METADATA_CACHE_RECENT_DAYS);
+    }
+    
+    /**
+     * Gets how long cached responses of recent dates stay valid.
+     * 
+     * @return the TTL in minutes
+     */
+    public int getMetadataCacheTtlRecentMinutes() {
+        return getIntProperty("metadata.cache.ttl.recent.minutes", DEFAULT_METADATA_CACHE_TTL_RECENT_MINUTES);
+    }
+    
+    /**
+     * Gets how long cached responses of older dates stay valid.
+     * 
+     * @return the TTL in days
+     */
+    public int getMetadataCacheTtlHistoricalDays() {
+        return getIntProperty("metadata.cache.ttl.historical.days", DEFAULT_METADATA_CACHE_TTL_HISTORICAL_DAYS);
+    }
+    
+    /**
+     * Gets the maximum number of cached responses.
+     * 
+     * @return the maximum number of entries
+     */
+    public int getMetadataCacheMaxEntries() {
+        return getIntProperty("metadata.cache.max.entries", DEFAULT_METADATA_CACHE_MAX_ENTRIES);
+    }
+    
+    /**
+     * Gets how downloaded images are stored: files (a file per image), hardlink or symlink
+     * (links into a content-addressed store holding each distinct image once).
+     * 
+     * @return the storage mode
+     */
+    public String getStorageMode() {
+        return properties.getProperty("storage.mode", DEFAULT_STORAGE_MODE);
+    }
+    
+    /**
+     * Gets the directory of the content-addressed store, relative to the output directory.
+     * 
+     * @return the directory name
+     */
+    public String getStorageObjectsDirectory() {
+        return properties.getProperty("storage.objects.directory", DEFAULT_STORAGE_OBJECTS_DIRECTORY);
+    }
+    
+    /**
+     * Gets how the images of a rover and date are written: files (a file per image), tar or
+     * zip (one uncompressed archive per date, with an index).
+     * 
+     * @return the output format
+     */
+    public String getOutputFormat() {
+        return properties.getProperty("output.format", DEFAULT_OUTPUT_FORMAT);
+    }
+    
+    /**
+     * Gets the directory images are downloaded to before they are appended to an archive.
+     * 
+     * @return the directory, or an empty string for the system temporary directory
+     */
+    public String getArchiveSpoolDirectory() {
+        return properties.getProperty("archive.spool.directory", DEFAULT_ARCHIVE_SPOOL_DIRECTORY).trim();
+    }
+    
+    /**
+     * Checks whether every fetched photo record is kept in the local photo index.
+     * 
+     * @return true if the photo index is enabled
+     */
+    public boolean isPhotoIndexEnabled() {
+        return getBooleanProperty("photo.index.enabled", DEFAULT_PHOTO_INDEX_ENABLED);
+    }
+    
+    /**
+     * Gets the name of the photo index directory inside the output directory.
+     * 
+     * @return the photo index directory name
+     */
+    public String getPhotoIndexDirectory() {
+        return properties.getProperty("photo.index.directory", DEFAULT_PHOTO_INDEX_DIRECTORY);
+    }
+    
+    /**
+     * Gets the filter applied to the photos of every date, such as
+     * {@code camera=FHAZ,RHAZ,NAVCAM sol=1000..1100 rover=curiosity max=20}; criteria after a
+     * date in the dates file replace the ones of the same key.
+     * 
+     * @return the filter criteria, or an empty string to download every photo
+     */
+    public String getPhotoFilter() {
+        return properties.getProperty("photo.filter", DEFAULT_PHOTO_FILTER).trim();
+    }
+    
+    /**
+     * Checks whether the application keeps running and polls the recent dates, instead of
+     * processing the dates file once.
+     * 
+     * @return true for daemon mode
+     */
+    public boolean isDaemonEnabled() {
+        return getBooleanProperty("daemon.enabled", DEFAULT_DAEMON_ENABLED);
+    }
+    
+    /**
+     * Gets the time between the end of a daemon poll and the start of the next.
+     * 
+     * @return the interval in minutes
+     */
+    public int getDaemonPollIntervalMinutes() {
+        return getIntProperty("daemon.poll.interval.minutes", DEFAULT_DAEMON_POLL_INTERVAL_MINUTES);
+    }
+    
+    /**
+     * Gets the number of days before today that each daemon poll covers along with today.
+     * 
+     * @return the number of days
+     */
+    public int getDaemonLookbackDays() {
+        return getIntProperty("daemon.lookback.days", DEFAULT_DAEMON_LOOKBACK_DAYS);
+    }
+    
+    /**
+     * Gets how long a shutdown waits for the downloads of a poll in progress to finish.
+     * 
+     * @return the timeout in seconds
+     */
+    public int getDaemonShutdownTimeoutSeconds() {
+        return getIntProperty("daemon.shutdown.timeout.seconds", DEFAULT_DAEMON_SHUTDOWN_TIMEOUT_SECONDS);
+    }
+    
+    /**
+     * Gets the port the image server listens on in serve mode.
+     * 
+     * @return the port, or 0 for a free one
+     */
+    public int getServerPort() {
+        return getIntProperty("server.port", DEFAULT_SERVER_PORT);
+    }
+    
+    /**
+     * Gets the number of threads the image server answers requests with.
+     * 
+     * @return the number of threads
+     */
+    public int getServerThreads() {
+        return getIntProperty("server.threads", DEFAULT_SERVER_THREADS);
+    }
+    
+    /**
+     * Gets the time between refreshes of the image server's index of the output directory.
+     * 
+     * @return the interval in seconds
+     */
+    public int getServerIndexRefreshSeconds() {
+        return getIntProperty("server.index.refresh.seconds", DEFAULT_SERVER_INDEX_REFRESH_SECONDS);
+    }
+    
+    /**
+     * Gets the file the metrics are written to at the end of a run, in the Prometheus text format.
+     * 
+     * @return the file path, or an empty string for no file
+     */
+    public String getMetricsFile() {
+        return properties.getProperty("metrics.file", DEFAULT_METRICS_FILE).trim();
+    }
+    
+    /**
+     * Gets the port of the HTTP endpoint serving the metrics at /metrics.
+     * 
+     * @return the port, or 0 for no endpoint
+     */
+    public int getMetricsHttpPort() {
+        return getIntProperty("metrics.http.port", DEFAULT_METRICS_HTTP_PORT);
+    }
+    
+    /**
+     * Checks whether the metrics are registered as MBeans.
+     * 
+     * @return true to expose the metrics over JMX
+     */
+    public boolean isMetricsJmxEnabled() {
+        return getBooleanProperty("metrics.jmx.enabled", DEFAULT_METRICS_JMX_ENABLED);
+    }
+    
+    /**
+     * Reads an integer property, falling back to the default if it is missing or malformed.
+     */
+    private int getIntProperty(String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value '{}' for {}, using default {}", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+    
+    /**
+     * Reads a boolean property, falling back to the default if it is missing.
+     */
+    private boolean getBooleanProperty(String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
 }
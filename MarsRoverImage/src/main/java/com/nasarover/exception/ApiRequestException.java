@@ -5,11 +5,28 @@ package com.nasarover.exception;
  */
 public class ApiRequestException extends Exception {
     
+    private final int statusCode;
+    
     public ApiRequestException(String message) {
+        this(message, -1);
+    }
+    
+    public ApiRequestException(String message, int statusCode) {
         super(message);
+        this.statusCode = statusCode;
     }
     
     public ApiRequestException(String message, Throwable cause) {
         super(message, cause);
+        this.statusCode = -1;
+    }
+    
+    /**
+     * Gets the HTTP status code of the failed response.
+     * 
+     * @return the status code, or -1 if the request failed without a response
+     */
+    public int getStatusCode() {
+        return statusCode;
     }
 }
@@ -0,0 +1,8 @@
+package com.nasarover.metrics;
+
+/**
+ * JMX view of a {@link Counter}.
+ */
+public interface CounterMXBean {
+    long getValue();
+}
@@ -0,0 +1,108 @@
+package com.nasarover.metrics;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of observed values over fixed buckets. An observation costs a binary search
+ * and two uncontended adder updates, so histograms can stay on in production.
+ */
+public class Histogram extends Metric implements HistogramMXBean {
+    /** Bounds for latencies in seconds, from a microsecond to a minute. */
+    public static final double[] LATENCY_BUCKETS = {
+        0.000001, 0.00001, 0.0001, 0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60
+    };
+    /** Bounds for transfer rates in bytes per second, from 64 KiB/s to 1 GiB/s. */
+    public static final double[] THROUGHPUT_BUCKETS = {
+        65536, 262144, 1048576, 4194304, 16777216, 67108864, 268435456, 1073741824
+    };
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private final double[] bounds;
+    // One more bucket than bounds, for values above the last bound
+    private final LongAdder[] buckets;
+    private final DoubleAdder sum = new DoubleAdder();
+
+    Histogram(String name, String help, double[] bounds) {
+        super(name, help);
+        this.bounds = bounds.clone();
+        Arrays.sort(this.bounds);
+        this.buckets = new LongAdder[this.bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void observe(double value) {
+        int bucket = Arrays.binarySearch(bounds, value);
+        buckets[bucket >= 0 ? bucket : -bucket - 1].increment();
+        sum.add(value);
+    }
+
+    /**
+     * Observes a duration measured with {@link System#nanoTime()}, in seconds.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void observeNanos(long nanos) {
+        observe(nanos / NANOS_PER_SECOND);
+    }
+
+    @Override
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    @Override
+    public double getSum() {
+        return sum.sum();
+    }
+
+    @Override
+    public double getMean() {
+        long count = getCount();
+        return count > 0 ? getSum() / count : 0;
+    }
+
+    @Override
+    public Map<String, Long> getBuckets() {
+        Map<String, Long> cumulative = new LinkedHashMap<>();
+        long count = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            count += buckets[i].sum();
+            cumulative.put(i < bounds.length ? format(bounds[i]) : "+Inf", count);
+        }
+        return cumulative;
+    }
+
+    @Override
+    String type() {
+        return "histogram";
+    }
+
+    @Override
+    void writeSamples(Appendable out) throws IOException {
+        long count = 0;
+        for (Map.Entry<String, Long> bucket : getBuckets().entrySet()) {
+            out.append(getName()).append("_bucket{le=\"").append(bucket.getKey()).append("\"} ")
+                .append(Long.toString(bucket.getValue())).append('\n');
+            count = bucket.getValue();
+        }
+        out.append(getName()).append("_sum ").append(Double.toString(getSum())).append('\n');
+        out.append(getName()).append("_count ").append(Long.toString(count)).append('\n');
+    }
+
+    private static String format(double bound) {
+        return BigDecimal.valueOf(bound).stripTrailingZeros().toPlainString();
+    }
+}
@@ -0,0 +1,19 @@
+package com.nasarover.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of a {@link Histogram}.
+ */
+public interface HistogramMXBean {
+    long getCount();
+
+    double getSum();
+
+    double getMean();
+
+    /**
+     * @return the cumulative count of observations per upper bound, as in the Prometheus format
+     */
+    Map<String, Long> getBuckets();
+}
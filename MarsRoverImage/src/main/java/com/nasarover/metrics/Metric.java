@@ -0,0 +1,33 @@
+package com.nasarover.metrics;
+
+import java.io.IOException;
+
+/**
+ * A named metric that can write itself in the Prometheus text format.
+ */
+abstract class Metric {
+    private final String name;
+    private final String help;
+
+    Metric(String name, String help) {
+        this.name = name;
+        this.help = help;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Writes the metric with its HELP and TYPE lines.
+     */
+    void writePrometheus(Appendable out) throws IOException {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type()).append('\n');
+        writeSamples(out);
+    }
+
+    abstract String type();
+
+    abstract void writeSamples(Appendable out) throws IOException;
+}
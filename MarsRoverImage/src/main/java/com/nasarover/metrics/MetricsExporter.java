@@ -0,0 +1,144 @@
+package com.nasarover.metrics;
+
+import com.nasarover.config.AppConfig;
+import com.nasarover.util.ExecutorUtil;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Exposes a metrics registry as configured: over JMX, on an HTTP endpoint serving the
+ * Prometheus text format at {@code /metrics}, and as a file in the same format written when
+ * the exporter is closed. Failing to expose the metrics is logged and never fails the run.
+ */
+public class MetricsExporter implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsExporter.class);
+
+    /** Content type of the Prometheus text exposition format. */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final MetricsRegistry registry;
+    private final Path file;
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+
+    /**
+     * Starts exporting the registry.
+     *
+     * @param registry the metrics to export
+     * @param config the application configuration
+     */
+    public MetricsExporter(MetricsRegistry registry, AppConfig config) {
+        this.registry = registry;
+        String fileName = config.getMetricsFile();
+        this.file = fileName != null && !fileName.isEmpty() ? Paths.get(fileName) : null;
+        if (config.isMetricsJmxEnabled()) {
+            registry.registerMBeans(ManagementFactory.getPlatformMBeanServer());
+        }
+        if (config.getMetricsHttpPort() > 0) {
+            startServer(config.getMetricsHttpPort());
+        }
+    }
+
+    /**
+     * Gets the port the HTTP endpoint listens on.
+     *
+     * @return the port, or -1 if there is no endpoint
+     */
+    public int getPort() {
+        return server != null ? server.getAddress().getPort() : -1;
+    }
+
+    /**
+     * Writes the metrics to the configured file, replacing it atomically.
+     */
+    public void writeFile() {
+        if (file == null) {
+            return;
+        }
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                registry.writePrometheus(out);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            logger.info("Wrote metrics to {}", file);
+        } catch (IOException e) {
+            logger.warn("Failed to write metrics to {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the metrics file and stops the HTTP endpoint.
+     */
+    @Override
+    public void close() {
+        writeFile();
+        if (server != null) {
+            server.stop(0);
+            ExecutorUtil.shutdown(serverExecutor);
+            server = null;
+        }
+    }
+
+    private void startServer(int port) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        } catch (IOException e) {
+            logger.warn("Failed to start the metrics endpoint on port {}: {}", port, e.getMessage());
+            return;
+        }
+        serverExecutor = Executors.newSingleThreadExecutor(ExecutorUtil.daemonThreadFactory("metrics-http"));
+        server.setExecutor(serverExecutor);
+        server.createContext("/metrics", this::handle);
+        server.start();
+        logger.info("Serving metrics at http://localhost:{}/metrics", getPort());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            StringWriter text = new StringWriter();
+            registry.writePrometheus(text);
+            byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.nasarover.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * Named counters and histograms of the application. Metrics are created on first use and
+ * kept for the life of the registry; the instrumented classes hold on to theirs, so recording
+ * a value never looks anything up.
+ */
+public class MetricsRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsRegistry.class);
+
+    /** Domain of the MBeans the metrics are registered under. */
+    public static final String JMX_DOMAIN = "com.nasarover";
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    // Sorted by name, so the output is stable
+    private final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+    private volatile MBeanServer mbeanServer;
+
+    /**
+     * Gets the registry the application's classes record into.
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Gets or creates a counter.
+     *
+     * @param name the metric name, ending in _total by convention
+     * @param help the description of the metric
+     * @return the counter
+     */
+    public Counter counter(String name, String help) {
+        return get(name, Counter.class, () -> new Counter(name, help));
+    }
+
+    /**
+     * Gets or creates a histogram.
+     *
+     * @param name the metric name, ending in the unit by convention, e.g. _seconds
+     * @param help the description of the metric
+     * @param bounds the upper bounds of the buckets
+     * @return the histogram
+     */
+    public Histogram histogram(String name, String help, double[] bounds) {
+        return get(name, Histogram.class, () -> new Histogram(name, help, bounds));
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format.
+     *
+     * @param out the destination
+     * @throws IOException if writing fails
+     */
+    public void writePrometheus(Appendable out) throws IOException {
+        for (Metric metric : metrics.values()) {
+            metric.writePrometheus(out);
+        }
+    }
+
+    /**
+     * Registers an MBean per metric, named {@code com.nasarover:type=Metrics,name=<metric>}.
+     * Metrics created afterwards, e.g. when a class holding metrics is first loaded, are
+     * registered as they are created.
+     *
+     * @param server the MBean server
+     */
+    public void registerMBeans(MBeanServer server) {
+        mbeanServer = server;
+        for (Metric metric : metrics.values()) {
+            register(server, metric);
+        }
+    }
+
+    private static void register(MBeanServer server, Metric metric) {
+        try {
+            ObjectName name = objectName(metric.getName());
+            if (!server.isRegistered(name)) {
+                server.registerMBean(metric, name);
+            }
+        } catch (JMException e) {
+            logger.warn("Failed to register metric {} with JMX: {}", metric.getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Builds the JMX name of a metric.
+     */
+    public static ObjectName objectName(String metric) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=Metrics,name=" + metric);
+    }
+
+    private <T extends Metric> T get(String name, Class<T> type, Supplier<T> factory) {
+        Metric metric = metrics.get(name);
+        if (metric == null) {
+            T created = factory.get();
+            metric = metrics.putIfAbsent(name, created);
+            if (metric == null) {
+                metric = created;
+                MBeanServer server = mbeanServer;
+                if (server != null) {
+                    register(server, created);
+                }
+            }
+        }
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + metric.type());
+        }
+        return type.cast(metric);
+    }
+}
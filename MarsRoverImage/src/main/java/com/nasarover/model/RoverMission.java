@@ -0,0 +1,142 @@
+package com.nasarover.model;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The rovers served by the Mars Rover Photos API, with the period each one was active.
+ * Constants are declared in landing order.
+ */
+public enum RoverMission {
+    SPIRIT("spirit", "Spirit", LocalDate.of(2004, 1, 4), LocalDate.of(2010, 3, 22)),
+    OPPORTUNITY("opportunity", "Opportunity", LocalDate.of(2004, 1, 25), LocalDate.of(2018, 6, 10)),
+    CURIOSITY("curiosity", "Curiosity", LocalDate.of(2012, 8, 6), null),
+    PERSEVERANCE("perseverance", "Perseverance", LocalDate.of(2021, 2, 18), null);
+
+    private static final DateTimeFormatter DISPLAY_FORMAT = DateTimeFormatter.ofPattern("MMMM d, yyyy", Locale.US);
+    // Length of a Martian solar day
+    private static final double SOL_SECONDS = 88775.244;
+    private static final double SECONDS_PER_DAY = 86400;
+
+    private final String apiName;
+    private final String displayName;
+    private final LocalDate landingDate;
+    private final LocalDate endDate;
+
+    RoverMission(String apiName, String displayName, LocalDate landingDate, LocalDate endDate) {
+        this.apiName = apiName;
+        this.displayName = displayName;
+        this.landingDate = landingDate;
+        this.endDate = endDate;
+    }
+
+    /**
+     * Gets the name used in API paths and output directories.
+     *
+     * @return the lower case rover name
+     */
+    public String getApiName() {
+        return apiName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public LocalDate getLandingDate() {
+        return landingDate;
+    }
+
+    /**
+     * Gets the date of the last contact with the rover.
+     *
+     * @return the end date, or null if the mission is ongoing
+     */
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    /**
+     * Checks whether the rover was on the surface and in contact on a date.
+     *
+     * @param date the earth date
+     * @return true if the date falls within the mission
+     */
+    public boolean isActiveOn(LocalDate date) {
+        return !date.isBefore(landingDate) && (endDate == null || !date.isAfter(endDate));
+    }
+
+    /**
+     * Gets the earth date on which a sol of the mission began, counting sol 0 as the landing
+     * date. Landing times are not taken into account, so near midnight UTC the date may be a
+     * day early.
+     *
+     * @param sol the mission sol
+     * @return the earth date
+     */
+    public LocalDate earthDateOfSol(long sol) {
+        return landingDate.plusDays((long) Math.floor(sol * SOL_SECONDS / SECONDS_PER_DAY));
+    }
+
+    /**
+     * Gets the mission sol that was in progress at the start of an earth date.
+     *
+     * @param date the earth date
+     * @return the sol, negative before the landing date
+     */
+    public long solOn(LocalDate date) {
+        return (long) Math.floor(ChronoUnit.DAYS.between(landingDate, date) * SECONDS_PER_DAY / SOL_SECONDS);
+    }
+
+    /**
+     * Formats the landing date for messages, e.g. "August 6, 2012".
+     */
+    public String formatLandingDate() {
+        return landingDate.format(DISPLAY_FORMAT);
+    }
+
+    /**
+     * Formats the end date for messages, e.g. "March 22, 2010".
+     */
+    public String formatEndDate() {
+        return endDate != null ? endDate.format(DISPLAY_FORMAT) : null;
+    }
+
+    /**
+     * Looks up a rover by name, ignoring case and surrounding whitespace.
+     *
+     * @param name the rover name
+     * @return the rover, or null if there is no rover with that name
+     */
+    public static RoverMission fromName(String name) {
+        String trimmed = name.trim();
+        for (RoverMission rover : values()) {
+            if (rover.apiName.equalsIgnoreCase(trimmed)) {
+                return rover;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Selects the rovers that were active on a date.
+     *
+     * @param date the earth date
+     * @param rovers the candidate rovers
+     * @return the active rovers, in the order given
+     */
+    public static List<RoverMission> activeOn(LocalDate date, Collection<RoverMission> rovers) {
+        List<RoverMission> active = new ArrayList<>();
+        for (RoverMission rover : rovers) {
+            if (rover.isActiveOn(date)) {
+                active.add(rover);
+            }
+        }
+        return active;
+    }
+}
@@ -0,0 +1,312 @@
+package com.nasarover.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nasarover.model.RoverMission;
+import com.nasarover.util.ArchiveIndex;
+import com.nasarover.util.ArchiveWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory index of the images in the output directory, by rover, date and file name, for
+ * {@link ImageServer}. Images are found in the date directories as well as in date archives
+ * through their {@link ArchiveIndex}; an image in an archive is served as a range of the
+ * archive file.
+ * <p>
+ * The index is an immutable snapshot that {@link #refresh()} replaces, so lookups never
+ * touch the file system and need no locks. A refresh lists the rover directories, but only
+ * reads the dates whose directory or archive index changed since the last one. The JSON
+ * listing of each date is built during the refresh as well.
+ */
+public class ImageDirectory {
+    private static final Logger logger = LoggerFactory.getLogger(ImageDirectory.class);
+
+    private static final Pattern DATE_NAME = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final Path root;
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyMap(), new byte[0]);
+
+    /**
+     * Creates an empty index of a directory; {@link #refresh()} fills it.
+     *
+     * @param root the output directory
+     */
+    public ImageDirectory(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * Finds an image.
+     *
+     * @return the image, or null if the index holds none of that name
+     */
+    public Image find(String rover, String date, String name) {
+        DateEntry entry = snapshot.dates.get(rover + "/" + date);
+        return entry != null ? entry.images.get(name) : null;
+    }
+
+    /**
+     * Gets the JSON listing of the images of a rover and date.
+     *
+     * @return the listing, or null if the index holds no such date
+     */
+    public byte[] listing(String rover, String date) {
+        DateEntry entry = snapshot.dates.get(rover + "/" + date);
+        return entry != null ? entry.listing : null;
+    }
+
+    /**
+     * Gets the JSON listing of the dates of every rover.
+     */
+    public byte[] dateListing() {
+        return snapshot.dateListing;
+    }
+
+    /**
+     * Gets the number of indexed images.
+     */
+    public int size() {
+        int size = 0;
+        for (DateEntry entry : snapshot.dates.values()) {
+            size += entry.images.size();
+        }
+        return size;
+    }
+
+    /**
+     * Reads the changes of the output directory into a new snapshot.
+     *
+     * @throws IOException if the output directory cannot be listed
+     */
+    public void refresh() throws IOException {
+        Snapshot previous = snapshot;
+        Map<String, DateEntry> dates = new TreeMap<>();
+        Map<String, List<String>> datesByRover = new TreeMap<>();
+        for (Path roverDir : list(root)) {
+            String rover = roverDir.getFileName().toString();
+            if (RoverMission.fromName(rover) == null || !Files.isDirectory(roverDir)) {
+                continue;
+            }
+            for (Path path : list(roverDir)) {
+                String name = path.getFileName().toString();
+                String date = dateOf(name);
+                if (date == null) {
+                    continue;
+                }
+                String key = rover + "/" + date;
+                // A date directory and a date archive can coexist after the output format changed
+                DateEntry entry = dates.get(key);
+                DateEntry reused = previous.dates.get(key);
+                try {
+                    entry = read(rover, date, path, entry, reused);
+                } catch (IOException e) {
+                    logger.warn("Skipping unreadable {}: {}", path, e.getMessage());
+                    continue;
+                }
+                if (entry != null) {
+                    dates.put(key, entry);
+                }
+            }
+        }
+        for (DateEntry entry : dates.values()) {
+            datesByRover.computeIfAbsent(entry.rover, rover -> new ArrayList<>()).add(entry.date);
+        }
+        Map<String, Object> dateListing = new LinkedHashMap<>();
+        dateListing.put("rovers", datesByRover);
+        snapshot = new Snapshot(dates, OBJECT_MAPPER.writeValueAsBytes(dateListing));
+        logger.debug("Indexed {} dates in {}", dates.size(), root);
+    }
+
+    /**
+     * Reads a date directory or archive, reusing the previous entry if its source is unchanged.
+     */
+    private DateEntry read(String rover, String date, Path path, DateEntry current, DateEntry previous)
+            throws IOException {
+        boolean archive = !Files.isDirectory(path);
+        // An archive changes with its index, which is written last
+        Path stampFile = archive ? ArchiveIndex.indexFile(path) : path;
+        if (archive && !Files.isRegularFile(stampFile)) {
+            return current;
+        }
+        long stamp = Files.getLastModifiedTime(stampFile).toMillis();
+        Map<String, Image> images = new TreeMap<>();
+        Map<Path, Long> stamps = new HashMap<>();
+        if (current != null) {
+            images.putAll(current.images);
+            stamps.putAll(current.stamps);
+        }
+        stamps.put(path, stamp);
+        if (previous != null && previous.stamps.get(path) != null && previous.stamps.get(path) == stamp) {
+            for (Image image : previous.images.values()) {
+                if (image.file.equals(path) || image.file.getParent().equals(path)) {
+                    images.put(image.name, image);
+                }
+            }
+        } else if (archive) {
+            long modified = Files.getLastModifiedTime(path).toMillis();
+            for (ArchiveIndex.Entry entry : ArchiveIndex.read(path).getEntries()) {
+                String etag = entry.getSha256() != null ? "\"" + entry.getSha256() + "\""
+                        : "\"" + Long.toHexString(entry.getCrc32()) + "-" + Long.toHexString(entry.getSize()) + "\"";
+                images.put(entry.getName(), new Image(entry.getName(), path, entry.getDataOffset(),
+                        entry.getSize(), modified, etag));
+            }
+        } else {
+            for (Path file : list(path)) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(".") || name.endsWith(".tmp") || name.endsWith(".part") || name.endsWith(".link")) {
+                    continue;
+                }
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (!attributes.isRegularFile()) {
+                    continue;
+                }
+                long modified = attributes.lastModifiedTime().toMillis();
+                images.put(name, new Image(name, file, 0, attributes.size(), modified,
+                        "\"" + Long.toHexString(attributes.size()) + "-" + Long.toHexString(modified) + "\""));
+            }
+        }
+        return new DateEntry(rover, date, images, stamps);
+    }
+
+    /**
+     * Gets the date a directory or archive of a rover directory holds.
+     *
+     * @return the date, or null for any other file
+     */
+    private static String dateOf(String name) {
+        String date = name;
+        for (ArchiveWriter.Format format : ArchiveWriter.Format.values()) {
+            if (name.endsWith(format.getExtension())) {
+                date = name.substring(0, name.length() - format.getExtension().length());
+            }
+        }
+        return DATE_NAME.matcher(date).matches() ? date : null;
+    }
+
+    private static List<Path> list(Path directory) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return paths;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            stream.forEach(paths::add);
+        }
+        return paths;
+    }
+
+    /**
+     * An image: a file, or a range of an archive.
+     */
+    public static class Image {
+        private final String name;
+        private final Path file;
+        private final long offset;
+        private final long size;
+        private final long lastModified;
+        private final String etag;
+
+        Image(String name, Path file, long offset, long size, long lastModified, String etag) {
+            this.name = name;
+            this.file = file;
+            this.offset = offset;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.etag = etag;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the file holding the image, an archive for an image in an archive.
+         */
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * Gets the offset of the image's bytes in the file.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Gets the modification time in milliseconds since the epoch.
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Gets the entity tag, quoted.
+         */
+        public String getEtag() {
+            return etag;
+        }
+    }
+
+    /**
+     * The images of a rover and date, with the modification stamps of their sources.
+     */
+    private static class DateEntry {
+        final String rover;
+        final String date;
+        final Map<String, Image> images;
+        final Map<Path, Long> stamps;
+        final byte[] listing;
+
+        DateEntry(String rover, String date, Map<String, Image> images, Map<Path, Long> stamps) throws IOException {
+            this.rover = rover;
+            this.date = date;
+            this.images = images;
+            this.stamps = stamps;
+            List<Map<String, Object>> entries = new ArrayList<>();
+            for (Image image : images.values()) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("name", image.name);
+                entry.put("size", image.size);
+                entry.put("last_modified", Instant.ofEpochMilli(image.lastModified).toString());
+                entry.put("etag", image.etag);
+                entry.put("url", "/images/" + rover + "/" + date + "/" + image.name);
+                entries.add(entry);
+            }
+            Map<String, Object> listing = new LinkedHashMap<>();
+            listing.put("rover", rover);
+            listing.put("date", date);
+            listing.put("images", entries);
+            this.listing = OBJECT_MAPPER.writeValueAsBytes(listing);
+        }
+    }
+
+    private static class Snapshot {
+        final Map<String, DateEntry> dates;
+        final byte[] dateListing;
+
+        Snapshot(Map<String, DateEntry> dates, byte[] dateListing) {
+            this.dates = dates;
+            this.dateListing = dateListing;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.nasarover.server;
+
+import com.nasarover.metrics.Counter;
+import com.nasarover.metrics.Histogram;
+import com.nasarover.metrics.MetricsRegistry;
+import com.nasarover.util.ExecutorUtil;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-only HTTP server for the downloaded images, so consumers can fetch them without a
+ * network share:
+ * <ul>
+ *   <li>{@code GET /api/dates} lists the dates of every rover;</li>
+ *   <li>{@code GET /api/dates/{rover}/{date}} lists the images of a date;</li>
+ *   <li>{@code GET /images/{rover}/{date}/{name}} serves an image, from its file or from the
+ *       date's archive.</li>
+ * </ul>
+ * Requests are answered from an {@link ImageDirectory} that is refreshed in the background,
+ * so no request walks the file system. Image bytes are moved with
+ * {@link FileChannel#transferTo}, without passing through a buffer of this class; a single
+ * {@code Range} is honoured, also under {@code If-Range}, and {@code If-None-Match} and
+ * {@code If-Modified-Since} are answered with 304 Not Modified.
+ */
+public class ImageServer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ImageServer.class);
+
+    private static final Histogram REQUEST_SECONDS = MetricsRegistry.getDefault().histogram(
+            "nasarover_server_request_seconds", "Time to answer an image server request", Histogram.LATENCY_BUCKETS);
+    private static final Counter REQUESTS = MetricsRegistry.getDefault().counter(
+            "nasarover_server_requests_total", "Image server requests");
+    private static final Counter BYTES = MetricsRegistry.getDefault().counter(
+            "nasarover_server_bytes_total", "Image bytes sent by the image server");
+
+    private static final String JSON = "application/json; charset=utf-8";
+
+    private final ImageDirectory directory;
+    private final HttpServer server;
+    private final ExecutorService serverExecutor;
+    private final ScheduledExecutorService refresher;
+
+    /**
+     * Indexes the output directory and starts serving it.
+     *
+     * @param directory the index of the output directory
+     * @param port the port, or 0 for a free one
+     * @param threads the number of threads serving requests
+     * @param refreshInterval the time between index refreshes
+     * @throws IOException if the output directory cannot be indexed or the port cannot be bound
+     */
+    public ImageServer(ImageDirectory directory, int port, int threads, Duration refreshInterval) throws IOException {
+        this.directory = directory;
+        directory.refresh();
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.serverExecutor = Executors.newFixedThreadPool(Math.max(1, threads),
+                ExecutorUtil.daemonThreadFactory("image-http"));
+        server.setExecutor(serverExecutor);
+        server.createContext("/api/dates", this::handleListing);
+        server.createContext("/images/", this::handleImage);
+        server.start();
+
+        long refreshMillis = Math.max(1000, refreshInterval.toMillis());
+        this.refresher = Executors.newSingleThreadScheduledExecutor(ExecutorUtil.daemonThreadFactory("image-index"));
+        refresher.scheduleWithFixedDelay(this::refresh, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        logger.info("Serving {} images at http://localhost:{}/api/dates", directory.size(), getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the server, letting requests in progress finish.
+     */
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+        server.stop(1);
+        ExecutorUtil.shutdown(serverExecutor);
+    }
+
+    private void refresh() {
+        try {
+            directory.refresh();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to refresh the image index: {}", e.getMessage());
+        }
+    }
+
+    private void handleListing(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!allowMethod(exchange)) {
+                return;
+            }
+            String[] parts = segments(exchange, "/api/dates");
+            byte[] body;
+            if (parts.length == 0) {
+                body = directory.dateListing();
+            } else if (parts.length == 2) {
+                body = directory.listing(parts[0], parts[1]);
+            } else {
+                body = null;
+            }
+            if (body == null) {
+                sendError(exchange, 404, "Not found");
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", JSON);
+            sendBody(exchange, 200, body);
+        } finally {
+            exchange.close();
+            REQUESTS.increment();
+            REQUEST_SECONDS.observeNanos(System.nanoTime() - start);
+        }
+    }
+
+    private void handleImage(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!allowMethod(exchange)) {
+                return;
+            }
+            String[] parts = segments(exchange, "/images");
+            ImageDirectory.Image image = parts.length == 3 ? directory.find(parts[0], parts[1], parts[2]) : null;
+            if (image == null) {
+                sendError(exchange, 404, "Not found");
+                return;
+            }
+            serveImage(exchange, image);
+        } finally {
+            exchange.close();
+            REQUESTS.increment();
+            REQUEST_SECONDS.observeNanos(System.nanoTime() - start);
+        }
+    }
+
+    private void serveImage(HttpExchange exchange, ImageDirectory.Image image) throws IOException {
+        Headers request = exchange.getRequestHeaders();
+        Headers response = exchange.getResponseHeaders();
+        String lastModified = DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                Instant.ofEpochMilli(image.getLastModified()).atZone(ZoneOffset.UTC));
+        response.set("ETag", image.getEtag());
+        response.set("Last-Modified", lastModified);
+        response.set("Accept-Ranges", "bytes");
+
+        if (notModified(request, image)) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+
+        long size = image.getSize();
+        long from = 0;
+        long length = size;
+        int status = 200;
+        String range = request.getFirst("Range");
+        if (range != null && rangeApplies(request.getFirst("If-Range"), image, lastModified)) {
+            long[] bounds = parseRange(range, size);
+            if (bounds == UNSATISFIABLE) {
+                response.set("Content-Range", "bytes */" + size);
+                exchange.sendResponseHeaders(416, -1);
+                return;
+            }
+            if (bounds != null) {
+                from = bounds[0];
+                length = bounds[1] - bounds[0] + 1;
+                status = 206;
+                response.set("Content-Range", "bytes " + bounds[0] + "-" + bounds[1] + "/" + size);
+            }
+        }
+        response.set("Content-Type", contentType(image.getName()));
+        if ("HEAD".equals(exchange.getRequestMethod()) || length == 0) {
+            // A HEAD response, and a zero length one, has no body; its length is set by hand
+            response.set("Content-Length", Long.toString(length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+
+        try (FileChannel file = FileChannel.open(image.getFile(), StandardOpenOption.READ)) {
+            exchange.sendResponseHeaders(status, length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                WritableByteChannel target = Channels.newChannel(out);
+                long position = image.getOffset() + from;
+                long remaining = length;
+                while (remaining > 0) {
+                    long sent = file.transferTo(position, remaining, target);
+                    if (sent <= 0) {
+                        throw new IOException(image.getFile() + " is shorter than indexed");
+                    }
+                    position += sent;
+                    remaining -= sent;
+                    BYTES.add(sent);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the conditional headers: If-None-Match wins over If-Modified-Since.
+     */
+    private static boolean notModified(Headers request, ImageDirectory.Image image) {
+        String ifNoneMatch = request.getFirst("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                String trimmed = tag.trim();
+                if (trimmed.startsWith("W/")) {
+                    trimmed = trimmed.substring(2);
+                }
+                if (trimmed.equals("*") || trimmed.equals(image.getEtag())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        Long since = parseDate(request.getFirst("If-Modified-Since"));
+        return since != null && image.getLastModified() / 1000 <= since / 1000;
+    }
+
+    /**
+     * Checks If-Range: a range is only served of the representation the client already has.
+     */
+    private static boolean rangeApplies(String ifRange, ImageDirectory.Image image, String lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        return ifRange.trim().equals(image.getEtag()) || ifRange.trim().equals(lastModified);
+    }
+
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    /**
+     * Parses a single byte range.
+     *
+     * @return the first and last byte, {@link #UNSATISFIABLE}, or null to ignore the header,
+     *         as for several ranges or a malformed one
+     */
+    static long[] parseRange(String header, long size) {
+        String value = header.trim();
+        if (!value.startsWith("bytes=") || value.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = value.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // A suffix range: the last N bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || size == 0) {
+                    return UNSATISFIABLE;
+                }
+                return new long[] {Math.max(0, size - suffix), size - 1};
+            }
+            long from = Long.parseLong(first);
+            long to = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+            if (from < 0 || (!last.isEmpty() && Long.parseLong(last) < from)) {
+                return null;
+            }
+            return from >= size ? UNSATISFIABLE : new long[] {from, to};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Long parseDate(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static String contentType(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".jpg") || lower.endsWith(".jpeg")) {
+            return "image/jpeg";
+        }
+        if (lower.endsWith(".png")) {
+            return "image/png";
+        }
+        if (lower.endsWith(".gif")) {
+            return "image/gif";
+        }
+        return "application/octet-stream";
+    }
+
+    /**
+     * Splits the request path after a prefix into its segments.
+     */
+    private static String[] segments(HttpExchange exchange, String prefix) {
+        String path = exchange.getRequestURI().getPath().substring(prefix.length());
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path.isEmpty() ? new String[0] : path.split("/");
+    }
+
+    private static boolean allowMethod(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        if ("GET".equals(method) || "HEAD".equals(method)) {
+            return true;
+        }
+        exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+        exchange.sendResponseHeaders(405, -1);
+        return false;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        sendBody(exchange, status, message.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+    }
+
+    private static void sendBody(HttpExchange exchange, int status, byte[] body) throws IOException {
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Content-Length", Integer.toString(body.length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.nasarover.service;
+
+import com.nasarover.metrics.Counter;
+import com.nasarover.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+/**
+ * Content-addressed store of downloaded images. Each distinct content is kept once, under
+ * its SHA-256 digest, and the images in the per-date directories are links to it, so the
+ * same bytes appearing under several dates, rovers or photo ids take disk space only once.
+ * <p>
+ * A downloaded file is moved into the store by a rename, which writes no data, and replaced
+ * by a link; if the store already holds its content, the download is dropped instead. An
+ * image that is needed at another path is linked rather than copied.
+ * <p>
+ * Links are never written through: downloads always replace their target, so a linked
+ * object cannot be changed from one of its paths.
+ */
+public class ContentStore {
+    private static final Logger logger = LoggerFactory.getLogger(ContentStore.class);
+
+    private static final Counter DUPLICATE_BYTES = MetricsRegistry.getDefault().counter(
+            "nasarover_store_duplicate_bytes_total", "Bytes of images the content store already held");
+
+    /**
+     * How images are exposed in the date directories.
+     */
+    public enum Mode {
+        /** Every image is a file of its own; the store is not used. */
+        FILES,
+        /** Images are hard links to the stored objects. */
+        HARDLINK,
+        /** Images are relative symbolic links to the stored objects. */
+        SYMLINK;
+
+        /**
+         * Parses a configured mode, falling back to {@link #FILES}.
+         *
+         * @param name the mode name, case insensitive
+         * @return the mode
+         */
+        public static Mode fromName(String name) {
+            if (name != null) {
+                for (Mode mode : values()) {
+                    if (mode.name().equalsIgnoreCase(name.trim())) {
+                        return mode;
+                    }
+                }
+                if (!name.trim().isEmpty()) {
+                    logger.warn("Unknown storage mode '{}', storing images as files", name.trim());
+                }
+            }
+            return FILES;
+        }
+    }
+
+    private final Path directory;
+    // Cleared when the file system turns out not to support hard links
+    private volatile boolean hardLinks;
+
+    /**
+     * Creates a store.
+     *
+     * @param directory the directory holding the objects
+     * @param mode {@link Mode#HARDLINK} or {@link Mode#SYMLINK}
+     */
+    public ContentStore(Path directory, Mode mode) {
+        this.directory = directory;
+        this.hardLinks = mode == Mode.HARDLINK;
+    }
+
+    /**
+     * Moves a downloaded file into the store, or drops it if the store already holds the
+     * same content, and puts a link to the stored object in its place.
+     *
+     * @param file the downloaded file
+     * @param sha256 the SHA-256 digest of the file, in hex
+     * @throws IOException if the file cannot be stored or linked
+     */
+    public void add(Path file, String sha256) throws IOException {
+        Path object = objectPath(sha256, file);
+        if (Files.exists(object)) {
+            if (Files.isSameFile(file, object)) {
+                return;
+            }
+            DUPLICATE_BYTES.add(Files.size(object));
+            logger.debug("Content of {} is already stored", file);
+        } else {
+            Files.createDirectories(object.getParent());
+            // A concurrent add of the same content may win the race, which is harmless
+            move(file, object);
+        }
+        link(object, file);
+    }
+
+    /**
+     * Puts a link to stored content at a path.
+     *
+     * @param sha256 the SHA-256 digest of the content, in hex
+     * @param target the path to link
+     * @return false if the store does not hold the content
+     * @throws IOException if the link cannot be created
+     */
+    public boolean place(String sha256, Path target) throws IOException {
+        Path object = objectPath(sha256, target);
+        if (!Files.exists(object)) {
+            return false;
+        }
+        if (Files.exists(target) && Files.isSameFile(target, object)) {
+            return true;
+        }
+        DUPLICATE_BYTES.add(Files.size(object));
+        link(object, target);
+        return true;
+    }
+
+    /**
+     * Gets the path of an object: a directory per first two hex digits keeps directories
+     * small, and the extension of the image is kept so the objects open in image viewers.
+     */
+    Path objectPath(String sha256, Path image) {
+        String hash = sha256.toLowerCase(Locale.ROOT);
+        String name = image.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String extension = dot > 0 ? name.substring(dot) : "";
+        return directory.resolve(hash.substring(0, 2)).resolve(hash + extension);
+    }
+
+    /**
+     * Replaces a path with a link to an object, atomically, so the path never appears missing.
+     */
+    private void link(Path object, Path target) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".link");
+        Files.deleteIfExists(temp);
+        if (hardLinks) {
+            try {
+                Files.createLink(temp, object);
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                hardLinks = false;
+                logger.warn("Cannot create hard links in {}, using symbolic links: {}", directory, e.getMessage());
+            }
+        }
+        if (!hardLinks) {
+            try {
+                Files.createSymbolicLink(temp, target.toAbsolutePath().getParent()
+                        .relativize(object.toAbsolutePath()));
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                // Keep the image available, if not deduplicated
+                logger.warn("Cannot link {} to the content store, copying it: {}", target, e.getMessage());
+                Files.copy(object, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        move(temp, target);
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
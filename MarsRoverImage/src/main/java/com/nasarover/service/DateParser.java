@@ -1,28 +1,83 @@
 package com.nasarover.service;
 
 import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.time.format.TextStyle;
 import java.time.DateTimeException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.nasarover.exception.DateParsingException;
+import com.nasarover.metrics.Counter;
+import com.nasarover.metrics.Histogram;
+import com.nasarover.metrics.MetricsRegistry;
+import com.nasarover.model.RoverMission;
 
 /**
  * Handles parsing of date strings in various formats.
+ * Dates are valid if at least one of the rovers they are requested for was active on them.
+ * <p>
+ * Inputs in the common shapes (slashes, a short month name with dashes, or a full month name)
+ * are parsed by hand without throwing; anything else goes through the formatters in order,
+ * which decide the result exactly as before.
  */
 public class DateParser {
     private static final Logger logger = LoggerFactory.getLogger(DateParser.class);
     
+    private static final Histogram PARSE_SECONDS = MetricsRegistry.getDefault().histogram(
+            "nasarover_date_parse_seconds", "Time to parse and validate a date", Histogram.LATENCY_BUCKETS);
+    private static final Counter PARSE_ERRORS = MetricsRegistry.getDefault().counter(
+            "nasarover_date_parse_errors_total", "Dates that could not be parsed or were not valid for any rover");
+    
+    // Month names as the MMMM and MMM patterns parse them, case sensitive
+    private static final Map<String, Month> FULL_MONTHS = monthNames(TextStyle.FULL);
+    private static final Map<String, Month> SHORT_MONTHS = monthNames(TextStyle.SHORT);
+    // Shapes normalizeDate completes, e.g. "June 15" and "June 15 2021"
+    private static final Pattern MISSING_YEAR = Pattern.compile("^[A-Za-z]+ \\d{1,2}$");
+    private static final Pattern MISSING_COMMA = Pattern.compile("^[A-Za-z]+ \\d{1,2} \\d{4}$");
+    // Ranges expanded by expand, e.g. "2017-02-01..2017-02-28 every 7 days" and "sol 100..200"
+    private static final Pattern DATE_RANGE = Pattern.compile(
+            "(.+?)\\s*\\.\\.\\s*(.+?)(?:\\s+every(?:\\s+(\\d{1,9}))?\\s+(days?|sols?))?", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SOL_RANGE = Pattern.compile(
+            "sols?\\s+(\\d{1,9})(?:\\s*\\.\\.\\s*(\\d{1,9}))?(?:\\s+every(?:\\s+(\\d{1,9}))?\\s+(days?|sols?))?",
+            Pattern.CASE_INSENSITIVE);
+    // Lines a Resolver remembers; generated files repeat far fewer spellings than this
+    static final int RESOLVER_MEMO_CAPACITY = 8192;
+    
     // Supported date formats
     private final List<DateTimeFormatter> formatters;
+    // Rovers a date is checked against when the input does not name any
+    private final List<RoverMission> rovers;
     
     public DateParser() {
+        this(Collections.singletonList(RoverMission.CURIOSITY));
+    }
+    
+    public DateParser(Collection<RoverMission> rovers) {
+        this.rovers = Collections.unmodifiableList(new ArrayList<>(rovers));
         formatters = new ArrayList<>();
         // MM/dd/yy - e.g., 02/27/17
         formatters.add(DateTimeFormatter.ofPattern("MM/dd/yy", Locale.US));
@@ -38,16 +93,51 @@ public class DateParser {
         formatters.add(DateTimeFormatter.ofPattern("M/d/yy", Locale.US));
         formatters.add(DateTimeFormatter.ofPattern("MMMM d yyyy", Locale.US));
         formatters.add(DateTimeFormatter.ofPattern("MMM-d-yyyy", Locale.US));
+        // yyyy-MM-dd - e.g., 2017-02-01, as written in date ranges
+        formatters.add(DateTimeFormatter.ISO_LOCAL_DATE);
     }
     
     /**
-     * Parses a date string in various formats.
+     * Gets the rovers dates are checked against by default.
+     * 
+     * @return the default rovers
+     */
+    public List<RoverMission> getRovers() {
+        return rovers;
+    }
+    
+    /**
+     * Parses a date string in various formats, checking it against the default rovers.
      * 
      * @param dateStr the date string to parse
      * @return a LocalDate object representing the parsed date
      * @throws DateParsingException if the date cannot be parsed
      */
     public LocalDate parseDate(String dateStr) throws DateParsingException {
+        return parseDate(dateStr, rovers);
+    }
+    
+    /**
+     * Parses a date string in various formats.
+     * 
+     * @param dateStr the date string to parse
+     * @param rovers the rovers the date is requested for
+     * @return a LocalDate object representing the parsed date
+     * @throws DateParsingException if the date cannot be parsed or none of the rovers was active on it
+     */
+    public LocalDate parseDate(String dateStr, Collection<RoverMission> rovers) throws DateParsingException {
+        long start = System.nanoTime();
+        try {
+            return parseAndValidate(dateStr, rovers);
+        } catch (DateParsingException e) {
+            PARSE_ERRORS.increment();
+            throw e;
+        } finally {
+            PARSE_SECONDS.observeNanos(System.nanoTime() - start);
+        }
+    }
+    
+    private LocalDate parseAndValidate(String dateStr, Collection<RoverMission> rovers) throws DateParsingException {
         if (dateStr == null || dateStr.trim().isEmpty()) {
             throw new DateParsingException("Date string cannot be null or empty");
         }
@@ -55,21 +145,172 @@ public class DateParser {
         // Try parsing with original string first
         LocalDate date = tryParse(dateStr);
         if (date != null) {
-            return validateDate(date, dateStr);
+            return validateDate(date, dateStr, rovers);
         }
         
         // If original parsing fails, try with normalized string
         String normalizedDateStr = normalizeDate(dateStr);
         date = tryParse(normalizedDateStr);
         if (date != null) {
-            return validateDate(date, dateStr);
+            return validateDate(date, dateStr, rovers);
         }
         
         throw new DateParsingException("Could not parse date: " + dateStr + 
                 ". Supported formats include MM/dd/yy, MMMM d, yyyy, and MMM-dd-yyyy.");
     }
     
-    private LocalDate tryParse(String dateStr) {
+    /**
+     * Expands a line of a dates file into the dates it stands for. Besides a single date, a
+     * line may hold a date range such as {@code 2017-02-01..2017-02-28}, optionally with a
+     * step such as {@code every 7 days}, or a sol range such as {@code sol 100..200}, again
+     * optionally with a step in sols. Ranges are expanded lazily, one date at a time; the
+     * pipeline keeps nothing of a date once it is done but a few bits, so a range of any length
+     * is not materialized.
+     * <p>
+     * The dates are returned as yyyy-MM-dd lines that {@link #parseDate(String)} accepts,
+     * with the line's rover prefix. Sols are counted per rover, so a sol range yields one line
+     * per rover and sol, prefixed with that rover, for the sols the rover was active.
+     * 
+     * @param line the line, optionally prefixed with rover names
+     * @return the lines of the dates, or the line itself if it is not a range
+     * @throws DateParsingException if the line is a malformed range
+     */
+    public Stream<String> expand(String line) throws DateParsingException {
+        int separator = line.indexOf(':');
+        String expression = separator >= 0 ? line.substring(separator + 1).trim() : line.trim();
+        if (!expression.contains("..") && !SOL_RANGE.matcher(expression).lookingAt()) {
+            return Stream.of(line);
+        }
+        List<RoverMission> lineRovers = separator >= 0 ? parseRovers(line.substring(0, separator)) : rovers;
+        
+        Matcher solRange = SOL_RANGE.matcher(expression);
+        if (solRange.matches()) {
+            int first = Integer.parseInt(solRange.group(1));
+            int last = solRange.group(2) != null ? Integer.parseInt(solRange.group(2)) : first;
+            int step = parseStep(solRange.group(3), solRange.group(4), "sol", expression);
+            if (last < first) {
+                throw new DateParsingException("Invalid sol range: " + expression
+                        + ". The last sol is before the first sol.");
+            }
+            // Stop at the last sol any of the rovers reached, so a far end does not run on forever
+            LocalDate today = LocalDate.now();
+            Map<RoverMission, Long> lastSols = new EnumMap<>(RoverMission.class);
+            for (RoverMission rover : lineRovers) {
+                LocalDate end = rover.getEndDate();
+                lastSols.put(rover, rover.solOn(end != null && end.isBefore(today) ? end : today));
+            }
+            long lastSol = Math.min(last, Collections.max(lastSols.values()));
+            return LongStream.iterate(first, sol -> sol <= lastSol, sol -> sol + step)
+                    .boxed()
+                    .flatMap(sol -> lineRovers.stream()
+                            .filter(rover -> sol <= lastSols.get(rover))
+                            .map(rover -> rover.getApiName() + ": " + rover.earthDateOfSol(sol)));
+        }
+        
+        Matcher dateRange = DATE_RANGE.matcher(expression);
+        if (!dateRange.matches()) {
+            throw new DateParsingException("Invalid date range: " + expression
+                    + ". Use start..end, optionally followed by every N days.");
+        }
+        LocalDate start = parseDate(dateRange.group(1), lineRovers);
+        LocalDate end = parseDate(dateRange.group(2), lineRovers);
+        int step = parseStep(dateRange.group(3), dateRange.group(4), "day", expression);
+        if (end.isBefore(start)) {
+            throw new DateParsingException("Invalid date range: " + expression
+                    + ". The end date is before the start date.");
+        }
+        String prefix = separator >= 0 ? line.substring(0, separator + 1) + " " : "";
+        return Stream.iterate(start, date -> !date.isAfter(end), date -> date.plusDays(step))
+                .map(date -> prefix + date);
+    }
+    
+    /**
+     * Parses the step of a range, e.g. "every 7 days" or "every sol".
+     * 
+     * @param count the number of units, null for "every day" or "every sol"
+     * @param unit the unit, null if the range has no step
+     * @param rangeUnit the unit of the range, "day" or "sol"
+     * @param expression the range, for messages
+     */
+    private static int parseStep(String count, String unit, String rangeUnit, String expression)
+            throws DateParsingException {
+        if (unit == null) {
+            return 1;
+        }
+        if (!unit.toLowerCase(Locale.US).startsWith(rangeUnit)) {
+            throw new DateParsingException("Invalid step: " + expression + ". A " + rangeUnit
+                    + " range steps in " + rangeUnit + "s.");
+        }
+        int step = count != null ? Integer.parseInt(count) : 1;
+        if (step < 1) {
+            throw new DateParsingException("Invalid step: " + expression + ". The step must be at least 1.");
+        }
+        return step;
+    }
+    
+    /**
+     * Creates a resolver for the lines of one dates file, which remembers the lines it has
+     * parsed.
+     * 
+     * @return a resolver with a memo of {@value #RESOLVER_MEMO_CAPACITY} lines
+     */
+    public Resolver newResolver() {
+        return new Resolver(RESOLVER_MEMO_CAPACITY);
+    }
+    
+    /**
+     * Parses a comma separated list of rover names, such as the prefix of a dates file line.
+     * 
+     * @param names the rover names
+     * @return the rovers, in the given order
+     * @throws DateParsingException if a name is not a known rover or the list is empty
+     */
+    public List<RoverMission> parseRovers(String names) throws DateParsingException {
+        List<RoverMission> parsed = new ArrayList<>();
+        for (String name : names.split(",")) {
+            if (name.trim().isEmpty()) {
+                continue;
+            }
+            RoverMission rover = RoverMission.fromName(name);
+            if (rover == null) {
+                throw new DateParsingException("Unknown rover: " + name.trim() + ". Supported rovers are "
+                        + formatRovers(RoverMission.values(), RoverMission::getApiName) + ".");
+            }
+            if (!parsed.contains(rover)) {
+                parsed.add(rover);
+            }
+        }
+        if (parsed.isEmpty()) {
+            throw new DateParsingException("No rover given before ':' in: " + names);
+        }
+        return parsed;
+    }
+    
+    /**
+     * Parses a date string, returning null instead of throwing if it does not match any format.
+     * 
+     * @param dateStr the date string
+     * @return the date, or null
+     */
+    LocalDate tryParse(String dateStr) {
+        LocalDate date = parseKnownShape(dateStr);
+        if (date != null) {
+            logger.debug("Successfully parsed date '{}'", dateStr);
+            return date;
+        }
+        if (!mayMatchFormatter(dateStr)) {
+            return null;
+        }
+        return parseWithFormatters(dateStr);
+    }
+    
+    /**
+     * Parses a date string by trying each formatter in turn.
+     * 
+     * @param dateStr the date string
+     * @return the date, or null
+     */
+    LocalDate parseWithFormatters(String dateStr) {
         for (DateTimeFormatter formatter : formatters) {
             try {
                 LocalDate date = LocalDate.parse(dateStr, formatter);
@@ -83,6 +324,177 @@ public class DateParser {
         return null;
     }
     
+    /**
+     * Parses the shapes the formatters accept most often: M/d/yy or M/d/yyyy, MMM-d-yyyy,
+     * and MMMM d, yyyy or MMMM d yyyy. The result is the one the first matching formatter
+     * would give, including its clamping of days 29 to 31 to the end of the month.
+     * 
+     * @param s the date string
+     * @return the date, or null if the string has another shape or an out of range field,
+     *         in which case the formatters decide
+     */
+    private static LocalDate parseKnownShape(String s) {
+        int length = s.length();
+        if (length == 0) {
+            return null;
+        }
+        boolean numeric = isDigit(s.charAt(0));
+        Month month;
+        char separator;
+        int pos;
+        if (numeric) {
+            // M/d/yy, M/d/yyyy
+            int monthEnd = digitsEnd(s, 0);
+            if (monthEnd == 4) {
+                return parseIsoDate(s);
+            }
+            if (monthEnd > 2 || monthEnd == length) {
+                return null;
+            }
+            int monthValue = Integer.parseInt(s, 0, monthEnd, 10);
+            if (monthValue < 1 || monthValue > 12) {
+                return null;
+            }
+            month = Month.of(monthValue);
+            separator = s.charAt(monthEnd);
+            if (separator != '/') {
+                return null;
+            }
+            pos = monthEnd + 1;
+        } else {
+            // MMM-d-yyyy, MMMM d, yyyy, MMMM d yyyy
+            int nameEnd = 0;
+            while (nameEnd < length && isLetter(s.charAt(nameEnd))) {
+                nameEnd++;
+            }
+            if (nameEnd == 0 || nameEnd == length) {
+                return null;
+            }
+            separator = s.charAt(nameEnd);
+            String name = s.substring(0, nameEnd);
+            month = separator == '-' ? SHORT_MONTHS.get(name) : separator == ' ' ? FULL_MONTHS.get(name) : null;
+            if (month == null) {
+                return null;
+            }
+            pos = nameEnd + 1;
+        }
+        
+        int dayEnd = digitsEnd(s, pos);
+        if (dayEnd == pos || dayEnd - pos > 2 || dayEnd == length) {
+            return null;
+        }
+        int day = Integer.parseInt(s, pos, dayEnd, 10);
+        if (day < 1 || day > 31) {
+            return null;
+        }
+        
+        pos = dayEnd + 1;
+        if (separator == ' ' && s.charAt(dayEnd) == ',') {
+            // The comma of MMMM d, yyyy is always followed by a space
+            if (pos == length || s.charAt(pos) != ' ') {
+                return null;
+            }
+            pos++;
+        } else if (s.charAt(dayEnd) != separator) {
+            return null;
+        }
+        
+        int yearEnd = digitsEnd(s, pos);
+        if (yearEnd != length) {
+            return null;
+        }
+        int year;
+        if (yearEnd - pos == 4) {
+            year = Integer.parseInt(s, pos, yearEnd, 10);
+        } else if (yearEnd - pos == 2 && numeric) {
+            // yy is read as a year of this century
+            year = 2000 + Integer.parseInt(s, pos, yearEnd, 10);
+        } else {
+            return null;
+        }
+        if (year < 1) {
+            return null;
+        }
+        return LocalDate.of(year, month, Math.min(day, month.length(Year.isLeap(year))));
+    }
+    
+    /**
+     * Parses yyyy-MM-dd, rejecting days beyond the end of the month as ISO_LOCAL_DATE does.
+     */
+    private static LocalDate parseIsoDate(String s) {
+        if (s.length() != 10 || s.charAt(4) != '-' || s.charAt(7) != '-'
+                || digitsEnd(s, 5) != 7 || digitsEnd(s, 8) != 10) {
+            return null;
+        }
+        int year = Integer.parseInt(s, 0, 4, 10);
+        int month = Integer.parseInt(s, 5, 7, 10);
+        int day = Integer.parseInt(s, 8, 10, 10);
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > Month.of(month).length(Year.isLeap(year))) {
+            return null;
+        }
+        return LocalDate.of(year, month, day);
+    }
+    
+    /**
+     * Checks whether any formatter could accept a string. Each of them starts with a month
+     * number or name and has a numeric day and year, so other strings can be rejected without
+     * throwing an exception per formatter.
+     */
+    private static boolean mayMatchFormatter(String s) {
+        if (s.isEmpty()) {
+            return false;
+        }
+        if (!isDigit(s.charAt(0)) && !startsWithMonthName(s)) {
+            return false;
+        }
+        int numbers = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (isDigit(s.charAt(i)) && (i == 0 || !isDigit(s.charAt(i - 1)))) {
+                numbers++;
+            }
+        }
+        return numbers >= 2;
+    }
+    
+    private static boolean startsWithMonthName(String s) {
+        for (String name : FULL_MONTHS.keySet()) {
+            if (s.startsWith(name)) {
+                return true;
+            }
+        }
+        for (String name : SHORT_MONTHS.keySet()) {
+            if (s.startsWith(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static int digitsEnd(String s, int from) {
+        int end = from;
+        while (end < s.length() && isDigit(s.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+    
+    // Formatters only accept ASCII digits and month names
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+    
+    private static boolean isLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+    
+    private static Map<String, Month> monthNames(TextStyle style) {
+        Map<String, Month> names = new HashMap<>();
+        for (Month month : Month.values()) {
+            names.put(month.getDisplayName(style, Locale.US), month);
+        }
+        return names;
+    }
+    
     /**
      * Normalizes a date string to handle special cases.
      * 
@@ -93,11 +505,11 @@ public class DateParser {
         String normalized = dateStr.trim();
         
         // Handle case where year is missing (e.g., "June 15" -> "June 15, 2021")
-        if (normalized.matches("^[A-Za-z]+ \\d{1,2}$")) {
+        if (MISSING_YEAR.matcher(normalized).matches()) {
             normalized = normalized + ", 2021";
         }
         // Add comma before year if missing (e.g., "June 15 2021" -> "June 15, 2021")
-        else if (normalized.matches("^[A-Za-z]+ \\d{1,2} \\d{4}$")) {
+        else if (MISSING_COMMA.matcher(normalized).matches()) {
             String[] parts = normalized.split(" ");
             normalized = parts[0] + " " + parts[1] + ", " + parts[2];
         }
@@ -110,10 +522,12 @@ public class DateParser {
      * 
      * @param date the parsed date
      * @param originalDateStr the original date string
+     * @param rovers the rovers the date is requested for
      * @return the validated date
      * @throws DateParsingException if the date is invalid
      */
-    private LocalDate validateDate(LocalDate date, String originalDateStr) throws DateParsingException {
+    private LocalDate validateDate(LocalDate date, String originalDateStr, Collection<RoverMission> rovers)
+            throws DateParsingException {
         try {
             // Check if the day is valid for the month
             int maxDays = date.getMonth().length(date.isLeapYear());
@@ -141,9 +555,23 @@ public class DateParser {
                 throw new DateParsingException(errorMsg);
             }
             
-            // Check if date is too old (before 2012 when Curiosity landed)
-            if (date.isBefore(LocalDate.of(2012, 8, 6))) {
-                String errorMsg = "Invalid date: " + originalDateStr + ". Date must be after Curiosity's landing date (August 6, 2012).";
+            // Check if date is too old (before the first of the rovers landed)
+            RoverMission first = Collections.min(rovers, Comparator.comparing(RoverMission::getLandingDate));
+            if (date.isBefore(first.getLandingDate())) {
+                String errorMsg = "Invalid date: " + originalDateStr + ". Date must be after " + first.getDisplayName()
+                        + "'s landing date (" + first.formatLandingDate() + ").";
+                logger.warn(errorMsg);
+                throw new DateParsingException(errorMsg);
+            }
+            
+            // Check if any of the rovers was still active on the date
+            if (RoverMission.activeOn(date, rovers).isEmpty()) {
+                String errorMsg = rovers.size() == 1
+                        ? "Invalid date: " + originalDateStr + ". Date must be before " + first.getDisplayName()
+                                + "'s end of mission (" + first.formatEndDate() + ")."
+                        : "Invalid date: " + originalDateStr + ". None of the selected rovers ("
+                                + formatRovers(rovers.toArray(new RoverMission[0]), RoverMission::getDisplayName)
+                                + ") was active on this date.";
                 logger.warn(errorMsg);
                 throw new DateParsingException(errorMsg);
             }
@@ -155,4 +583,98 @@ public class DateParser {
             throw new DateParsingException(errorMsg);
         }
     }
+    
+    private static String formatRovers(RoverMission[] rovers, Function<RoverMission, String> name) {
+        return Arrays.stream(rovers).map(name).collect(Collectors.joining(", "));
+    }
+    
+    /**
+     * Resolves the lines of a dates file, optionally prefixed with rover names, to their date
+     * and rovers. Generated files repeat the same spellings many times, so each line is
+     * remembered with its result, or with the exception parsing it threw; the memo keeps the
+     * most recently used lines up to its capacity. The resolver also collects the distinct
+     * dates the lines resolved to, which takes one entry per calendar day whatever the input size.
+     * <p>
+     * A resolver is not thread-safe.
+     */
+    public class Resolver {
+        // A Resolved line, or the exception parsing it threw
+        private final Map<String, Object> memo;
+        private final Set<LocalDate> dates = new HashSet<>();
+        
+        Resolver(int capacity) {
+            this.memo = new LinkedHashMap<String, Object>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+        
+        /**
+         * Resolves a line such as {@code "spirit, opportunity: Jan-15-2005"} or {@code "02/27/17"}.
+         * 
+         * @param line the line, without filter criteria
+         * @return the date and the rovers it is requested for
+         * @throws DateParsingException if the rovers or the date cannot be parsed
+         */
+        public Resolved resolve(String line) throws DateParsingException {
+            Object result = memo.get(line);
+            if (result == null) {
+                try {
+                    result = parse(line);
+                } catch (DateParsingException e) {
+                    result = e;
+                }
+                memo.put(line, result);
+            }
+            if (result instanceof DateParsingException) {
+                throw (DateParsingException) result;
+            }
+            Resolved resolved = (Resolved) result;
+            dates.add(resolved.getDate());
+            return resolved;
+        }
+        
+        private Resolved parse(String line) throws DateParsingException {
+            List<RoverMission> lineRovers = rovers;
+            String dateString = line;
+            int separator = line.indexOf(':');
+            if (separator >= 0) {
+                lineRovers = parseRovers(line.substring(0, separator));
+                dateString = line.substring(separator + 1).trim();
+            }
+            return new Resolved(parseDate(dateString, lineRovers), lineRovers);
+        }
+        
+        /**
+         * Gets the number of distinct dates the lines resolved to.
+         * 
+         * @return the number of unique dates
+         */
+        public int getUniqueDates() {
+            return dates.size();
+        }
+    }
+    
+    /**
+     * A resolved line: its date and the rovers it is requested for.
+     */
+    public static class Resolved {
+        private final LocalDate date;
+        private final List<RoverMission> rovers;
+        
+        Resolved(LocalDate date, List<RoverMission> rovers) {
+            this.date = date;
+            this.rovers = rovers;
+        }
+        
+        public LocalDate getDate() {
+            return date;
+        }
+        
+        public List<RoverMission> getRovers() {
+            return rovers;
+        }
+    }
 }
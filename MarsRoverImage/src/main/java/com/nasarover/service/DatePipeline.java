@@ -0,0 +1,607 @@
+package com.nasarover.service;
+
+import com.nasarover.exception.ApiRequestException;
+import com.nasarover.exception.DateParsingException;
+import com.nasarover.model.Photo;
+import com.nasarover.model.RoverMission;
+import com.nasarover.util.ExecutorUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processes dates in a staged pipeline: parse, fetch metadata and download.
+ * The stages are connected by bounded queues, so metadata calls and image transfers of
+ * several dates overlap while the input is read no faster than the downloads can keep up.
+ * Each date fans out into one job per rover that was active on it, so the rovers of a date
+ * are fetched and downloaded concurrently. Lines that resolve to the same day, such as
+ * {@code 02/27/17} and {@code Feb-27-2017}, share its jobs, so each day and rover is fetched
+ * and downloaded once; each spelling is parsed once, through a {@link DateParser.Resolver}.
+ * A line's outcome is counted once all of its rovers are done. The summary keeps counts
+ * per outcome and rover, and the detail of the lines that failed or were retried only, and
+ * a day is remembered as a few bits once its job is done, so the memory of a run does not
+ * grow with the number of lines.
+ * <p>
+ * A line may name its rovers before the date, e.g. {@code "spirit, opportunity: Jan-15-2005"};
+ * other lines are processed for the parser's default rovers. A line may also hold a date or
+ * sol range, which is expanded as the fetch stage takes its dates and counted as one line
+ * per date, and
+ * end with {@link PhotoFilter} criteria, e.g. {@code "2015-06-03 camera=NAVCAM max=5"}, which
+ * replace the same criteria of the configured filter for its dates. Rovers and sols the
+ * filter excludes get no job at all.
+ */
+public class DatePipeline {
+    private static final Logger logger = LoggerFactory.getLogger(DatePipeline.class);
+
+    /**
+     * Outcome of processing a single date.
+     */
+    public enum Outcome {
+        SUCCESS,
+        INVALID_DATE,
+        NO_IMAGES,
+        FAILED
+    }
+
+    private final DateParser dateParser;
+    private final RoverImageService roverService;
+    private final int fetchWorkers;
+    private final int downloadWorkers;
+    private final int queueCapacity;
+
+    public DatePipeline(DateParser dateParser, RoverImageService roverService,
+                        int fetchWorkers, int downloadWorkers, int queueCapacity) {
+        this.dateParser = dateParser;
+        this.roverService = roverService;
+        this.fetchWorkers = Math.max(1, fetchWorkers);
+        this.downloadWorkers = Math.max(1, downloadWorkers);
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    /**
+     * Runs all dates through the pipeline and waits for them to complete.
+     * Dates are parsed on the calling thread, so invalid dates are reported in input order.
+     * The input is pulled only as fast as the fetch stage takes jobs; if it fails with an
+     * {@link UncheckedIOException}, the dates read so far are still completed and the error is
+     * reported in the summary.
+     *
+     * @param dateStrings the date strings to process
+     * @return the summary of the run
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public Summary run(Iterator<String> dateStrings) throws InterruptedException {
+        BlockingQueue<Job> fetchQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Job> downloadQueue = new ArrayBlockingQueue<>(queueCapacity);
+        Summary summary = new Summary();
+        // Days of the run that have a job, by filter and rover; the map is only touched by the
+        // parse stage
+        Map<PhotoFilter, Map<RoverMission, RoverDays>> days = new HashMap<>();
+        // Repeated spellings of a date are parsed once
+        DateParser.Resolver resolver = dateParser.newResolver();
+        IOException readError = null;
+
+        ExecutorService fetchStage = Executors.newFixedThreadPool(fetchWorkers,
+                ExecutorUtil.daemonThreadFactory("pipeline-fetch"));
+        ExecutorService downloadStage = Executors.newFixedThreadPool(downloadWorkers,
+                ExecutorUtil.daemonThreadFactory("pipeline-download"));
+        try {
+            for (int i = 0; i < fetchWorkers; i++) {
+                fetchStage.execute(() -> runFetchStage(fetchQueue, downloadQueue, summary));
+            }
+            for (int i = 0; i < downloadWorkers; i++) {
+                downloadStage.execute(() -> runDownloadStage(downloadQueue, summary));
+            }
+
+            // Parse stage: blocks when the fetch stage falls behind, which also holds back the
+            // expansion of date ranges
+            int index = 0;
+            try {
+                while (dateStrings.hasNext()) {
+                    String line = dateStrings.next();
+                    Iterator<String> dates;
+                    PhotoFilter filter = roverService.getDefaultFilter();
+                    try {
+                        int criteria = PhotoFilter.indexOfCriteria(line);
+                        if (criteria >= 0) {
+                            filter = parseFilter(line.substring(criteria), filter);
+                            line = line.substring(0, criteria).trim();
+                        }
+                        dates = dateParser.expand(line).iterator();
+                    } catch (DateParsingException e) {
+                        reportInvalid(index++, line, e, summary);
+                        continue;
+                    }
+                    Map<RoverMission, RoverDays> filterDays = days.computeIfAbsent(filter,
+                            f -> new EnumMap<>(RoverMission.class));
+                    while (dates.hasNext()) {
+                        for (Job job : parse(index++, dates.next(), filter, resolver, summary, filterDays)) {
+                            fetchQueue.put(job);
+                        }
+                    }
+                }
+            } catch (UncheckedIOException e) {
+                readError = e.getCause();
+                logger.error("Stopped reading dates: {}", readError.getMessage());
+            }
+
+            // Drain the stages in order, each one receiving an end marker per worker
+            for (int i = 0; i < fetchWorkers; i++) {
+                fetchQueue.put(Job.END);
+            }
+            fetchStage.shutdown();
+            fetchStage.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            for (int i = 0; i < downloadWorkers; i++) {
+                downloadQueue.put(Job.END);
+            }
+            downloadStage.shutdown();
+            downloadStage.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            fetchStage.shutdownNow();
+            downloadStage.shutdownNow();
+        }
+
+        summary.finish(resolver.getUniqueDates(), readError);
+        return summary;
+    }
+
+    private static PhotoFilter parseFilter(String criteria, PhotoFilter defaults) throws DateParsingException {
+        try {
+            return PhotoFilter.parse(criteria, defaults);
+        } catch (IllegalArgumentException e) {
+            throw new DateParsingException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Parses an input line into one job per rover that was active on its date and passes the
+     * filter, recording invalid dates in the summary. A line whose date and rover already have
+     * a job with the same filter joins that job instead.
+     *
+     * @return the new jobs for the fetch stage, empty if the date is invalid or already queued
+     */
+    private List<Job> parse(int index, String line, PhotoFilter filter, DateParser.Resolver resolver,
+                            Summary summary, Map<RoverMission, RoverDays> days) {
+        logger.info("Processing date: {}", line);
+        DateParser.Resolved resolved;
+        try {
+            resolved = resolver.resolve(line);
+        } catch (DateParsingException e) {
+            reportInvalid(index, line, e, summary);
+            return new ArrayList<>();
+        }
+        LocalDate date = resolved.getDate();
+        DateResult result = new DateResult(index, line, date);
+        List<Job> newJobs = new ArrayList<>();
+        for (RoverMission rover : RoverMission.activeOn(date, resolved.getRovers())) {
+            if (!filter.matches(rover, rover.solOn(date))) {
+                logger.info("Skipping {} for date {}, excluded by filter: {}", rover.getDisplayName(), line,
+                        filter);
+                continue;
+            }
+            RoverDays roverDays = days.computeIfAbsent(rover, r -> new RoverDays());
+            if (roverDays.join(date, rover, result)) {
+                logger.info("{} images for {} are already requested", rover.getDisplayName(), line);
+                continue;
+            }
+            Job job = new Job(result, rover, date, filter, roverDays);
+            roverDays.start(job);
+            newJobs.add(job);
+        }
+        // Jobs that complete before this point leave the line's outcome to be counted here
+        if (result.release()) {
+            summary.add(result);
+        }
+        return newJobs;
+    }
+
+    private void reportInvalid(int index, String line, DateParsingException e, Summary summary) {
+        // Print a user-friendly error message
+        System.out.println("ERROR: " + e.getMessage());
+        logger.error("Invalid date {}: {}", line, e.getMessage());
+        summary.add(new DateResult(index, line, null, Outcome.INVALID_DATE));
+    }
+
+    /**
+     * Fetch stage: retrieves the photo metadata of each rover and date and hands it to the
+     * download stage. With streaming parsing, each photo is handed to the download executor
+     * as soon as it is parsed, so the job completes in this stage.
+     */
+    private void runFetchStage(BlockingQueue<Job> fetchQueue, BlockingQueue<Job> downloadQueue, Summary summary) {
+        try {
+            Job job;
+            while ((job = fetchQueue.take()) != Job.END) {
+                try {
+                    if (roverService.isStreamingParse()) {
+                        // Photos go straight to the download executor while the response is parsed
+                        boolean success = roverService.downloadRoverImages(job.rover, job.date, job.filter);
+                        logCompletion(job, success);
+                        record(job, success ? Outcome.SUCCESS : Outcome.NO_IMAGES, summary);
+                        continue;
+                    }
+                    job.photos = roverService.fetchPhotos(job.rover, job.date, job.filter).getPhotos();
+                    downloadQueue.put(job);
+                } catch (ApiRequestException e) {
+                    logger.error("API request failed for {} on date {}: {}", job.rover.getDisplayName(), job.date,
+                            e.getMessage());
+                    record(job, Outcome.NO_IMAGES, summary);
+                } catch (IOException e) {
+                    logger.error("I/O error for {} on date {}: {}", job.rover.getDisplayName(), job.date,
+                            e.getMessage());
+                    record(job, Outcome.NO_IMAGES, summary);
+                } catch (RuntimeException e) {
+                    reportFailure(job, e, summary);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Download stage: downloads the photos of each rover and date.
+     */
+    private void runDownloadStage(BlockingQueue<Job> downloadQueue, Summary summary) {
+        try {
+            Job job;
+            while ((job = downloadQueue.take()) != Job.END) {
+                try {
+                    boolean success = roverService.downloadPhotos(job.rover, job.date, job.photos);
+                    job.photos = null;
+                    logCompletion(job, success);
+                    record(job, success ? Outcome.SUCCESS : Outcome.NO_IMAGES, summary);
+                } catch (RuntimeException e) {
+                    reportFailure(job, e, summary);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void logCompletion(Job job, boolean success) {
+        if (success) {
+            logger.info("Successfully downloaded {} images for date: {}", job.rover.getDisplayName(), job.input());
+        } else {
+            logger.info("No {} images found for date: {}", job.rover.getDisplayName(), job.input());
+        }
+    }
+
+    /**
+     * Records the outcome of a job on every line waiting for it, together with the retries
+     * made for it, and counts the lines that are now done.
+     */
+    private void record(Job job, Outcome outcome, Summary summary) {
+        int retries = roverService.takeRetries(job.rover, job.date);
+        // Retries are counted on the first line only, as they were made once
+        boolean first = true;
+        for (DateResult line : job.days.complete(job, outcome)) {
+            if (line.record(job.rover, outcome, first ? retries : 0)) {
+                summary.add(line);
+            }
+            first = false;
+        }
+    }
+
+    private void reportFailure(Job job, Exception e, Summary summary) {
+        logger.error("Error processing {} images for date {}: {}", job.rover.getDisplayName(), job.input(),
+                e.getMessage());
+        System.out.println("ERROR: Failed to process date " + job.input() + " for "
+                + job.rover.getDisplayName() + ": " + e.getMessage());
+        record(job, Outcome.FAILED, summary);
+    }
+
+    /**
+     * A rover and date travelling through the pipeline, with the input lines waiting for it.
+     * A job is dropped once it completes.
+     */
+    private static class Job {
+        static final Job END = new Job(null, null, null, null, null);
+
+        final DateResult line;
+        final RoverMission rover;
+        final LocalDate date;
+        final PhotoFilter filter;
+        final RoverDays days;
+        List<Photo> photos;
+        // Further lines for the same date, guarded by the days' lock
+        final List<DateResult> duplicates = new ArrayList<>();
+
+        Job(DateResult line, RoverMission rover, LocalDate date, PhotoFilter filter, RoverDays days) {
+            this.line = line;
+            this.rover = rover;
+            this.date = date;
+            this.filter = filter;
+            this.days = days;
+        }
+
+        String input() {
+            return line.getInput();
+        }
+    }
+
+    /**
+     * The days of a filter and rover that have a job, as bits indexed by epoch day, with the
+     * outcome of the jobs that are done: a few kilobytes cover every day of a mission. Only the
+     * jobs in progress are kept as objects.
+     */
+    private static class RoverDays {
+        private final BitSet requested = new BitSet();
+        private final BitSet success = new BitSet();
+        private final BitSet failed = new BitSet();
+        private final Map<Integer, Job> running = new HashMap<>();
+
+        /**
+         * Adds a line to the job of its day: to its waiting lines while the job runs, or with
+         * the outcome at once if it is done.
+         *
+         * @return false if the day has no job yet
+         */
+        synchronized boolean join(LocalDate date, RoverMission rover, DateResult line) {
+            int day = (int) date.toEpochDay();
+            if (!requested.get(day)) {
+                return false;
+            }
+            Job job = running.get(day);
+            if (job != null) {
+                line.expect();
+                job.duplicates.add(line);
+            } else {
+                Outcome outcome = success.get(day) ? Outcome.SUCCESS
+                        : failed.get(day) ? Outcome.FAILED : Outcome.NO_IMAGES;
+                // The parse stage still holds the line, so it is not done yet
+                line.expect();
+                line.record(rover, outcome, 0);
+            }
+            return true;
+        }
+
+        synchronized void start(Job job) {
+            int day = (int) job.date.toEpochDay();
+            requested.set(day);
+            running.put(day, job);
+            job.line.expect();
+        }
+
+        /**
+         * Records the outcome of a job's day and drops the job.
+         *
+         * @return the lines waiting for the job, the first line first
+         */
+        synchronized List<DateResult> complete(Job job, Outcome outcome) {
+            int day = (int) job.date.toEpochDay();
+            running.remove(day);
+            success.set(day, outcome == Outcome.SUCCESS);
+            failed.set(day, outcome == Outcome.FAILED);
+            List<DateResult> lines = new ArrayList<>(job.duplicates.size() + 1);
+            lines.add(job.line);
+            lines.addAll(job.duplicates);
+            return lines;
+        }
+    }
+
+    /**
+     * Result of processing a single line of the input. A valid date has an outcome per rover;
+     * the line succeeds if any rover's images were downloaded.
+     */
+    public static class DateResult {
+        private final int index;
+        private final String input;
+        private final LocalDate date;
+        private final Outcome outcome;
+        private final Map<RoverMission, Outcome> roverOutcomes = new EnumMap<>(RoverMission.class);
+        private int retries;
+        // Rover outcomes still to come, plus one while the parse stage holds the line
+        private int pending = 1;
+
+        public DateResult(int index, String input, LocalDate date, Outcome outcome) {
+            this.index = index;
+            this.input = input;
+            this.date = date;
+            this.outcome = outcome;
+        }
+
+        DateResult(int index, String input, LocalDate date) {
+            this(index, input, date, null);
+        }
+
+        synchronized void expect() {
+            pending++;
+        }
+
+        /**
+         * Records the outcome of a rover.
+         *
+         * @return true if that was the last outcome the line waited for
+         */
+        synchronized boolean record(RoverMission rover, Outcome roverOutcome, int roverRetries) {
+            roverOutcomes.put(rover, roverOutcome);
+            retries += roverRetries;
+            return --pending == 0;
+        }
+
+        /**
+         * Releases the parse stage's hold on the line.
+         *
+         * @return true if no rover outcome is still to come
+         */
+        synchronized boolean release() {
+            return --pending == 0;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getInput() {
+            return input;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        /**
+         * Gets the outcome of the line: the fixed outcome of an invalid date, otherwise the
+         * best outcome of its rovers, where a failure outranks finding no images.
+         *
+         * @return the outcome
+         */
+        public synchronized Outcome getOutcome() {
+            if (outcome != null) {
+                return outcome;
+            }
+            if (roverOutcomes.containsValue(Outcome.SUCCESS)) {
+                return Outcome.SUCCESS;
+            }
+            if (roverOutcomes.containsValue(Outcome.FAILED)) {
+                return Outcome.FAILED;
+            }
+            return Outcome.NO_IMAGES;
+        }
+
+        /**
+         * Gets the outcome of each rover the date was processed for.
+         *
+         * @return the rover outcomes, empty for an invalid date
+         */
+        public synchronized Map<RoverMission, Outcome> getRoverOutcomes() {
+            return new EnumMap<>(roverOutcomes);
+        }
+
+        /**
+         * Gets the number of API requests and downloads that were retried for this date.
+         *
+         * @return the number of retries across all rovers
+         */
+        public synchronized int getRetries() {
+            return retries;
+        }
+    }
+
+    /**
+     * Results of a pipeline run: counts per outcome and rover, and the lines that need
+     * attention.
+     */
+    public static class Summary {
+        private int total;
+        private int retries;
+        private final Map<Outcome, Integer> counts = new EnumMap<>(Outcome.class);
+        private final Map<RoverMission, Map<Outcome, Integer>> roverCounts = new EnumMap<>(RoverMission.class);
+        private final List<DateResult> details = new ArrayList<>();
+        private int uniqueDates;
+        private IOException readError;
+
+        Summary() {
+        }
+
+        /**
+         * Counts a line once all of its rovers are done, keeping it if it failed or was retried.
+         */
+        synchronized void add(DateResult result) {
+            total++;
+            retries += result.getRetries();
+            counts.merge(result.getOutcome(), 1, Integer::sum);
+            Map<RoverMission, Outcome> roverOutcomes = result.getRoverOutcomes();
+            for (Map.Entry<RoverMission, Outcome> entry : roverOutcomes.entrySet()) {
+                roverCounts.computeIfAbsent(entry.getKey(), rover -> new EnumMap<>(Outcome.class))
+                        .merge(entry.getValue(), 1, Integer::sum);
+            }
+            if (result.getOutcome() == Outcome.INVALID_DATE || roverOutcomes.containsValue(Outcome.FAILED)
+                    || result.getRetries() > 0) {
+                details.add(result);
+            }
+        }
+
+        synchronized void finish(int dates, IOException error) {
+            uniqueDates = dates;
+            readError = error;
+        }
+
+        public synchronized int getTotal() {
+            return total;
+        }
+
+        /**
+         * Gets the lines that were invalid, failed for a rover, or needed retries.
+         *
+         * @return the lines in input order
+         */
+        public synchronized List<DateResult> getDetails() {
+            List<DateResult> sorted = new ArrayList<>(details);
+            sorted.sort(Comparator.comparingInt(DateResult::getIndex));
+            return sorted;
+        }
+
+        /**
+         * Gets the error that stopped reading the input before its end.
+         *
+         * @return the error, or null if the whole input was read
+         */
+        public synchronized IOException getReadError() {
+            return readError;
+        }
+
+        public synchronized int count(Outcome outcome) {
+            return counts.getOrDefault(outcome, 0);
+        }
+
+        /**
+         * Gets the number of distinct days among the valid dates, each of which was fetched once.
+         *
+         * @return the number of unique dates
+         */
+        public synchronized int getUniqueDates() {
+            return uniqueDates;
+        }
+
+        /**
+         * Gets the number of retries across all dates.
+         *
+         * @return the total number of retries
+         */
+        public synchronized int getTotalRetries() {
+            return retries;
+        }
+
+        /**
+         * Gets the rovers any date was processed for.
+         *
+         * @return the rovers, in landing order
+         */
+        public synchronized Set<RoverMission> getRovers() {
+            Set<RoverMission> rovers = EnumSet.noneOf(RoverMission.class);
+            rovers.addAll(roverCounts.keySet());
+            return rovers;
+        }
+
+        /**
+         * Counts the dates a rover finished with the given outcome.
+         *
+         * @param rover the rover
+         * @param outcome the outcome
+         * @return the number of dates
+         */
+        public synchronized int count(RoverMission rover, Outcome outcome) {
+            return roverCounts.getOrDefault(rover, Collections.emptyMap()).getOrDefault(outcome, 0);
+        }
+    }
+}
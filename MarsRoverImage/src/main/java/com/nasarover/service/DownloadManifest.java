@@ -0,0 +1,263 @@
+package com.nasarover.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent record of the images that have already been downloaded, keyed by photo id and
+ * by image URL. The manifest is an append-only file with one JSON entry per line, so recording
+ * a download is a single small write; later lines override earlier ones for the same photo,
+ * and the file is compacted on load once it holds mostly superseded entries.
+ */
+public class DownloadManifest implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(DownloadManifest.class);
+
+    private final Path file;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Long, Entry> entriesById = new ConcurrentHashMap<>();
+    private final Map<String, Entry> entriesByUrl = new ConcurrentHashMap<>();
+    private BufferedWriter writer;
+
+    /**
+     * Creates a manifest backed by the given file, loading its existing entries.
+     *
+     * @param file the manifest file, or null for a manifest that only lives in memory
+     */
+    public DownloadManifest(Path file) {
+        this.file = file;
+        if (file != null && Files.isRegularFile(file)) {
+            load();
+        }
+    }
+
+    /**
+     * Looks up the entry recorded for a photo.
+     *
+     * @param photoId the photo id
+     * @return the entry, or null if the photo has not been downloaded
+     */
+    public Entry findByPhotoId(long photoId) {
+        return entriesById.get(photoId);
+    }
+
+    /**
+     * Looks up the most recent entry recorded for an image URL.
+     *
+     * @param imgSrc the image URL
+     * @return the entry, or null if the URL has not been downloaded
+     */
+    public Entry findByUrl(String imgSrc) {
+        return entriesByUrl.get(imgSrc);
+    }
+
+    /**
+     * Records a completed download and appends it to the manifest file.
+     *
+     * @param entry the entry to record
+     */
+    public void record(Entry entry) {
+        entriesById.put(entry.getPhotoId(), entry);
+        entriesByUrl.put(entry.getImgSrc(), entry);
+        if (file == null) {
+            return;
+        }
+        try {
+            String line = objectMapper.writeValueAsString(entry);
+            synchronized (this) {
+                if (writer == null) {
+                    Files.createDirectories(file.toAbsolutePath().getParent());
+                    writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                writer.write(line);
+                writer.newLine();
+                writer.flush();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to update download manifest {}: {}", file, e.getMessage());
+        }
+    }
+
+    public int size() {
+        return entriesById.size();
+    }
+
+    /**
+     * Reads the manifest file. A line that cannot be parsed, such as one cut short by a crash,
+     * is skipped.
+     */
+    private void load() {
+        int lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                lines++;
+                try {
+                    Entry entry = objectMapper.readValue(line, Entry.class);
+                    entriesById.put(entry.getPhotoId(), entry);
+                    entriesByUrl.put(entry.getImgSrc(), entry);
+                } catch (JsonProcessingException e) {
+                    logger.warn("Skipping corrupt line {} of download manifest {}", lines, file);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to read download manifest {}: {}", file, e.getMessage());
+            return;
+        }
+        logger.info("Loaded {} entries from download manifest {}", entriesById.size(), file);
+        if (lines > 2 * entriesById.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the manifest file with only the current entries.
+     */
+    private void compact() {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            for (Entry entry : entriesById.values()) {
+                out.write(objectMapper.writeValueAsString(entry));
+                out.newLine();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to compact download manifest {}: {}", file, e.getMessage());
+            return;
+        }
+        try {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Failed to replace download manifest {}: {}", file, e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close download manifest {}: {}", file, e.getMessage());
+            }
+            writer = null;
+        }
+    }
+
+    /**
+     * A downloaded image.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Entry {
+        private long photoId;
+        private String imgSrc;
+        private String file;
+        private long size;
+        private String sha256;
+        private String etag;
+        private String lastModified;
+
+        public Entry() {
+        }
+
+        public Entry(long photoId, String imgSrc, String file, long size, String sha256,
+                     String etag, String lastModified) {
+            this.photoId = photoId;
+            this.imgSrc = imgSrc;
+            this.file = file;
+            this.size = size;
+            this.sha256 = sha256;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Checks whether this entry describes the given local file for the given URL.
+         * Only the size is compared; hashing every image on each run would cost more disk
+         * reads than the manifest saves.
+         *
+         * @param url the image URL
+         * @param target the local file
+         * @return true if the file exists and matches the recorded size
+         */
+        public boolean matches(String url, Path target) {
+            try {
+                return imgSrc.equals(url) && Files.isRegularFile(target) && Files.size(target) == size;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        public long getPhotoId() {
+            return photoId;
+        }
+
+        public void setPhotoId(long photoId) {
+            this.photoId = photoId;
+        }
+
+        public String getImgSrc() {
+            return imgSrc;
+        }
+
+        public void setImgSrc(String imgSrc) {
+            this.imgSrc = imgSrc;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public void setFile(String file) {
+            this.file = file;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public void setSize(long size) {
+            this.size = size;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        public void setSha256(String sha256) {
+            this.sha256 = sha256;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public void setEtag(String etag) {
+            this.etag = etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public void setLastModified(String lastModified) {
+            this.lastModified = lastModified;
+        }
+    }
+}
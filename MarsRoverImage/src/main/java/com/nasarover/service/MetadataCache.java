@@ -0,0 +1,303 @@
+package com.nasarover.service;
+
+import com.nasarover.model.Camera;
+import com.nasarover.model.Photo;
+import com.nasarover.model.Rover;
+import com.nasarover.model.RoverResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Disk-backed cache of NASA API photo responses, keyed by rover, earth date and page.
+ * <p>
+ * Photo lists of old dates do not change, so they are kept for a long time, while recent
+ * dates, which may still receive new photos, expire quickly. The number of cached responses
+ * is capped, evicting the least recently used one first; a file's modification time tracks
+ * its last use, so the order survives restarts.
+ * <p>
+ * Responses are stored in a compact binary form: cameras and rovers, which repeat on every
+ * photo, are written once per response and referenced by index, and reading the file back is
+ * a sequence of primitive reads instead of a JSON parse.
+ */
+public class MetadataCache {
+    private static final Logger logger = LoggerFactory.getLogger(MetadataCache.class);
+
+    private static final int MAGIC = 0x4D524331; // "MRC1"
+    private static final String FILE_SUFFIX = ".bin";
+
+    private final Path directory;
+    private final Duration recentTtl;
+    private final Duration historicalTtl;
+    private final int recentDays;
+    private final int maxEntries;
+    private final Clock clock;
+    // Access-ordered, so iteration starts with the least recently used entry
+    private final LinkedHashMap<String, Path> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public MetadataCache(Path directory, Duration recentTtl, Duration historicalTtl, int recentDays, int maxEntries) {
+        this(directory, recentTtl, historicalTtl, recentDays, maxEntries, Clock.systemDefaultZone());
+    }
+
+    MetadataCache(Path directory, Duration recentTtl, Duration historicalTtl, int recentDays, int maxEntries,
+                  Clock clock) {
+        this.directory = directory;
+        this.recentTtl = recentTtl;
+        this.historicalTtl = historicalTtl;
+        this.recentDays = recentDays;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.clock = clock;
+        loadIndex();
+    }
+
+    /**
+     * Gets a cached response.
+     *
+     * @param rover the rover name
+     * @param date the earth date
+     * @param page the page number
+     * @return the cached response, or null if there is no fresh entry
+     */
+    public RoverResponse get(String rover, LocalDate date, int page) {
+        String key = key(rover, date, page);
+        Path file;
+        synchronized (entries) {
+            file = entries.get(key);
+        }
+        if (file == null) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Unknown cache file format");
+            }
+            long storedAt = in.readLong();
+            if (clock.millis() - storedAt > ttl(date).toMillis()) {
+                logger.debug("Cached metadata for {} expired", key);
+                remove(key, file);
+                return null;
+            }
+            RoverResponse response = readResponse(in);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(clock.millis()));
+            logger.debug("Using cached metadata for {}", key);
+            return response;
+        } catch (IOException e) {
+            logger.warn("Discarding unreadable cached metadata for {}: {}", key, e.getMessage());
+            remove(key, file);
+            return null;
+        }
+    }
+
+    /**
+     * Stores a response in the cache.
+     *
+     * @param rover the rover name
+     * @param date the earth date
+     * @param page the page number
+     * @param response the response to store
+     */
+    public void put(String rover, LocalDate date, int page, RoverResponse response) {
+        String key = key(rover, date, page);
+        Path file = directory.resolve(key + FILE_SUFFIX);
+        try {
+            Files.createDirectories(directory);
+            Path tempFile = Files.createTempFile(directory, key, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeLong(clock.millis());
+                writeResponse(out, response);
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to cache metadata for {}: {}", key, e.getMessage());
+            return;
+        }
+
+        List<Path> evicted = new ArrayList<>();
+        synchronized (entries) {
+            entries.put(key, file);
+            Iterator<Map.Entry<String, Path>> oldest = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && oldest.hasNext()) {
+                evicted.add(oldest.next().getValue());
+                oldest.remove();
+            }
+        }
+        for (Path stale : evicted) {
+            deleteQuietly(stale);
+        }
+    }
+
+    /**
+     * Gets the time to live of a date's entry: short for recent dates, long for old ones.
+     */
+    Duration ttl(LocalDate date) {
+        long age = ChronoUnit.DAYS.between(date, LocalDate.now(clock));
+        return age > recentDays ? historicalTtl : recentTtl;
+    }
+
+    private void remove(String key, Path file) {
+        synchronized (entries) {
+            entries.remove(key, file);
+        }
+        deleteQuietly(file);
+    }
+
+    /**
+     * Builds the LRU order from the cache files on disk, oldest use first.
+     */
+    private void loadIndex() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        Map<Path, Long> lastUsed = new HashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+                lastUsed.put(file, Files.getLastModifiedTime(file).toMillis());
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to read metadata cache directory {}: {}", directory, e.getMessage());
+            return;
+        }
+        files.sort(Comparator.comparingLong(lastUsed::get));
+        synchronized (entries) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                entries.put(name.substring(0, name.length() - FILE_SUFFIX.length()), file);
+            }
+        }
+        logger.debug("Found {} cached metadata responses in {}", files.size(), directory);
+    }
+
+    private static String key(String rover, LocalDate date, int page) {
+        return rover.toLowerCase() + "-" + date + "-p" + page;
+    }
+
+    private static void writeResponse(DataOutputStream out, RoverResponse response) throws IOException {
+        List<Photo> photos = response.getPhotos() != null ? response.getPhotos() : new ArrayList<>();
+        Map<Long, Integer> cameraIndex = new LinkedHashMap<>();
+        Map<Long, Integer> roverIndex = new LinkedHashMap<>();
+        List<Camera> cameras = new ArrayList<>();
+        List<Rover> rovers = new ArrayList<>();
+        for (Photo photo : photos) {
+            if (photo.getCamera() != null && cameraIndex.putIfAbsent(photo.getCamera().getId(), cameras.size()) == null) {
+                cameras.add(photo.getCamera());
+            }
+            if (photo.getRover() != null && roverIndex.putIfAbsent(photo.getRover().getId(), rovers.size()) == null) {
+                rovers.add(photo.getRover());
+            }
+        }
+
+        out.writeInt(cameras.size());
+        for (Camera camera : cameras) {
+            out.writeLong(camera.getId());
+            writeString(out, camera.getName());
+            out.writeLong(camera.getRoverId());
+            writeString(out, camera.getFullName());
+        }
+        out.writeInt(rovers.size());
+        for (Rover rover : rovers) {
+            out.writeLong(rover.getId());
+            writeString(out, rover.getName());
+            writeString(out, rover.getLandingDate());
+            writeString(out, rover.getLaunchDate());
+            writeString(out, rover.getStatus());
+        }
+        out.writeInt(photos.size());
+        for (Photo photo : photos) {
+            out.writeLong(photo.getId());
+            out.writeLong(photo.getSol());
+            writeString(out, photo.getImgSrc());
+            writeString(out, photo.getEarthDate());
+            out.writeInt(photo.getCamera() != null ? cameraIndex.get(photo.getCamera().getId()) : -1);
+            out.writeInt(photo.getRover() != null ? roverIndex.get(photo.getRover().getId()) : -1);
+        }
+    }
+
+    private static RoverResponse readResponse(DataInputStream in) throws IOException {
+        int cameraCount = in.readInt();
+        List<Camera> cameras = new ArrayList<>(cameraCount);
+        for (int i = 0; i < cameraCount; i++) {
+            Camera camera = new Camera();
+            camera.setId(in.readLong());
+            camera.setName(readString(in));
+            camera.setRoverId(in.readLong());
+            camera.setFullName(readString(in));
+            cameras.add(camera);
+        }
+        int roverCount = in.readInt();
+        List<Rover> rovers = new ArrayList<>(roverCount);
+        for (int i = 0; i < roverCount; i++) {
+            Rover rover = new Rover();
+            rover.setId(in.readLong());
+            rover.setName(readString(in));
+            rover.setLandingDate(readString(in));
+            rover.setLaunchDate(readString(in));
+            rover.setStatus(readString(in));
+            rovers.add(rover);
+        }
+        int photoCount = in.readInt();
+        List<Photo> photos = new ArrayList<>(photoCount);
+        for (int i = 0; i < photoCount; i++) {
+            Photo photo = new Photo();
+            photo.setId(in.readLong());
+            photo.setSol(in.readLong());
+            photo.setImgSrc(readString(in));
+            photo.setEarthDate(readString(in));
+            int camera = in.readInt();
+            photo.setCamera(camera >= 0 ? cameras.get(camera) : null);
+            int rover = in.readInt();
+            photo.setRover(rover >= 0 ? rovers.get(rover) : null);
+            photos.add(photo);
+        }
+        RoverResponse response = new RoverResponse();
+        response.setPhotos(photos);
+        return response;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.debug("Failed to delete cache file {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.nasarover.service;
+
+import com.nasarover.model.Photo;
+import com.nasarover.model.RoverMission;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Selects the photos of a date to download, by camera, sol and rover, and caps their number.
+ * <p>
+ * A filter is written as space separated {@code key=value} criteria, e.g.
+ * {@code camera=FHAZ,RHAZ,NAVCAM sol=1000..1100 rover=curiosity max=20}, in the
+ * {@code photo.filter} property or after the date on a line of the dates file. The criteria
+ * are applied as early as possible: rovers and sols are known from the date alone, so a rover
+ * that does not match is never requested; a single camera is passed to the API, which then
+ * only lists that camera's photos; everything else is checked before a photo is downloaded.
+ */
+public final class PhotoFilter {
+
+    /**
+     * A filter that selects every photo.
+     */
+    public static final PhotoFilter NONE = new PhotoFilter(Collections.emptySet(), null,
+            Long.MIN_VALUE, Long.MAX_VALUE, 0);
+
+    private final Set<String> cameras;
+    private final Set<RoverMission> rovers;
+    private final long fromSol;
+    private final long toSol;
+    private final int maxPhotos;
+
+    private PhotoFilter(Set<String> cameras, Set<RoverMission> rovers, long fromSol, long toSol, int maxPhotos) {
+        this.cameras = cameras;
+        this.rovers = rovers;
+        this.fromSol = fromSol;
+        this.toSol = toSol;
+        this.maxPhotos = maxPhotos;
+    }
+
+    /**
+     * Parses a filter, starting from defaults that criteria of the same key replace.
+     *
+     * @param spec the criteria, e.g. "camera=NAVCAM max=10"
+     * @param defaults the filter to start from
+     * @return the filter
+     * @throws IllegalArgumentException if a criterion is malformed or unknown
+     */
+    public static PhotoFilter parse(String spec, PhotoFilter defaults) {
+        Set<String> cameras = defaults.cameras;
+        Set<RoverMission> rovers = defaults.rovers;
+        long fromSol = defaults.fromSol;
+        long toSol = defaults.toSol;
+        int maxPhotos = defaults.maxPhotos;
+        for (String criterion : spec.trim().split("\\s+")) {
+            if (criterion.isEmpty()) {
+                continue;
+            }
+            int equals = criterion.indexOf('=');
+            String key = equals > 0 ? criterion.substring(0, equals).toLowerCase(Locale.ROOT) : criterion;
+            String value = criterion.substring(equals + 1);
+            switch (key) {
+                case "camera":
+                    cameras = new TreeSet<>();
+                    for (String name : value.split(",")) {
+                        if (!name.trim().isEmpty()) {
+                            cameras.add(name.trim().toUpperCase(Locale.ROOT));
+                        }
+                    }
+                    break;
+                case "rover":
+                    rovers = EnumSet.noneOf(RoverMission.class);
+                    for (String name : value.split(",")) {
+                        if (name.trim().isEmpty()) {
+                            continue;
+                        }
+                        RoverMission rover = RoverMission.fromName(name);
+                        if (rover == null) {
+                            throw new IllegalArgumentException("Unknown rover in filter: " + name.trim());
+                        }
+                        rovers.add(rover);
+                    }
+                    break;
+                case "sol":
+                    String[] range = value.split("\\.\\.", 2);
+                    try {
+                        fromSol = range[0].isEmpty() ? Long.MIN_VALUE : Long.parseLong(range[0]);
+                        String last = range[range.length - 1];
+                        toSol = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid sol filter: " + value);
+                    }
+                    break;
+                case "max":
+                    try {
+                        maxPhotos = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid max filter: " + value);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown filter criterion: " + criterion
+                            + ". Use camera=, sol=, rover= or max=.");
+            }
+        }
+        return new PhotoFilter(cameras, rovers, fromSol, toSol, Math.max(0, maxPhotos));
+    }
+
+    /**
+     * Finds where the filter criteria of a dates file line start: at the first space separated
+     * word holding an equals sign, which no date format contains.
+     *
+     * @param line the line
+     * @return the index of the criteria, or -1 if the line has none
+     */
+    public static int indexOfCriteria(String line) {
+        int equals = line.indexOf('=');
+        if (equals < 0) {
+            return -1;
+        }
+        int start = equals;
+        while (start > 0 && !Character.isWhitespace(line.charAt(start - 1))) {
+            start--;
+        }
+        return start;
+    }
+
+    public boolean isEmpty() {
+        return equals(NONE);
+    }
+
+    /**
+     * Checks whether a rover's photos of a date can match, before anything is fetched.
+     *
+     * @param rover the rover
+     * @param sol the rover's sol on the date
+     * @return false if the rover or sol is filtered out
+     */
+    public boolean matches(RoverMission rover, long sol) {
+        return (rovers == null || rovers.contains(rover)) && sol >= fromSol && sol <= toSol;
+    }
+
+    /**
+     * Checks a fetched photo against the camera and sol criteria.
+     *
+     * @param photo the photo
+     * @return true if the photo is selected
+     */
+    public boolean matches(Photo photo) {
+        if (photo.getSol() < fromSol || photo.getSol() > toSol) {
+            return false;
+        }
+        return cameras.isEmpty() || (photo.getCamera() != null && photo.getCamera().getName() != null
+                && cameras.contains(photo.getCamera().getName().toUpperCase(Locale.ROOT)));
+    }
+
+    /**
+     * Gets the camera to pass to the API; the API takes a single camera, so several cameras
+     * are filtered after the photo list arrives.
+     *
+     * @return the camera name, or null to request every camera
+     */
+    public String getApiCamera() {
+        return cameras.size() == 1 ? cameras.iterator().next() : null;
+    }
+
+    /**
+     * Gets the maximum number of photos to download per rover and date.
+     *
+     * @return the maximum, or 0 for no limit
+     */
+    public int getMaxPhotos() {
+        return maxPhotos;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PhotoFilter)) {
+            return false;
+        }
+        PhotoFilter other = (PhotoFilter) o;
+        return fromSol == other.fromSol && toSol == other.toSol && maxPhotos == other.maxPhotos
+                && cameras.equals(other.cameras) && Objects.equals(rovers, other.rovers);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(cameras, rovers, fromSol, toSol, maxPhotos);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder spec = new StringBuilder();
+        if (!cameras.isEmpty()) {
+            spec.append(" camera=").append(String.join(",", cameras));
+        }
+        if (rovers != null) {
+            spec.append(" rover=");
+            rovers.forEach(rover -> spec.append(rover.getApiName()).append(','));
+            spec.setLength(spec.length() - (rovers.isEmpty() ? 0 : 1));
+        }
+        if (fromSol != Long.MIN_VALUE || toSol != Long.MAX_VALUE) {
+            spec.append(" sol=").append(fromSol != Long.MIN_VALUE ? fromSol : "")
+                .append("..").append(toSol != Long.MAX_VALUE ? toSol : "");
+        }
+        if (maxPhotos > 0) {
+            spec.append(" max=").append(maxPhotos);
+        }
+        return spec.toString().trim();
+    }
+}
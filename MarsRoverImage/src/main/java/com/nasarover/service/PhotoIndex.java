@@ -0,0 +1,735 @@
+package com.nasarover.service;
+
+import com.nasarover.model.Camera;
+import com.nasarover.model.Photo;
+import com.nasarover.model.Rover;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Local, persistent index of every photo record fetched from the API, so photos can be
+ * looked up by date, sol, camera and rover without a network.
+ * <p>
+ * Photos are kept in immutable segment files with a column per field: ids, sols, earth dates
+ * as epoch days, camera and rover codes referring to a per-segment dictionary, and image URLs
+ * as offsets into one byte block. Segments are memory-mapped, and a scan reads only the
+ * columns its filter needs; the date and sol range of each segment is kept in its header, so
+ * segments that cannot match are skipped without touching their columns. New photos collect
+ * in memory and are written as a new segment on {@link #flush()}; once there are many
+ * segments, they are merged into one.
+ */
+public class PhotoIndex implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(PhotoIndex.class);
+
+    private static final int MAGIC = 0x4D504931; // "MPI1"
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".bin";
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int FLUSH_ROWS = 50_000;
+    private static final int MAX_SEGMENTS = 8;
+
+    private final Path directory;
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<Long, Photo> pending = new LinkedHashMap<>();
+    private long nextSegment;
+
+    /**
+     * Opens the index in a directory, creating it on the first flush.
+     *
+     * @param directory the directory holding the segment files
+     */
+    public PhotoIndex(Path directory) {
+        this.directory = directory;
+        load();
+    }
+
+    /**
+     * Adds a photo, unless a photo with the same id is already indexed.
+     *
+     * @param photo the photo
+     */
+    public synchronized void add(Photo photo) {
+        if (pending.containsKey(photo.getId())) {
+            return;
+        }
+        for (Segment segment : segments) {
+            if (segment.containsId(photo.getId())) {
+                return;
+            }
+        }
+        pending.put(photo.getId(), photo);
+        if (pending.size() >= FLUSH_ROWS) {
+            flush();
+        }
+    }
+
+    /**
+     * Finds the photos matching a filter.
+     *
+     * @param filter the filter
+     * @return the matching photos, ordered by id
+     */
+    public synchronized List<Photo> query(Filter filter) {
+        Map<Long, Photo> matches = new TreeMap<>();
+        for (Segment segment : segments) {
+            segment.scan(filter, photo -> matches.putIfAbsent(photo.getId(), photo));
+        }
+        for (Photo photo : pending.values()) {
+            if (filter.matches(photo)) {
+                matches.putIfAbsent(photo.getId(), photo);
+            }
+        }
+        return new ArrayList<>(matches.values());
+    }
+
+    /**
+     * Gets the number of indexed photos.
+     */
+    public synchronized long size() {
+        long size = pending.size();
+        for (Segment segment : segments) {
+            size += segment.rows;
+        }
+        return size;
+    }
+
+    /**
+     * Writes the photos added since the last flush as a new segment.
+     */
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            segments.add(Segment.write(nextSegmentPath(), pending.values()));
+            pending.clear();
+            if (segments.size() > MAX_SEGMENTS) {
+                compact();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to write photo index segment in {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * Flushes the photos added since the last flush.
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+
+    /**
+     * Merges all segments into one. The merge streams the columns of the mapped segments
+     * into the new file, so memory use is independent of the number of photos in the index.
+     */
+    private void compact() throws IOException {
+        Segment merged = Segment.merge(nextSegmentPath(), segments);
+        for (Segment segment : segments) {
+            try {
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                logger.debug("Failed to delete merged segment {}: {}", segment.path, e.getMessage());
+            }
+        }
+        segments.clear();
+        segments.add(merged);
+        logger.debug("Merged the photo index into one segment of {} photos", merged.rows);
+    }
+
+    private Path nextSegmentPath() {
+        return directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, nextSegment++, SEGMENT_SUFFIX));
+    }
+
+    private void load() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            logger.warn("Failed to list photo index {}: {}", directory, e.getMessage());
+            return;
+        }
+        files.sort(Comparator.naturalOrder());
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            try {
+                long number = Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length()));
+                nextSegment = Math.max(nextSegment, number + 1);
+                segments.add(Segment.open(file));
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Skipping unreadable photo index segment {}: {}", file, e.getMessage());
+            }
+        }
+        logger.debug("Loaded {} photos in {} segments from {}", size(), segments.size(), directory);
+    }
+
+    /**
+     * Criteria of a photo query; a criterion that is not set matches every photo.
+     */
+    public static class Filter {
+        private LocalDate fromDate;
+        private LocalDate toDate;
+        private long fromSol = Long.MIN_VALUE;
+        private long toSol = Long.MAX_VALUE;
+        private Set<String> cameras;
+        private Set<String> rovers;
+
+        /**
+         * Restricts the earth dates, inclusive; either bound may be null.
+         */
+        public Filter dates(LocalDate from, LocalDate to) {
+            this.fromDate = from;
+            this.toDate = to;
+            return this;
+        }
+
+        /**
+         * Restricts the sols, inclusive.
+         */
+        public Filter sols(long from, long to) {
+            this.fromSol = from;
+            this.toSol = to;
+            return this;
+        }
+
+        /**
+         * Restricts the cameras by abbreviated name, e.g. NAVCAM, ignoring case.
+         */
+        public Filter cameras(Collection<String> names) {
+            this.cameras = normalize(names);
+            return this;
+        }
+
+        /**
+         * Restricts the rovers by name, ignoring case.
+         */
+        public Filter rovers(Collection<String> names) {
+            this.rovers = normalize(names);
+            return this;
+        }
+
+        boolean matches(Photo photo) {
+            int day = epochDay(photo.getEarthDate());
+            return matchesDay(day) && photo.getSol() >= fromSol && photo.getSol() <= toSol
+                    && matchesName(cameras, photo.getCamera() != null ? photo.getCamera().getName() : null)
+                    && matchesName(rovers, photo.getRover() != null ? photo.getRover().getName() : null);
+        }
+
+        boolean matchesDay(int day) {
+            if (fromDate == null && toDate == null) {
+                return true;
+            }
+            return day != NO_DATE && (fromDate == null || day >= fromDate.toEpochDay())
+                    && (toDate == null || day <= toDate.toEpochDay());
+        }
+
+        /**
+         * Checks whether a segment holding the given ranges may hold matching photos.
+         */
+        boolean mayMatch(int minDay, int maxDay, long minSol, long maxSol) {
+            if (fromDate != null && maxDay < fromDate.toEpochDay()) {
+                return false;
+            }
+            if (toDate != null && (minDay == NO_DATE || minDay > toDate.toEpochDay())) {
+                return false;
+            }
+            return maxSol >= fromSol && minSol <= toSol;
+        }
+
+        static boolean matchesName(Set<String> names, String name) {
+            return names == null || (name != null && names.contains(name.toUpperCase(Locale.ROOT)));
+        }
+
+        private static Set<String> normalize(Collection<String> names) {
+            if (names == null || names.isEmpty()) {
+                return null;
+            }
+            Set<String> normalized = new HashSet<>();
+            for (String name : names) {
+                normalized.add(name.trim().toUpperCase(Locale.ROOT));
+            }
+            return normalized;
+        }
+    }
+
+    /**
+     * An immutable, memory-mapped segment file. After a header with the row count and the date
+     * and sol ranges come the camera and rover dictionaries, then the columns, each a
+     * contiguous array: ids (ascending), sols, epoch days, camera codes, rover codes, image
+     * URL end offsets, and the image URL bytes.
+     */
+    private static class Segment {
+        final Path path;
+        final int rows;
+        final int minDay;
+        final int maxDay;
+        final int minSol;
+        final int maxSol;
+        final Camera[] cameras;
+        final Rover[] rovers;
+        final LongBuffer ids;
+        final IntBuffer sols;
+        final IntBuffer days;
+        final ShortBuffer cameraCodes;
+        final ShortBuffer roverCodes;
+        final IntBuffer urlEnds;
+        final ByteBuffer urls;
+
+        private Segment(Path path, ByteBuffer buffer) throws IOException {
+            this.path = path;
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Unknown photo index format");
+            }
+            rows = buffer.getInt();
+            minDay = buffer.getInt();
+            maxDay = buffer.getInt();
+            minSol = buffer.getInt();
+            maxSol = buffer.getInt();
+            cameras = new Camera[buffer.getInt()];
+            for (int i = 0; i < cameras.length; i++) {
+                Camera camera = new Camera();
+                camera.setId(buffer.getLong());
+                camera.setName(getString(buffer));
+                camera.setRoverId(buffer.getLong());
+                camera.setFullName(getString(buffer));
+                cameras[i] = camera;
+            }
+            rovers = new Rover[buffer.getInt()];
+            for (int i = 0; i < rovers.length; i++) {
+                Rover rover = new Rover();
+                rover.setId(buffer.getLong());
+                rover.setName(getString(buffer));
+                rover.setLandingDate(getString(buffer));
+                rover.setLaunchDate(getString(buffer));
+                rover.setStatus(getString(buffer));
+                rovers[i] = rover;
+            }
+            ids = column(buffer, rows * Long.BYTES).asLongBuffer();
+            sols = column(buffer, rows * Integer.BYTES).asIntBuffer();
+            days = column(buffer, rows * Integer.BYTES).asIntBuffer();
+            cameraCodes = column(buffer, rows * Short.BYTES).asShortBuffer();
+            roverCodes = column(buffer, rows * Short.BYTES).asShortBuffer();
+            urlEnds = column(buffer, rows * Integer.BYTES).asIntBuffer();
+            urls = column(buffer, rows > 0 ? urlEnds.get(rows - 1) : 0);
+        }
+
+        static Segment open(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                return new Segment(path, buffer);
+            }
+        }
+
+        boolean containsId(long id) {
+            int low = 0;
+            int high = rows - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long value = ids.get(middle);
+                if (value < id) {
+                    low = middle + 1;
+                } else if (value > id) {
+                    high = middle - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void scan(Filter filter, Consumer<Photo> sink) {
+            if (rows == 0 || !filter.mayMatch(minDay, maxDay, minSol, maxSol)) {
+                return;
+            }
+            // Name filters are resolved against the dictionaries once, then compared by code
+            boolean[] cameraMatches = new boolean[cameras.length];
+            boolean anyCamera = filter.cameras == null;
+            for (int i = 0; i < cameras.length; i++) {
+                cameraMatches[i] = Filter.matchesName(filter.cameras, cameras[i].getName());
+                anyCamera |= cameraMatches[i];
+            }
+            boolean[] roverMatches = new boolean[rovers.length];
+            boolean anyRover = filter.rovers == null;
+            for (int i = 0; i < rovers.length; i++) {
+                roverMatches[i] = Filter.matchesName(filter.rovers, rovers[i].getName());
+                anyRover |= roverMatches[i];
+            }
+            if (!anyCamera || !anyRover) {
+                return;
+            }
+            boolean checkSols = filter.fromSol > minSol || filter.toSol < maxSol;
+            for (int row = 0; row < rows; row++) {
+                if (checkSols && (sols.get(row) < filter.fromSol || sols.get(row) > filter.toSol)) {
+                    continue;
+                }
+                if (!filter.matchesDay(days.get(row))) {
+                    continue;
+                }
+                if (!matchesCode(filter.cameras, cameraMatches, cameraCodes.get(row))
+                        || !matchesCode(filter.rovers, roverMatches, roverCodes.get(row))) {
+                    continue;
+                }
+                sink.accept(photo(row));
+            }
+        }
+
+        private static boolean matchesCode(Set<String> names, boolean[] matches, short code) {
+            return names == null || (code >= 0 && matches[code]);
+        }
+
+        private Photo photo(int row) {
+            Photo photo = new Photo();
+            photo.setId(ids.get(row));
+            photo.setSol(sols.get(row));
+            int day = days.get(row);
+            photo.setEarthDate(day != NO_DATE ? LocalDate.ofEpochDay(day).toString() : null);
+            short camera = cameraCodes.get(row);
+            photo.setCamera(camera >= 0 ? cameras[camera] : null);
+            short rover = roverCodes.get(row);
+            photo.setRover(rover >= 0 ? rovers[rover] : null);
+            int start = row > 0 ? urlEnds.get(row - 1) : 0;
+            int end = urlEnds.get(row);
+            if (end > start) {
+                byte[] url = new byte[end - start];
+                ByteBuffer slice = urls.duplicate();
+                slice.position(start);
+                slice.get(url);
+                photo.setImgSrc(new String(url, StandardCharsets.UTF_8));
+            }
+            return photo;
+        }
+
+        /**
+         * Writes photos as a segment file, atomically, and opens it.
+         */
+        static Segment write(Path path, Collection<Photo> photos) throws IOException {
+            Photo[] rows = photos.toArray(new Photo[0]);
+            Arrays.sort(rows, Comparator.comparingLong(Photo::getId));
+            Map<Long, Integer> cameraCodes = new LinkedHashMap<>();
+            Map<Long, Integer> roverCodes = new LinkedHashMap<>();
+            List<Camera> cameras = new ArrayList<>();
+            List<Rover> rovers = new ArrayList<>();
+            int minDay = NO_DATE;
+            int maxDay = NO_DATE;
+            int minSol = Integer.MAX_VALUE;
+            int maxSol = Integer.MIN_VALUE;
+            for (Photo photo : rows) {
+                if (photo.getCamera() != null && cameraCodes.putIfAbsent(photo.getCamera().getId(), cameras.size()) == null) {
+                    cameras.add(photo.getCamera());
+                }
+                if (photo.getRover() != null && roverCodes.putIfAbsent(photo.getRover().getId(), rovers.size()) == null) {
+                    rovers.add(photo.getRover());
+                }
+                int day = epochDay(photo.getEarthDate());
+                if (day != NO_DATE) {
+                    minDay = minDay == NO_DATE ? day : Math.min(minDay, day);
+                    maxDay = Math.max(maxDay, day);
+                }
+                minSol = Math.min(minSol, sol(photo));
+                maxSol = Math.max(maxSol, sol(photo));
+            }
+            if (cameras.size() > Short.MAX_VALUE || rovers.size() > Short.MAX_VALUE) {
+                throw new IOException("Too many distinct cameras or rovers for one segment");
+            }
+
+            Path temp = temp(path);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                writeHeader(out, rows.length, minDay, maxDay, minSol, maxSol, cameras, rovers);
+                for (Photo photo : rows) {
+                    out.writeLong(photo.getId());
+                }
+                for (Photo photo : rows) {
+                    out.writeInt(sol(photo));
+                }
+                for (Photo photo : rows) {
+                    out.writeInt(epochDay(photo.getEarthDate()));
+                }
+                for (Photo photo : rows) {
+                    out.writeShort(photo.getCamera() != null ? cameraCodes.get(photo.getCamera().getId()) : -1);
+                }
+                for (Photo photo : rows) {
+                    out.writeShort(photo.getRover() != null ? roverCodes.get(photo.getRover().getId()) : -1);
+                }
+                byte[][] urls = new byte[rows.length][];
+                int end = 0;
+                for (int i = 0; i < rows.length; i++) {
+                    urls[i] = rows[i].getImgSrc() != null
+                            ? rows[i].getImgSrc().getBytes(StandardCharsets.UTF_8) : new byte[0];
+                    end += urls[i].length;
+                    out.writeInt(end);
+                }
+                for (byte[] url : urls) {
+                    out.write(url);
+                }
+            }
+            return publish(temp, path);
+        }
+
+        /**
+         * Merges segments into one segment file, atomically, and opens it. Rows are taken in
+         * id order and each column is copied in turn from the mapped segments, with camera and
+         * rover codes remapped to a merged dictionary; no photo records are built.
+         */
+        static Segment merge(Path path, List<Segment> parts) throws IOException {
+            Map<Long, Integer> cameraCodes = new LinkedHashMap<>();
+            Map<Long, Integer> roverCodes = new LinkedHashMap<>();
+            List<Camera> cameras = new ArrayList<>();
+            List<Rover> rovers = new ArrayList<>();
+            short[][] cameraMaps = new short[parts.size()][];
+            short[][] roverMaps = new short[parts.size()][];
+            long rows = 0;
+            long urlBytes = 0;
+            int minDay = NO_DATE;
+            int maxDay = NO_DATE;
+            int minSol = Integer.MAX_VALUE;
+            int maxSol = Integer.MIN_VALUE;
+            for (int p = 0; p < parts.size(); p++) {
+                Segment part = parts.get(p);
+                cameraMaps[p] = new short[part.cameras.length];
+                for (int i = 0; i < part.cameras.length; i++) {
+                    Integer code = cameraCodes.putIfAbsent(part.cameras[i].getId(), cameras.size());
+                    if (code == null) {
+                        code = cameras.size();
+                        cameras.add(part.cameras[i]);
+                    }
+                    cameraMaps[p][i] = (short) (int) code;
+                }
+                roverMaps[p] = new short[part.rovers.length];
+                for (int i = 0; i < part.rovers.length; i++) {
+                    Integer code = roverCodes.putIfAbsent(part.rovers[i].getId(), rovers.size());
+                    if (code == null) {
+                        code = rovers.size();
+                        rovers.add(part.rovers[i]);
+                    }
+                    roverMaps[p][i] = (short) (int) code;
+                }
+                if (part.rows == 0) {
+                    continue;
+                }
+                rows += part.rows;
+                urlBytes += part.urls.limit();
+                if (part.minDay != NO_DATE) {
+                    minDay = minDay == NO_DATE ? part.minDay : Math.min(minDay, part.minDay);
+                    maxDay = Math.max(maxDay, part.maxDay);
+                }
+                minSol = Math.min(minSol, part.minSol);
+                maxSol = Math.max(maxSol, part.maxSol);
+            }
+            if (cameras.size() > Short.MAX_VALUE || rovers.size() > Short.MAX_VALUE) {
+                throw new IOException("Too many distinct cameras or rovers for one segment");
+            }
+            if (rows * Long.BYTES > Integer.MAX_VALUE || urlBytes > Integer.MAX_VALUE) {
+                throw new IOException("Too many photos for one segment");
+            }
+
+            Path temp = temp(path);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                writeHeader(out, (int) rows, minDay, maxDay, minSol, maxSol, cameras, rovers);
+                MergeOrder order = new MergeOrder(parts);
+                while (order.next()) {
+                    out.writeLong(order.segment().ids.get(order.row));
+                }
+                order = new MergeOrder(parts);
+                while (order.next()) {
+                    out.writeInt(order.segment().sols.get(order.row));
+                }
+                order = new MergeOrder(parts);
+                while (order.next()) {
+                    out.writeInt(order.segment().days.get(order.row));
+                }
+                order = new MergeOrder(parts);
+                while (order.next()) {
+                    short code = order.segment().cameraCodes.get(order.row);
+                    out.writeShort(code >= 0 ? cameraMaps[order.part][code] : -1);
+                }
+                order = new MergeOrder(parts);
+                while (order.next()) {
+                    short code = order.segment().roverCodes.get(order.row);
+                    out.writeShort(code >= 0 ? roverMaps[order.part][code] : -1);
+                }
+                int end = 0;
+                order = new MergeOrder(parts);
+                while (order.next()) {
+                    end += order.segment().urlLength(order.row);
+                    out.writeInt(end);
+                }
+                byte[] url = new byte[256];
+                order = new MergeOrder(parts);
+                while (order.next()) {
+                    Segment segment = order.segment();
+                    int length = segment.urlLength(order.row);
+                    if (length > url.length) {
+                        url = new byte[Math.max(length, url.length * 2)];
+                    }
+                    ByteBuffer slice = segment.urls.duplicate();
+                    slice.position(order.row > 0 ? segment.urlEnds.get(order.row - 1) : 0);
+                    slice.get(url, 0, length);
+                    out.write(url, 0, length);
+                }
+            }
+            return publish(temp, path);
+        }
+
+        private int urlLength(int row) {
+            return urlEnds.get(row) - (row > 0 ? urlEnds.get(row - 1) : 0);
+        }
+
+        private static Path temp(Path path) {
+            return path.resolveSibling(path.getFileName() + ".tmp");
+        }
+
+        private static Segment publish(Path temp, Path path) throws IOException {
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return open(path);
+        }
+
+        private static void writeHeader(DataOutputStream out, int rows, int minDay, int maxDay, int minSol,
+                int maxSol, List<Camera> cameras, List<Rover> rovers) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(rows);
+            out.writeInt(minDay);
+            out.writeInt(maxDay);
+            out.writeInt(minSol);
+            out.writeInt(maxSol);
+            out.writeInt(cameras.size());
+            for (Camera camera : cameras) {
+                out.writeLong(camera.getId());
+                writeString(out, camera.getName());
+                out.writeLong(camera.getRoverId());
+                writeString(out, camera.getFullName());
+            }
+            out.writeInt(rovers.size());
+            for (Rover rover : rovers) {
+                out.writeLong(rover.getId());
+                writeString(out, rover.getName());
+                writeString(out, rover.getLandingDate());
+                writeString(out, rover.getLaunchDate());
+                writeString(out, rover.getStatus());
+            }
+        }
+
+        private static ByteBuffer column(ByteBuffer buffer, int length) {
+            ByteBuffer column = buffer.slice();
+            column.limit(length);
+            buffer.position(buffer.position() + length);
+            return column;
+        }
+
+        private static int sol(Photo photo) {
+            return (int) Math.max(Integer.MIN_VALUE + 1L, Math.min(Integer.MAX_VALUE, photo.getSol()));
+        }
+
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeUTF(value);
+            }
+        }
+
+        private static String getString(ByteBuffer buffer) {
+            if (buffer.get() == 0) {
+                return null;
+            }
+            // Written with writeUTF; the names and dates held here are plain ASCII or BMP text
+            byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Walks the rows of several segments in ascending id order, keeping one cursor per segment.
+     */
+    private static class MergeOrder {
+        private final List<Segment> parts;
+        private final int[] positions;
+        int part;
+        int row;
+
+        MergeOrder(List<Segment> parts) {
+            this.parts = parts;
+            this.positions = new int[parts.size()];
+        }
+
+        /**
+         * Moves to the row with the next lowest id.
+         *
+         * @return false once every row has been visited
+         */
+        boolean next() {
+            part = -1;
+            long lowest = 0;
+            for (int i = 0; i < positions.length; i++) {
+                Segment segment = parts.get(i);
+                if (positions[i] < segment.rows) {
+                    long id = segment.ids.get(positions[i]);
+                    if (part < 0 || id < lowest) {
+                        part = i;
+                        lowest = id;
+                    }
+                }
+            }
+            if (part < 0) {
+                return false;
+            }
+            row = positions[part]++;
+            return true;
+        }
+
+        Segment segment() {
+            return parts.get(part);
+        }
+    }
+
+    private static int epochDay(String earthDate) {
+        if (earthDate == null) {
+            return NO_DATE;
+        }
+        try {
+            return (int) LocalDate.parse(earthDate).toEpochDay();
+        } catch (DateTimeException e) {
+            return NO_DATE;
+        }
+    }
+}
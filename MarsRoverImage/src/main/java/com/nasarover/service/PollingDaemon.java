@@ -0,0 +1,158 @@
+package com.nasarover.service;
+
+import com.nasarover.metrics.Counter;
+import com.nasarover.metrics.Histogram;
+import com.nasarover.metrics.MetricsRegistry;
+import com.nasarover.model.RoverMission;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the downloader running and polls the recent dates on a schedule, so photos NASA
+ * publishes days after they were taken are picked up without restarting the application.
+ * <p>
+ * Each poll runs the last few days through the same {@link DatePipeline} and
+ * {@link RoverImageService}, whose executors, HTTP connections and caches stay warm between
+ * polls. Images recorded in the download manifest are skipped, so a poll only transfers what
+ * is new. {@link #stop()} ends the daemon gracefully: a poll in progress takes no further
+ * dates, but finishes the downloads it has started.
+ */
+public class PollingDaemon {
+    private static final Logger logger = LoggerFactory.getLogger(PollingDaemon.class);
+
+    private static final Histogram POLL_SECONDS = MetricsRegistry.getDefault().histogram(
+            "nasarover_daemon_poll_seconds", "Time of a daemon poll of the recent dates", Histogram.LATENCY_BUCKETS);
+    private static final Counter POLLS = MetricsRegistry.getDefault().counter(
+            "nasarover_daemon_polls_total", "Daemon polls of the recent dates");
+
+    private final DatePipeline pipeline;
+    private final RoverImageService roverService;
+    private final List<RoverMission> rovers;
+    private final Duration interval;
+    private final int lookbackDays;
+    private final Clock clock;
+    private final CountDownLatch stopRequested = new CountDownLatch(1);
+    private volatile boolean stopping;
+
+    /**
+     * Creates a daemon.
+     *
+     * @param pipeline the pipeline the dates are run through
+     * @param roverService the service the pipeline downloads with
+     * @param rovers the rovers to poll
+     * @param interval the time between the end of a poll and the start of the next
+     * @param lookbackDays the number of days before today to poll along with today
+     */
+    public PollingDaemon(DatePipeline pipeline, RoverImageService roverService, List<RoverMission> rovers,
+                         Duration interval, int lookbackDays) {
+        this(pipeline, roverService, rovers, interval, lookbackDays, Clock.systemDefaultZone());
+    }
+
+    PollingDaemon(DatePipeline pipeline, RoverImageService roverService, List<RoverMission> rovers,
+                  Duration interval, int lookbackDays, Clock clock) {
+        this.pipeline = pipeline;
+        this.roverService = roverService;
+        this.rovers = rovers;
+        this.interval = interval.isNegative() || interval.isZero() ? Duration.ofMinutes(1) : interval;
+        this.lookbackDays = Math.max(0, lookbackDays);
+        this.clock = clock;
+    }
+
+    /**
+     * Polls until {@link #stop()} is called.
+     *
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public void run() throws InterruptedException {
+        logger.info("Polling the last {} days every {} minutes", lookbackDays + 1, interval.toMinutes());
+        while (!stopping) {
+            poll();
+            if (stopRequested.await(interval.toMillis(), TimeUnit.MILLISECONDS)) {
+                break;
+            }
+        }
+        logger.info("Polling stopped");
+    }
+
+    /**
+     * Runs the recent dates through the pipeline once.
+     *
+     * @return the summary of the poll
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public DatePipeline.Summary poll() throws InterruptedException {
+        long start = System.nanoTime();
+        POLLS.increment();
+        DatePipeline.Summary summary = pipeline.run(new StoppableIterator(recentDates().iterator()));
+        // Persist what was learned in this poll, as the daemon may run for weeks
+        roverService.flush();
+        POLL_SECONDS.observeNanos(System.nanoTime() - start);
+        logger.info("Polled {} dates in {} ms: {} with images, {} without, {} failed", summary.getTotal(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                summary.count(DatePipeline.Outcome.SUCCESS), summary.count(DatePipeline.Outcome.NO_IMAGES),
+                summary.count(DatePipeline.Outcome.FAILED));
+        return summary;
+    }
+
+    /**
+     * Asks the daemon to stop. A poll in progress finishes the dates it has started, and no
+     * further poll begins.
+     */
+    public void stop() {
+        stopping = true;
+        stopRequested.countDown();
+    }
+
+    public boolean isStopping() {
+        return stopping;
+    }
+
+    /**
+     * Gets the dates of a poll, oldest first: today and the days before it on which any of
+     * the rovers was active.
+     */
+    List<String> recentDates() {
+        LocalDate today = LocalDate.now(clock);
+        List<String> dates = new ArrayList<>();
+        for (LocalDate date = today.minusDays(lookbackDays); !date.isAfter(today); date = date.plusDays(1)) {
+            if (!RoverMission.activeOn(date, rovers).isEmpty()) {
+                dates.add(date.toString());
+            }
+        }
+        return dates;
+    }
+
+    /**
+     * Ends the input of a poll once the daemon is stopping.
+     */
+    private class StoppableIterator implements Iterator<String> {
+        private final Iterator<String> dates;
+
+        StoppableIterator(Iterator<String> dates) {
+            this.dates = dates;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stopping && dates.hasNext();
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return dates.next();
+        }
+    }
+}
@@ -1,88 +1,180 @@
 package com.nasarover.service;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.nasarover.config.AppConfig;
 import com.nasarover.exception.ApiRequestException;
 import com.nasarover.exception.ImageDownloadException;
+import com.nasarover.metrics.Counter;
+import com.nasarover.metrics.Histogram;
+import com.nasarover.metrics.MetricsRegistry;
 import com.nasarover.model.Photo;
+import com.nasarover.model.RoverMission;
 import com.nasarover.model.RoverResponse;
+import com.nasarover.util.ArchiveWriter;
+import com.nasarover.util.CircuitBreaker;
+import com.nasarover.util.DownloadResult;
+import com.nasarover.util.ExecutorUtil;
+import com.nasarover.util.HttpTransport;
 import com.nasarover.util.HttpUtil;
+import com.nasarover.util.RateLimiter;
+import com.nasarover.util.RetryPolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URLEncoder;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 /**
  * Service for interacting with the NASA Mars Rover API and downloading images.
+ * Images of a date are downloaded in parallel, bounded by the configured download concurrency.
+ * Transient failures of API requests and downloads are retried, and an image host that keeps
+ * failing is suspended for a while by a per-host circuit breaker.
  */
-public class RoverImageService {
+public class RoverImageService implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(RoverImageService.class);
+    // Page number of a response holding all photos of a date
+    private static final int UNPAGED = 0;
+    
+    private static final Histogram FETCH_SECONDS = MetricsRegistry.getDefault().histogram(
+            "nasarover_api_fetch_seconds", "Time to fetch the photo list of a rover and date, with all pages and retries",
+            Histogram.LATENCY_BUCKETS);
+    private static final Counter FETCH_ERRORS = MetricsRegistry.getDefault().counter(
+            "nasarover_api_fetch_errors_total", "Photo list fetches that failed after retries");
+    private static final Histogram REQUEST_SECONDS = MetricsRegistry.getDefault().histogram(
+            "nasarover_api_request_seconds", "Time of a single NASA API request", Histogram.LATENCY_BUCKETS);
     
     private final AppConfig config;
     private final ObjectMapper objectMapper;
-    private final HttpClient httpClient;
+    private final HttpTransport transport;
+    private final ExecutorService downloadExecutor;
+    private final ExecutorService pageExecutor;
+    private final Semaphore downloadPermits;
+    private final DownloadManifest manifest;
+    private final MetadataCache metadataCache;
+    private final ContentStore contentStore;
+    private final PhotoIndex photoIndex;
+    private final PhotoFilter defaultFilter;
+    private final ArchiveWriter.Format archiveFormat;
+    private final RateLimiter apiRateLimiter;
+    private final Duration apiRateLimitMaxWait;
+    private final RetryPolicy retryPolicy;
+    private final Map<String, CircuitBreaker> hostBreakers = new ConcurrentHashMap<>();
+    // Retries per rover and date, collected until the date's result is reported
+    private final Map<String, AtomicInteger> retryCounts = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<DownloadResult>> inFlight = new ConcurrentHashMap<>();
     
     public RoverImageService(AppConfig config) {
         this.config = config;
         this.objectMapper = new ObjectMapper();
         this.objectMapper.registerModule(new JavaTimeModule());
-        this.httpClient = HttpClient.newBuilder()
-                .followRedirects(HttpClient.Redirect.NORMAL)
-                .build();
+        this.transport = new HttpTransport(config);
+        int concurrency = Math.max(1, config.getDownloadConcurrency());
+        this.downloadExecutor = ExecutorUtil.newIoExecutor("rover-download", concurrency,
+                config.isDownloadVirtualThreads());
+        this.downloadPermits = new Semaphore(concurrency);
+        // Unbounded, but each date keeps at most api.page.prefetch page requests in flight
+        this.pageExecutor = Executors.newCachedThreadPool(ExecutorUtil.daemonThreadFactory("rover-page"));
+        this.manifest = new DownloadManifest(config.isManifestEnabled()
+                ? Paths.get(config.getOutputDirectory(), config.getManifestFileName())
+                : null);
+        this.metadataCache = config.isMetadataCacheEnabled()
+                ? new MetadataCache(Paths.get(config.getOutputDirectory(), config.getMetadataCacheDirectory()),
+                        Duration.ofMinutes(config.getMetadataCacheTtlRecentMinutes()),
+                        Duration.ofDays(config.getMetadataCacheTtlHistoricalDays()),
+                        config.getMetadataCacheRecentDays(), config.getMetadataCacheMaxEntries())
+                : null;
+        ContentStore.Mode storageMode = ContentStore.Mode.fromName(config.getStorageMode());
+        this.contentStore = storageMode != ContentStore.Mode.FILES
+                ? new ContentStore(Paths.get(config.getOutputDirectory(), config.getStorageObjectsDirectory()), storageMode)
+                : null;
+        this.photoIndex = config.isPhotoIndexEnabled()
+                ? new PhotoIndex(Paths.get(config.getOutputDirectory(), config.getPhotoIndexDirectory()))
+                : null;
+        this.defaultFilter = parseFilter(config.getPhotoFilter());
+        this.archiveFormat = ArchiveWriter.Format.fromName(config.getOutputFormat());
+        this.apiRateLimiter = config.isApiRateLimitEnabled()
+                ? new RateLimiter(config.getApiRateLimit(), Duration.ofSeconds(config.getApiRateLimitWindowSeconds()))
+                : null;
+        this.apiRateLimitMaxWait = Duration.ofSeconds(Math.max(0, config.getApiRateLimitMaxWaitSeconds()));
+        this.retryPolicy = new RetryPolicy(config.getRetryMaxAttempts(),
+                Duration.ofMillis(config.getRetryBaseDelay()), Duration.ofMillis(config.getRetryMaxDelay()),
+                config.getRetryBudgetPercent() / 100.0, config.getRetryBudgetMin());
     }
 
     /**
-     * Downloads Mars Rover images for a specific date.
+     * Downloads Curiosity images for a specific date.
      *
      * @param date the date to retrieve images for
      * @return true if at least one image was successfully downloaded, false otherwise
      */
     public boolean downloadRoverImages(LocalDate date) {
+        return downloadRoverImages(RoverMission.CURIOSITY, date);
+    }
+
+    /**
+     * Downloads the images a rover took on a specific date that pass the configured filter.
+     *
+     * @param rover the rover
+     * @param date the date to retrieve images for
+     * @return true if at least one image was successfully downloaded, false otherwise
+     */
+    public boolean downloadRoverImages(RoverMission rover, LocalDate date) {
+        return downloadRoverImages(rover, date, defaultFilter);
+    }
+
+    /**
+     * Downloads the images a rover took on a specific date that pass a filter.
+     *
+     * @param rover the rover
+     * @param date the date to retrieve images for
+     * @param filter the photos to download
+     * @return true if at least one image was successfully downloaded, false otherwise
+     */
+    public boolean downloadRoverImages(RoverMission rover, LocalDate date, PhotoFilter filter) {
+        if (!filter.matches(rover, rover.solOn(date))) {
+            logger.info("Skipping {} on date {}, excluded by filter: {}", rover.getDisplayName(), date, filter);
+            return false;
+        }
         try {
-            RoverResponse response = fetchRoverData(date);
-            List<Photo> photos = response.getPhotos();
-            
-            if (photos == null || photos.isEmpty()) {
-                logger.warn("No photos found for date: {}", date);
-                return false;
-            }
-            
-            logger.info("Found {} photos for date: {}", photos.size(), date);
-            
-            // Create directory for this date
-            String dateStr = date.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-            File dateDir = new File(config.getOutputDirectory() + File.separator + dateStr);
-            if (!dateDir.exists() && !dateDir.mkdirs()) {
-                throw new IOException("Failed to create directory for date: " + dateStr);
-            }
-            
-            // Download each photo
-            int downloadCount = 0;
-            for (Photo photo : photos) {
-                try {
-                    downloadImage(photo, dateDir.getPath());
-                    downloadCount++;
-                } catch (ImageDownloadException e) {
-                    logger.error("Failed to download image {}: {}", photo.getId(), e.getMessage());
-                }
+            if (isStreamingParse()) {
+                return streamAndDownload(rover, date, filter);
             }
-            
-            logger.info("Successfully downloaded {}/{} images for date: {}", 
-                    downloadCount, photos.size(), date);
-            return downloadCount > 0;
+            RoverResponse response = fetchPhotos(rover, date, filter);
+            return downloadPhotos(rover, date, response.getPhotos());
         } catch (ApiRequestException e) {
             logger.error("API request failed for date {}: {}", date, e.getMessage());
             return false;
@@ -100,41 +192,750 @@ public class RoverImageService {
     }
 
     /**
-     * Fetches Mars Rover data from NASA API for a specific date.
+     * Checks whether API responses are parsed as a stream, starting downloads while parsing.
      *
+     * @return true if streaming parsing is enabled
+     */
+    public boolean isStreamingParse() {
+        return config.isApiStreamingParse();
+    }
+
+    /**
+     * Gets the filter of the photo.filter property, which dates without criteria of their own use.
+     *
+     * @return the filter, {@link PhotoFilter#NONE} if none is configured
+     */
+    public PhotoFilter getDefaultFilter() {
+        return defaultFilter;
+    }
+
+    private static PhotoFilter parseFilter(String spec) {
+        if (spec == null || spec.isEmpty()) {
+            return PhotoFilter.NONE;
+        }
+        try {
+            return PhotoFilter.parse(spec, PhotoFilter.NONE);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Ignoring invalid photo.filter: {}", e.getMessage());
+            return PhotoFilter.NONE;
+        }
+    }
+
+    /**
+     * Gets and resets the number of retries made for a rover and date.
+     *
+     * @param rover the rover
+     * @param date the date
+     * @return the number of retried API requests and downloads
+     */
+    public int takeRetries(RoverMission rover, LocalDate date) {
+        AtomicInteger count = retryCounts.remove(retryKey(rover, date));
+        return count != null ? count.get() : 0;
+    }
+
+    private void onRetry(RoverMission rover, LocalDate date, String what, int attempt, Exception failure,
+                         Duration delay) {
+        retryCounts.computeIfAbsent(retryKey(rover, date), key -> new AtomicInteger()).incrementAndGet();
+        logger.warn("Retrying {} of {} for date {} in {} ms, attempt {} failed: {}", what, rover.getDisplayName(),
+                date, delay.toMillis(), attempt, failure.getMessage());
+    }
+
+    private static String retryKey(RoverMission rover, LocalDate date) {
+        return rover.getApiName() + "/" + date;
+    }
+
+    /**
+     * Downloads already fetched photos of a specific date into the rover's output directory.
+     *
+     * @param rover the rover that took the photos
+     * @param date the date the photos were taken on
+     * @param photos the photos to download
+     * @return true if at least one image was successfully downloaded, false otherwise
+     */
+    public boolean downloadPhotos(RoverMission rover, LocalDate date, List<Photo> photos) {
+        if (photos == null || photos.isEmpty()) {
+            logger.warn("No {} photos found for date: {}", rover.getDisplayName(), date);
+            return false;
+        }
+        
+        logger.info("Found {} {} photos for date: {}", photos.size(), rover.getDisplayName(), date);
+        
+        DownloadBatch batch = new DownloadBatch(rover, date);
+        try {
+            for (Photo photo : photos) {
+                batch.submit(photo);
+            }
+            return batch.await();
+        } catch (IOException e) {
+            logger.error("I/O error for date {}: {}", date, e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Thread interrupted while processing date {}", date);
+            return false;
+        } finally {
+            batch.close();
+        }
+    }
+
+    /**
+     * Streams the photo list of a date from the API and submits each photo for download as
+     * soon as it has been parsed.
+     *
+     * @param rover the rover
+     * @param date the date to retrieve images for
+     * @param filter the photos to download
+     * @return true if at least one image was successfully downloaded, false otherwise
+     */
+    private boolean streamAndDownload(RoverMission rover, LocalDate date, PhotoFilter filter)
+            throws ApiRequestException, IOException, InterruptedException {
+        DownloadBatch batch = new DownloadBatch(rover, date);
+        try {
+            try {
+                streamRoverPhotos(rover, date, filter, batch::submit);
+            } finally {
+                // Photos submitted before a failure still finish downloading
+                batch.awaitQuietly();
+            }
+            if (batch.getSubmitted() == 0) {
+                logger.warn("No {} photos found for date: {}", rover.getDisplayName(), date);
+                return false;
+            }
+            return batch.await();
+        } finally {
+            batch.close();
+        }
+    }
+
+    /**
+     * Downloads the photos of one rover and date in parallel; the shared permits bound the
+     * number of transfers in flight across all dates and rovers. In archive mode the photos
+     * are downloaded to a spool directory and appended to the date's archive one at a time.
+     */
+    private class DownloadBatch {
+        private final RoverMission rover;
+        private final LocalDate date;
+        private final AtomicInteger downloadCount = new AtomicInteger();
+        private final List<Future<?>> downloads = new ArrayList<>();
+        private File dateDir;
+        private ArchiveWriter archive;
+        private Path spoolDir;
+
+        DownloadBatch(RoverMission rover, LocalDate date) {
+            this.rover = rover;
+            this.date = date;
+        }
+
+        void submit(Photo photo) throws IOException {
+            if (dateDir == null) {
+                open();
+            }
+            
+            String outputDir = dateDir.getPath();
+            downloads.add(downloadExecutor.submit(() -> {
+                try {
+                    // Acquired by the task rather than the submitter, so a streaming parse never
+                    // stalls the API response while waiting for a free download slot
+                    downloadPermits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                try {
+                    retryPolicy.call(() -> {
+                        if (archive != null) {
+                            downloadToArchive(photo, archive, spoolDir);
+                        } else {
+                            downloadImage(photo, outputDir);
+                        }
+                        return null;
+                    }, (attempt, failure, delay) ->
+                            onRetry(rover, date, "image " + photo.getId(), attempt, failure, delay));
+                    downloadCount.incrementAndGet();
+                } catch (ImageDownloadException e) {
+                    logger.error("Failed to download image {}: {}", photo.getId(), e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    downloadPermits.release();
+                }
+            }));
+        }
+
+        private void open() throws IOException {
+            String dateStr = date.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+            if (archiveFormat != null) {
+                Path roverDir = Paths.get(config.getOutputDirectory(), rover.getApiName());
+                Files.createDirectories(roverDir);
+                String spoolRoot = config.getArchiveSpoolDirectory();
+                spoolDir = spoolRoot == null || spoolRoot.isEmpty()
+                        ? Files.createTempDirectory("nasa-rover-spool")
+                        : Files.createTempDirectory(Files.createDirectories(Paths.get(spoolRoot)), "nasa-rover-spool");
+                archive = new ArchiveWriter(roverDir.resolve(dateStr + archiveFormat.getExtension()), archiveFormat);
+                dateDir = roverDir.toFile();
+                return;
+            }
+            // Create directory for this rover and date
+            File dir = new File(config.getOutputDirectory() + File.separator + rover.getApiName()
+                    + File.separator + dateStr);
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Failed to create directory for date: " + dateStr);
+            }
+            dateDir = dir;
+        }
+
+        int getSubmitted() {
+            return downloads.size();
+        }
+
+        boolean await() throws InterruptedException {
+            awaitAll(downloads);
+            logger.info("Successfully downloaded {}/{} {} images for date: {}", 
+                    downloadCount, downloads.size(), rover.getDisplayName(), date);
+            return downloadCount.get() > 0;
+        }
+
+        void awaitQuietly() {
+            try {
+                awaitAll(downloads);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Waits for the downloads, then finishes the archive and removes the spool directory.
+         */
+        void close() {
+            if (archive == null) {
+                return;
+            }
+            awaitQuietly();
+            try {
+                archive.close();
+            } catch (IOException e) {
+                logger.error("Failed to finish archive {}: {}", archive.getArchive(), e.getMessage());
+            }
+            try (Stream<Path> files = Files.walk(spoolDir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            } catch (IOException e) {
+                logger.debug("Failed to remove spool directory {}: {}", spoolDir, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Waits for all submitted downloads to finish.
+     *
+     * @param downloads the pending downloads
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private void awaitAll(List<Future<?>> downloads) throws InterruptedException {
+        for (Future<?> download : downloads) {
+            try {
+                download.get();
+            } catch (ExecutionException e) {
+                logger.error("Unexpected download failure: {}", e.getCause().getMessage());
+            }
+        }
+    }
+
+    /**
+     * Fetches Mars Rover data from NASA API for a specific rover and date.
+     * With pagination, the pages are fetched concurrently and merged into one response.
+     *
+     * @param rover the rover to fetch data for
      * @param date the date to fetch data for
      * @return RoverResponse containing the API response
      * @throws ApiRequestException if the API request fails
      * @throws IOException if there is an I/O error
      * @throws InterruptedException if the thread is interrupted
      */
-    RoverResponse fetchRoverData(LocalDate date) 
+    RoverResponse fetchRoverData(RoverMission rover, LocalDate date) 
             throws ApiRequestException, IOException, InterruptedException {
-        String dateParam = date.format(DateTimeFormatter.ISO_DATE);
-        String apiUrl = String.format("%s/mars-photos/api/v1/rovers/curiosity/photos?earth_date=%s&api_key=%s",
-                config.getApiBaseUrl(),
-                URLEncoder.encode(dateParam, StandardCharsets.UTF_8),
-                config.getApiKey());
-        
-        logger.debug("Requesting Mars Rover data for date: {}", dateParam);
+        return fetchFiltered(rover, date, PhotoFilter.NONE);
+    }
+
+    /**
+     * Fetches the photos of a rover and date that pass a filter. A single camera is requested
+     * from the API; other criteria are applied to the photo list, and with pagination no
+     * further pages are requested once the filter's maximum is reached.
+     *
+     * @param rover the rover to fetch data for
+     * @param date the date to fetch data for
+     * @param filter the photos to keep
+     * @return RoverResponse containing the selected photos
+     * @throws ApiRequestException if the API request fails
+     * @throws IOException if there is an I/O error
+     * @throws InterruptedException if the thread is interrupted
+     */
+    RoverResponse fetchPhotos(RoverMission rover, LocalDate date, PhotoFilter filter)
+            throws ApiRequestException, IOException, InterruptedException {
+        return filter.isEmpty() ? fetchRoverData(rover, date) : fetchFiltered(rover, date, filter);
+    }
+
+    private RoverResponse fetchFiltered(RoverMission rover, LocalDate date, PhotoFilter filter)
+            throws ApiRequestException, IOException, InterruptedException {
+        return timeFetch(() -> {
+            List<Photo> photos = new ArrayList<>();
+            if (!isPaginated()) {
+                RoverResponse response = fetchRoverPageRetrying(rover, date, filter.getApiCamera(), UNPAGED);
+                if (response.getPhotos() == null) {
+                    return response;
+                }
+                if (filter.isEmpty()) {
+                    indexPhotos(response.getPhotos());
+                    return response;
+                }
+                FilteringSink sink = new FilteringSink(filter, photoIndex, photos::add);
+                for (Photo photo : response.getPhotos()) {
+                    sink.accept(photo);
+                }
+            } else {
+                fetchPages(rover, date, filter, photos::add);
+            }
+            RoverResponse roverResponse = new RoverResponse();
+            roverResponse.setPhotos(photos);
+            return roverResponse;
+        });
+    }
+    
+    /**
+     * Records fetched photos in the photo index, if enabled.
+     */
+    private void indexPhotos(List<Photo> photos) {
+        if (photoIndex != null) {
+            for (Photo photo : photos) {
+                photoIndex.add(photo);
+            }
+        }
+    }
+    
+    /**
+     * Records the duration and the failure of a photo list fetch.
+     */
+    private static <R> R timeFetch(ApiCall<R> fetch) throws ApiRequestException, IOException, InterruptedException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            R result = fetch.execute();
+            failed = false;
+            return result;
+        } finally {
+            FETCH_SECONDS.observeNanos(System.nanoTime() - start);
+            if (failed) {
+                FETCH_ERRORS.increment();
+            }
+        }
+    }
+
+    /**
+     * Fetches a single page of the photos of a rover and date.
+     *
+     * @param rover the rover to fetch data for
+     * @param date the date to fetch data for
+     * @param camera the camera to request, or null for all cameras
+     * @param page the page number, or {@link #UNPAGED} for all photos in one response
+     * @return RoverResponse containing the API response
+     * @throws ApiRequestException if the API request fails
+     * @throws IOException if there is an I/O error
+     * @throws InterruptedException if the thread is interrupted
+     */
+    private RoverResponse fetchRoverPage(RoverMission rover, LocalDate date, String camera, int page)
+            throws ApiRequestException, IOException, InterruptedException {
+        if (metadataCache != null) {
+            RoverResponse cached = metadataCache.get(cacheKey(rover, camera), date, page);
+            if (cached != null) {
+                return cached;
+            }
+        }
         
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(apiUrl))
-                .GET()
-                .build();
+        String dateParam = date.format(DateTimeFormatter.ISO_DATE);
+        logger.debug("Requesting {} data for date: {}, page: {}", rover.getDisplayName(), dateParam, page);
         
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        String url = photosUrl(rover, date, camera, page);
+        HttpResponse<String> response = callApi(() -> {
+            HttpResponse<String> sent = transport.send(url, HttpResponse.BodyHandlers.ofString());
+            checkRateLimit(sent);
+            return sent;
+        });
         
         if (response.statusCode() != 200) {
             throw new ApiRequestException("NASA API request failed with status code: " + 
-                    response.statusCode() + ", body: " + response.body());
+                    response.statusCode() + ", body: " + response.body(), response.statusCode());
         }
         
-        return objectMapper.readValue(response.body(), RoverResponse.class);
+        RoverResponse roverResponse = objectMapper.readValue(response.body(), RoverResponse.class);
+        if (metadataCache != null) {
+            metadataCache.put(cacheKey(rover, camera), date, page, roverResponse);
+        }
+        return roverResponse;
+    }
+
+    /**
+     * Fetches a single page, retrying transient failures.
+     */
+    private RoverResponse fetchRoverPageRetrying(RoverMission rover, LocalDate date, String camera, int page)
+            throws ApiRequestException, InterruptedException {
+        return retryPolicy.call(() -> {
+            try {
+                return fetchRoverPage(rover, date, camera, page);
+            } catch (IOException e) {
+                throw new ApiRequestException("NASA API request failed: " + e.getMessage(), e);
+            }
+        }, (attempt, failure, delay) -> onRetry(rover, date, "page " + page, attempt, failure, delay));
     }
 
     /**
-     * Downloads an image from a URL to a local file.
+     * Fetches the pages of a rover and date and hands their photos to the sink in page order. Up to the
+     * configured number of pages are requested concurrently, so the sink can work on page 1
+     * while the following pages are still in flight. The list ends at the first empty page,
+     * or at the first page shorter than the configured page size; pages requested beyond the
+     * end are cancelled. Only photos passing the filter reach the sink, and the list also ends
+     * once the filter's maximum is reached.
+     *
+     * @param rover the rover to fetch data for
+     * @param date the date to fetch data for
+     * @param filter the photos to hand to the sink
+     * @param sink the receiver of the photos
+     * @return the number of photos handed to the sink
+     * @throws ApiRequestException if a page request fails
+     * @throws IOException if there is an I/O error or the sink fails
+     * @throws InterruptedException if the thread is interrupted
+     */
+    private int fetchPages(RoverMission rover, LocalDate date, PhotoFilter filter, PhotoSink sink)
+            throws ApiRequestException, IOException, InterruptedException {
+        int prefetch = Math.max(1, config.getApiPagePrefetch());
+        int pageSize = config.getApiPageSize();
+        String camera = filter.getApiCamera();
+        FilteringSink filtered = new FilteringSink(filter, photoIndex, sink);
+        Deque<Future<RoverResponse>> window = new ArrayDeque<>();
+        int nextPage = 1;
+        int pages = 0;
+        int count = 0;
+        try {
+            while (true) {
+                while (window.size() < prefetch) {
+                    int page = nextPage++;
+                    window.add(pageExecutor.submit(() -> fetchRoverPageRetrying(rover, date, camera, page)));
+                }
+                List<Photo> photos = awaitPage(window.poll()).getPhotos();
+                pages++;
+                if (photos == null || photos.isEmpty()) {
+                    break;
+                }
+                for (Photo photo : photos) {
+                    filtered.accept(photo);
+                }
+                count += photos.size();
+                if ((pageSize > 0 && photos.size() < pageSize) || filtered.isFull()) {
+                    break;
+                }
+            }
+        } finally {
+            for (Future<RoverResponse> speculative : window) {
+                speculative.cancel(true);
+            }
+        }
+        logger.debug("Fetched {} {} photos in {} pages for date: {}, {} selected", count, rover.getDisplayName(),
+                pages, date, filtered.getAccepted());
+        return filtered.getAccepted();
+    }
+
+    private RoverResponse awaitPage(Future<RoverResponse> page)
+            throws ApiRequestException, IOException, InterruptedException {
+        try {
+            return page.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ApiRequestException) {
+                throw (ApiRequestException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Page request failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    private boolean isPaginated() {
+        return config.isApiPaginationEnabled();
+    }
+
+    /**
+     * Fetches the photos of a specific rover and date and hands each one to the sink as soon as it has
+     * been parsed from the response stream, without building the whole body as a String or
+     * the photo list in memory. Photos are only collected when they have to be written to the
+     * metadata cache; a cached response is replayed into the sink. With pagination, the photos
+     * of each page are handed over as soon as that page has arrived.
+     *
+     * @param rover the rover to fetch data for
+     * @param date the date to fetch data for
+     * @param filter the photos to hand to the sink
+     * @param sink the receiver of the parsed photos
+     * @return the number of photos handed to the sink
+     * @throws ApiRequestException if the API request fails
+     * @throws IOException if there is an I/O error or the sink fails
+     * @throws InterruptedException if the thread is interrupted
+     */
+    int streamRoverPhotos(RoverMission rover, LocalDate date, PhotoFilter filter, PhotoSink sink)
+            throws ApiRequestException, IOException, InterruptedException {
+        return timeFetch(() -> streamRoverPhotosUntimed(rover, date, filter, sink));
+    }
+    
+    private int streamRoverPhotosUntimed(RoverMission rover, LocalDate date, PhotoFilter filter, PhotoSink sink)
+            throws ApiRequestException, IOException, InterruptedException {
+        if (isPaginated()) {
+            return fetchPages(rover, date, filter, sink);
+        }
+        String camera = filter.getApiCamera();
+        FilteringSink filtered = new FilteringSink(filter, photoIndex, sink);
+        if (metadataCache != null) {
+            RoverResponse cached = metadataCache.get(cacheKey(rover, camera), date, UNPAGED);
+            if (cached != null) {
+                for (Photo photo : cached.getPhotos()) {
+                    filtered.accept(photo);
+                }
+                return filtered.getAccepted();
+            }
+        }
+        
+        logger.debug("Streaming {} data for date: {}", rover.getDisplayName(), date);
+        List<Photo> toCache = metadataCache != null ? new ArrayList<>() : null;
+        String url = photosUrl(rover, date, camera, UNPAGED);
+        // Once photos have reached the sink, a repeated request would hand them over twice
+        AtomicBoolean emitted = new AtomicBoolean();
+        retryPolicy.call(() -> {
+            try {
+                return callApi(() -> transport.stream(url, Collections.emptyMap(), (response, body) -> {
+                    checkRateLimit(response);
+                    if (response.statusCode() != 200) {
+                        throw new ApiStatusException("NASA API request failed with status code: " + 
+                                response.statusCode() + ", body: " + new String(body.readAllBytes(), StandardCharsets.UTF_8),
+                                response.statusCode());
+                    }
+                    return parsePhotos(body, photo -> {
+                        emitted.set(true);
+                        if (toCache != null) {
+                            toCache.add(photo);
+                        }
+                        filtered.accept(photo);
+                    });
+                }));
+            } catch (ApiStatusException e) {
+                throw new ApiRequestException(e.getMessage(), e.statusCode);
+            } catch (IOException e) {
+                throw new ApiRequestException("NASA API request failed: " + e.getMessage(), e);
+            }
+        }, failure -> !emitted.get(), (attempt, failure, delay) -> onRetry(rover, date, "photo list", attempt, failure, delay));
+        
+        if (metadataCache != null) {
+            RoverResponse roverResponse = new RoverResponse();
+            roverResponse.setPhotos(toCache);
+            metadataCache.put(cacheKey(rover, camera), date, UNPAGED, roverResponse);
+        }
+        return filtered.getAccepted();
+    }
+
+    /**
+     * Walks a photos response token by token, binding one photo object at a time.
+     *
+     * @param body the response body
+     * @param sink the receiver of the parsed photos
+     * @return the number of photos
+     * @throws IOException if the body is malformed or the sink fails
+     */
+    private int parsePhotos(InputStream body, PhotoSink sink) throws IOException {
+        int count = 0;
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Unexpected NASA API response: expected a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("photos".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        sink.accept(objectMapper.readValue(parser, Photo.class));
+                        count++;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Runs an API call through the rate limiter. A rate limit response pauses all API calls,
+     * after which the call is repeated, until the configured maximum wait is used up.
+     *
+     * @param call the call, which reports a rate limit response with {@link #checkRateLimit}
+     * @return the result of the call
+     * @throws ApiRequestException if the call fails or the rate limit does not clear in time
+     * @throws IOException if there is an I/O error
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private <R> R callApi(ApiCall<R> call) throws ApiRequestException, IOException, InterruptedException {
+        if (apiRateLimiter == null) {
+            return timeRequest(call);
+        }
+        Duration waited = Duration.ZERO;
+        while (true) {
+            apiRateLimiter.acquire();
+            try {
+                return timeRequest(call);
+            } catch (RateLimitedException e) {
+                Duration pause = apiRateLimiter.throttled(e.headers);
+                waited = waited.plus(pause);
+                if (waited.compareTo(apiRateLimitMaxWait) > 0) {
+                    throw new ApiRequestException("NASA API rate limit exceeded; no request allowed within "
+                            + apiRateLimitMaxWait.getSeconds() + " seconds");
+                }
+                logger.warn("NASA API rate limit reached, pausing API requests for {} ms", pause.toMillis());
+            }
+        }
+    }
+
+    private static <R> R timeRequest(ApiCall<R> call) throws ApiRequestException, IOException, InterruptedException {
+        long start = System.nanoTime();
+        try {
+            return call.execute();
+        } finally {
+            REQUEST_SECONDS.observeNanos(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Feeds the rate limit headers of an API response to the limiter, and turns a rate limit
+     * response into a {@link RateLimitedException} so that {@link #callApi} repeats the call.
+     */
+    private void checkRateLimit(HttpResponse<?> response) throws RateLimitedException {
+        if (apiRateLimiter == null) {
+            return;
+        }
+        apiRateLimiter.update(response.headers());
+        if (response.statusCode() == 429) {
+            throw new RateLimitedException(response.headers());
+        }
+    }
+
+    /**
+     * Builds the photos endpoint URL of a rover and date.
+     *
+     * @param rover the rover
+     * @param date the date
+     * @param camera the camera to request, or null for all cameras
+     * @param page the page number, or {@link #UNPAGED} for all photos in one response
+     */
+    private String photosUrl(RoverMission rover, LocalDate date, String camera, int page) {
+        String dateParam = date.format(DateTimeFormatter.ISO_DATE);
+        String url = String.format("%s/mars-photos/api/v1/rovers/%s/photos?earth_date=%s&api_key=%s",
+                config.getApiBaseUrl(),
+                rover.getApiName(),
+                URLEncoder.encode(dateParam, StandardCharsets.UTF_8),
+                config.getApiKey());
+        if (camera != null) {
+            url += "&camera=" + URLEncoder.encode(camera.toLowerCase(Locale.ROOT), StandardCharsets.UTF_8);
+        }
+        return page == UNPAGED ? url : url + "&page=" + page;
+    }
+
+    /**
+     * Gets the metadata cache key of a rover's photo lists, which differ per requested camera.
+     */
+    private static String cacheKey(RoverMission rover, String camera) {
+        return camera == null ? rover.getApiName() : rover.getApiName() + "-" + camera;
+    }
+
+    /**
+     * Receiver of photos parsed from an API response.
+     */
+    @FunctionalInterface
+    interface PhotoSink {
+        void accept(Photo photo) throws IOException;
+    }
+
+    /**
+     * Hands the photos passing a filter on to another sink, up to the filter's maximum. Every
+     * photo is recorded in the photo index first, including those the filter excludes.
+     */
+    private static class FilteringSink implements PhotoSink {
+        private final PhotoFilter filter;
+        private final PhotoIndex index;
+        private final PhotoSink sink;
+        private int accepted;
+
+        FilteringSink(PhotoFilter filter, PhotoIndex index, PhotoSink sink) {
+            this.filter = filter;
+            this.index = index;
+            this.sink = sink;
+        }
+
+        @Override
+        public void accept(Photo photo) throws IOException {
+            if (index != null) {
+                index.add(photo);
+            }
+            if (!isFull() && filter.matches(photo)) {
+                accepted++;
+                sink.accept(photo);
+            }
+        }
+
+        boolean isFull() {
+            return filter.getMaxPhotos() > 0 && accepted >= filter.getMaxPhotos();
+        }
+
+        int getAccepted() {
+            return accepted;
+        }
+    }
+
+    /**
+     * An API request, repeated by {@link #callApi} when it hits the rate limit.
+     */
+    @FunctionalInterface
+    private interface ApiCall<R> {
+        R execute() throws ApiRequestException, IOException, InterruptedException;
+    }
+
+    /**
+     * Signals a rate limit response to {@link #callApi}.
+     */
+    private static class RateLimitedException extends IOException {
+        final transient HttpHeaders headers;
+
+        RateLimitedException(HttpHeaders headers) {
+            super("NASA API rate limit exceeded");
+            this.headers = headers;
+        }
+    }
+
+    /**
+     * Carries an API error status out of a stream handler.
+     */
+    private static class ApiStatusException extends IOException {
+        final int statusCode;
+
+        ApiStatusException(String message, int statusCode) {
+            super(message);
+            this.statusCode = statusCode;
+        }
+    }
+
+    /**
+     * Downloads an image from a URL to a local file. Images recorded in the download manifest
+     * are skipped (or revalidated with a conditional request when configured), and photos
+     * that share a URL with a download already in flight wait for it instead of fetching
+     * the same bytes again.
      *
      * @param photo the photo object containing image metadata
      * @param outputDir the directory to save the image to
@@ -144,22 +945,227 @@ public class RoverImageService {
         String imageUrl = photo.getImgSrc();
         String fileName = getFileNameFromUrl(imageUrl);
         String outputPath = outputDir + File.separator + fileName;
+        Path target = Paths.get(outputPath);
+        
+        DownloadManifest.Entry known = manifest.findByPhotoId(photo.getId());
+        boolean present = known != null && known.matches(imageUrl, target);
+        if (present && !config.isManifestRevalidate()) {
+            logger.debug("Skipping already downloaded image: {}", fileName);
+            return;
+        }
         
         logger.debug("Downloading image: {} to {}", imageUrl, outputPath);
         
+        DownloadResult result = downloadCoalesced(imageUrl, target, present ? known : null);
+        manifest.record(new DownloadManifest.Entry(photo.getId(), imageUrl, outputPath,
+                result.getSize(), result.getSha256(), result.getEtag(), result.getLastModified()));
+        if (result.isNotModified()) {
+            logger.debug("Image not modified: {}", fileName);
+        } else {
+            logger.debug("Successfully downloaded image: {} ({} bytes)", fileName, result.getSize());
+        }
+    }
+
+    /**
+     * Downloads an image into a spool directory and appends it to an archive. The image's
+     * name is reserved in the archive first, so an image the archive already holds, from an
+     * earlier run, or that another photo with the same URL is downloading, is skipped: each
+     * URL of a date is transferred once. Each download spools to a file of its own.
+     *
+     * @param photo the photo to download
+     * @param archive the archive of the photo's rover and date
+     * @param spoolDir the directory to download to
+     * @throws ImageDownloadException if the download or the append fails
+     */
+    void downloadToArchive(Photo photo, ArchiveWriter archive, Path spoolDir) throws ImageDownloadException {
+        String imageUrl = photo.getImgSrc();
+        String fileName = getFileNameFromUrl(imageUrl);
+        if (!archive.tryReserve(fileName)) {
+            logger.debug("Skipping image already archived or being archived: {}", fileName);
+            return;
+        }
+        Path spooled = null;
+        boolean archived = false;
         try {
-            byte[] imageData = HttpUtil.downloadFile(imageUrl);
-            
-            try (FileOutputStream fos = new FileOutputStream(outputPath)) {
-                fos.write(imageData);
+            spooled = Files.createTempFile(spoolDir, "spool-", "-" + fileName);
+            DownloadResult result = downloadFromHost(imageUrl, spooled, null);
+            archive.append(fileName, spooled, result.getSha256());
+            archived = true;
+            logger.debug("Archived image: {} ({} bytes)", fileName, result.getSize());
+        } catch (IOException e) {
+            throw new ImageDownloadException("Failed to archive image " + fileName + ": " + e.getMessage(), e);
+        } finally {
+            if (!archived) {
+                // A retry, or another photo of the same name, may try again
+                archive.release(fileName);
             }
-            
-            logger.debug("Successfully downloaded image: {}", fileName);
+            if (spooled != null) {
+                try {
+                    Files.deleteIfExists(spooled);
+                } catch (IOException e) {
+                    logger.debug("Failed to remove spooled image {}: {}", spooled, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Downloads an image URL once per run. Concurrent requests for the same URL share a single
+     * transfer, and a URL already stored for another photo is copied from disk.
+     *
+     * @param imageUrl the image URL
+     * @param target the file to write
+     * @param known the manifest entry of an existing target to revalidate, or null
+     * @return the result of the download
+     * @throws ImageDownloadException if the image download fails
+     */
+    private DownloadResult downloadCoalesced(String imageUrl, Path target, DownloadManifest.Entry known)
+            throws ImageDownloadException {
+        CompletableFuture<DownloadResult> pending = new CompletableFuture<>();
+        CompletableFuture<DownloadResult> inProgress = inFlight.putIfAbsent(imageUrl, pending);
+        if (inProgress != null) {
+            return copyTo(awaitDownload(imageUrl, inProgress), target);
+        }
+        
+        try {
+            DownloadResult result;
+            DownloadManifest.Entry sameUrl = known == null ? manifest.findByUrl(imageUrl) : null;
+            if (sameUrl != null && sameUrl.matches(imageUrl, Paths.get(sameUrl.getFile()))) {
+                result = copyTo(new DownloadResult(Paths.get(sameUrl.getFile()), sameUrl.getSize(),
+                        sameUrl.getSha256(), sameUrl.getEtag(), sameUrl.getLastModified(), false), target);
+            } else {
+                result = downloadFromHost(imageUrl, target, known);
+                addToStore(result);
+            }
+            pending.complete(result);
+            return result;
+        } catch (ImageDownloadException | RuntimeException e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(imageUrl, pending);
+        }
+    }
+
+    /**
+     * Moves a downloaded image into the content store, when one is configured.
+     */
+    private void addToStore(DownloadResult result) throws ImageDownloadException {
+        if (contentStore == null || result.getSha256() == null) {
+            return;
+        }
+        try {
+            contentStore.add(result.getFile(), result.getSha256());
         } catch (IOException e) {
-            throw new ImageDownloadException("Failed to download image: " + imageUrl, e);
+            throw new ImageDownloadException("Failed to store image " + result.getFile() + ": " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Downloads an image from its host, unless the host's circuit is open. Failures that point
+     * at the host or the network count against the circuit; any response the host answered
+     * properly, even with a client error, counts as a success.
+     *
+     * @param imageUrl the image URL
+     * @param target the file to write
+     * @param known the manifest entry of an existing target to revalidate, or null
+     * @return the result of the download
+     * @throws ImageDownloadException if the download fails or the circuit is open
+     */
+    private DownloadResult downloadFromHost(String imageUrl, Path target, DownloadManifest.Entry known)
+            throws ImageDownloadException {
+        CircuitBreaker breaker = circuitBreaker(imageUrl);
+        if (breaker != null) {
+            try {
+                breaker.acquire();
+            } catch (CircuitBreaker.OpenException e) {
+                throw new ImageDownloadException("Skipping " + imageUrl + ": " + e.getMessage(), e);
+            }
+        }
+        boolean hostFailed = true;
+        try {
+            DownloadResult result;
+            if (known != null) {
+                result = HttpUtil.downloadToFile(transport, imageUrl, target, known.getEtag(), known.getLastModified());
+                if (result.isNotModified()) {
+                    result = new DownloadResult(target, known.getSize(), known.getSha256(),
+                            result.getEtag(), result.getLastModified(), true);
+                }
+            } else {
+                result = HttpUtil.downloadToFile(transport, imageUrl, target);
+            }
+            hostFailed = false;
+            return result;
+        } catch (ImageDownloadException e) {
+            hostFailed = RetryPolicy.isRetryable(e);
+            throw e;
+        } finally {
+            if (breaker != null) {
+                if (hostFailed) {
+                    breaker.recordFailure();
+                } else {
+                    breaker.recordSuccess();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the circuit breaker of an image URL's host.
+     *
+     * @return the circuit breaker, or null if circuit breaking is disabled
+     */
+    private CircuitBreaker circuitBreaker(String imageUrl) {
+        int threshold = config.getCircuitBreakerFailureThreshold();
+        String host;
+        try {
+            host = URI.create(imageUrl).getHost();
+        } catch (IllegalArgumentException e) {
+            host = null;
+        }
+        if (threshold <= 0 || host == null) {
+            return null;
+        }
+        return hostBreakers.computeIfAbsent(host, name -> new CircuitBreaker(name, threshold,
+                Duration.ofSeconds(Math.max(1, config.getCircuitBreakerOpenSeconds()))));
+    }
+
+    private DownloadResult awaitDownload(String imageUrl, CompletableFuture<DownloadResult> inProgress)
+            throws ImageDownloadException {
+        try {
+            return inProgress.get();
+        } catch (ExecutionException e) {
+            throw new ImageDownloadException("Failed to download image: " + imageUrl, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ImageDownloadException("Download interrupted: " + imageUrl, e);
+        }
+    }
+
+    /**
+     * Makes a downloaded image available at another path, as a link into the content store
+     * when one is configured, or else as a copy.
+     *
+     * @param source the result of the download
+     * @param target the path the image is needed at
+     * @return the result describing the target
+     * @throws ImageDownloadException if the copy fails
+     */
+    private DownloadResult copyTo(DownloadResult source, Path target) throws ImageDownloadException {
+        if (source.getFile().equals(target)) {
+            return source;
+        }
+        try {
+            if (contentStore == null || source.getSha256() == null || !contentStore.place(source.getSha256(), target)) {
+                Files.copy(source.getFile(), target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new ImageDownloadException("Failed to copy image to " + target + ": " + e.getMessage(), e);
+        }
+        return new DownloadResult(target, source.getSize(), source.getSha256(),
+                source.getEtag(), source.getLastModified(), false);
+    }
+
     /**
      * Extracts a filename from a URL.
      *
@@ -170,4 +1176,29 @@ public class RoverImageService {
         String[] parts = url.split("/");
         return parts[parts.length - 1];
     }
+
+    /**
+     * Writes out the photo records collected in memory, without closing anything, so a
+     * long-running process keeps its index current.
+     */
+    public void flush() {
+        if (photoIndex != null) {
+            photoIndex.flush();
+        }
+    }
+
+    /**
+     * Shuts down the download and page executors, letting in-flight requests finish, and
+     * releases the transport, the download manifest and the photo index.
+     */
+    @Override
+    public void close() {
+        ExecutorUtil.shutdown(downloadExecutor);
+        ExecutorUtil.shutdown(pageExecutor);
+        transport.close();
+        manifest.close();
+        if (photoIndex != null) {
+            photoIndex.close();
+        }
+    }
 }
@@ -0,0 +1,252 @@
+package com.nasarover.util;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the entries of an archive written by {@link ArchiveWriter}, kept next to it in
+ * {@code <archive>.idx} with one JSON entry per line. It gives the offset of every entry's
+ * data, so a single image can be read without scanning the archive, and lets a later run
+ * append to the archive instead of rewriting it.
+ */
+public class ArchiveIndex {
+
+    private static final String SUFFIX = ".idx";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * Gets the index file of an archive.
+     */
+    public static Path indexFile(Path archive) {
+        return archive.resolveSibling(archive.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Reads the index of an archive.
+     *
+     * @param archive the archive
+     * @return the index, empty if the archive has none
+     * @throws IOException if the index cannot be read or is corrupt
+     */
+    public static ArchiveIndex read(Path archive) throws IOException {
+        ArchiveIndex index = new ArchiveIndex();
+        Path file = indexFile(archive);
+        if (!Files.isRegularFile(file)) {
+            return index;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    index.add(OBJECT_MAPPER.readValue(line, Entry.class));
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Opens the data of an entry for reading.
+     *
+     * @param archive the archive
+     * @param entry the entry
+     * @return a stream of the entry's bytes, which must be closed
+     * @throws IOException if the archive cannot be opened
+     */
+    public static InputStream openEntry(Path archive, Entry entry) throws IOException {
+        return new EntryInputStream(FileChannel.open(archive, StandardOpenOption.READ),
+                entry.getDataOffset(), entry.getSize());
+    }
+
+    public Entry get(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * Gets the entries in the order they were written.
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(new ArrayList<>(entries.values()));
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    void add(Entry entry) {
+        entries.put(entry.getName(), entry);
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Writes the index next to the archive, replacing the previous one atomically.
+     */
+    void write(Path archive) throws IOException {
+        Path file = indexFile(archive);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Entry entry : entries.values()) {
+                writer.write(OBJECT_MAPPER.writeValueAsString(entry));
+                writer.newLine();
+            }
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * An entry of the archive.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Entry {
+        private String name;
+        private long headerOffset;
+        private long dataOffset;
+        private long size;
+        private long crc32;
+        private String sha256;
+
+        public Entry() {
+        }
+
+        public Entry(String name, long headerOffset, long dataOffset, long size, long crc32, String sha256) {
+            this.name = name;
+            this.headerOffset = headerOffset;
+            this.dataOffset = dataOffset;
+            this.size = size;
+            this.crc32 = crc32;
+            this.sha256 = sha256;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Gets the offset of the entry's header in the archive.
+         */
+        public long getHeaderOffset() {
+            return headerOffset;
+        }
+
+        public void setHeaderOffset(long headerOffset) {
+            this.headerOffset = headerOffset;
+        }
+
+        /**
+         * Gets the offset of the entry's data in the archive.
+         */
+        public long getDataOffset() {
+            return dataOffset;
+        }
+
+        public void setDataOffset(long dataOffset) {
+            this.dataOffset = dataOffset;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public void setSize(long size) {
+            this.size = size;
+        }
+
+        public long getCrc32() {
+            return crc32;
+        }
+
+        public void setCrc32(long crc32) {
+            this.crc32 = crc32;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        public void setSha256(String sha256) {
+            this.sha256 = sha256;
+        }
+
+        @JsonIgnore
+        long getDataEnd() {
+            return dataOffset + size;
+        }
+    }
+
+    /**
+     * Reads a range of a file channel with positional reads.
+     */
+    private static class EntryInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        EntryInputStream(FileChannel channel, long offset, long size) {
+            this.channel = channel;
+            this.position = offset;
+            this.end = offset + size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == 1 ? one[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int count = (int) Math.min(len, end - position);
+            int read = channel.read(ByteBuffer.wrap(b, off, count), position);
+            if (read < 0) {
+                throw new IOException("Archive is shorter than its index");
+            }
+            position += read;
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.nasarover.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Sequential writer of an uncompressed tar or zip archive. Files are appended one at a time
+ * through a fixed size buffer, so no image is ever held in memory, and concurrent callers
+ * are serialized so the archive is written front to back.
+ * <p>
+ * The entries are recorded in an {@link ArchiveIndex} written next to the archive when it is
+ * closed. An archive with an index is appended to on the next open: the trailer is cut off
+ * and rewritten on close. An archive without one, e.g. after a crash, is started over.
+ */
+public class ArchiveWriter implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveWriter.class);
+
+    /**
+     * Archive format.
+     */
+    public enum Format {
+        TAR(".tar"),
+        ZIP(".zip");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        /**
+         * Parses a configured format.
+         *
+         * @param name the format name, case insensitive
+         * @return the format, or null for any other name, such as "files"
+         */
+        public static Format fromName(String name) {
+            if (name != null) {
+                for (Format format : values()) {
+                    if (format.name().equalsIgnoreCase(name.trim())) {
+                        return format;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int TAR_BLOCK = 512;
+    private static final int ZIP_LOCAL_HEADER = 0x04034b50;
+    private static final int ZIP_CENTRAL_HEADER = 0x02014b50;
+    private static final int ZIP_END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int ZIP_VERSION_STORED = 10;
+    // General purpose flag: names are UTF-8
+    private static final int ZIP_FLAG_UTF8 = 0x0800;
+    private static final long ZIP_MAX_OFFSET = 0xFFFFFFFFL;
+    private static final int ZIP_MAX_ENTRIES = 0xFFFF;
+
+    private final Path archive;
+    private final Format format;
+    private final FileChannel channel;
+    private final ArchiveIndex index;
+    // Names of entries being downloaded, which other writers of the same name skip
+    private final Set<String> reserved = new HashSet<>();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long position;
+    private boolean closed;
+
+    /**
+     * Opens an archive for appending, creating it if needed.
+     *
+     * @param archive the archive file
+     * @param format the archive format
+     * @throws IOException if the archive cannot be opened
+     */
+    public ArchiveWriter(Path archive, Format format) throws IOException {
+        this.archive = archive;
+        this.format = format;
+        ArchiveIndex existing;
+        try {
+            existing = Files.isRegularFile(archive) ? ArchiveIndex.read(archive) : new ArchiveIndex();
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable index of {}, starting the archive over: {}", archive, e.getMessage());
+            existing = new ArchiveIndex();
+        }
+        this.index = existing;
+        // Readable too, as the zip central directory copies fields back from the local headers
+        this.channel = FileChannel.open(archive, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        for (ArchiveIndex.Entry entry : index.getEntries()) {
+            position = Math.max(position, format == Format.TAR ? padToBlock(entry.getDataEnd()) : entry.getDataEnd());
+        }
+        if (position > channel.size()) {
+            logger.warn("{} is shorter than its index, starting the archive over", archive);
+            index.clear();
+            position = 0;
+        }
+        channel.truncate(position);
+    }
+
+    /**
+     * Checks whether the archive already holds an entry.
+     */
+    public synchronized boolean contains(String name) {
+        return index.get(name) != null;
+    }
+
+    /**
+     * Reserves the name of an entry that is about to be fetched and appended, so that of
+     * several concurrent writers of the same name only one fetches it. {@link #append} ends
+     * the reservation; {@link #release} gives it up when the entry cannot be appended.
+     *
+     * @param name the entry name
+     * @return false if the archive already holds, or another writer has reserved, an entry of
+     *         that name
+     */
+    public synchronized boolean tryReserve(String name) {
+        return index.get(name) == null && reserved.add(name);
+    }
+
+    /**
+     * Gives up the reservation of an entry name.
+     */
+    public synchronized void release(String name) {
+        reserved.remove(name);
+    }
+
+    /**
+     * Appends a file to the archive, unless it already holds an entry of that name. Any
+     * reservation of the name ends.
+     *
+     * @param name the entry name
+     * @param file the file to append
+     * @param sha256 the SHA-256 digest of the file, recorded in the index, or null
+     * @return the index entry
+     * @throws IOException if the file cannot be read, the archive cannot be written, or the
+     *                     archive is closed
+     */
+    public synchronized ArchiveIndex.Entry append(String name, Path file, String sha256) throws IOException {
+        reserved.remove(name);
+        if (closed) {
+            throw new IOException("Archive " + archive + " is closed");
+        }
+        ArchiveIndex.Entry existing = index.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        long headerOffset = position;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            ByteBuffer header = format == Format.TAR
+                    ? tarHeader(nameBytes, size, Files.getLastModifiedTime(file).toInstant())
+                    : zipLocalHeader(nameBytes, size, Files.getLastModifiedTime(file).toInstant());
+            writeFully(header);
+            long dataOffset = position;
+
+            CRC32 crc = new CRC32();
+            long copied = 0;
+            buffer.clear();
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                crc.update(buffer.duplicate());
+                copied += buffer.remaining();
+                writeFully(buffer);
+                buffer.clear();
+            }
+            if (copied != size) {
+                throw new IOException(file + " changed while it was archived");
+            }
+            if (format == Format.TAR) {
+                writeFully(ByteBuffer.allocate((int) (padToBlock(position) - position)));
+            } else {
+                // The CRC is only known now; patch it into the local header
+                ByteBuffer crcField = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+                crcField.putInt((int) crc.getValue()).flip();
+                channel.write(crcField, headerOffset + 14);
+            }
+            ArchiveIndex.Entry entry = new ArchiveIndex.Entry(name, headerOffset, dataOffset, size,
+                    crc.getValue(), sha256);
+            index.add(entry);
+            return entry;
+        } catch (IOException e) {
+            // Drop the partial entry, so the next one follows the last complete entry
+            position = headerOffset;
+            channel.truncate(headerOffset);
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the trailer of the archive and its index.
+     *
+     * @throws IOException if writing fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (format == Format.TAR) {
+                // Two zero blocks end a tar archive
+                writeFully(ByteBuffer.allocate(2 * TAR_BLOCK));
+            } else {
+                writeZipCentralDirectory();
+            }
+        } finally {
+            channel.close();
+        }
+        index.write(archive);
+    }
+
+    public Path getArchive() {
+        return archive;
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            position += channel.write(source, position);
+        }
+    }
+
+    private static long padToBlock(long offset) {
+        return (offset + TAR_BLOCK - 1) / TAR_BLOCK * TAR_BLOCK;
+    }
+
+    /**
+     * Builds a POSIX ustar header for a regular file.
+     */
+    private static ByteBuffer tarHeader(byte[] name, long size, Instant modified) throws IOException {
+        if (name.length > 100) {
+            throw new IOException("Entry name too long for a tar archive: " + new String(name, StandardCharsets.UTF_8));
+        }
+        byte[] header = new byte[TAR_BLOCK];
+        System.arraycopy(name, 0, header, 0, name.length);
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, modified.getEpochSecond());
+        header[156] = '0';
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+        // The checksum is computed with its own field filled with spaces
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        putOctal(header, 148, 7, checksum);
+        return ByteBuffer.wrap(header);
+    }
+
+    /**
+     * Writes a number as zero-padded octal digits followed by a NUL.
+     */
+    private static void putOctal(byte[] header, int offset, int length, long value) throws IOException {
+        String digits = Long.toOctalString(value);
+        if (digits.length() > length - 1) {
+            throw new IOException("Value too large for a tar header: " + value);
+        }
+        for (int i = 0; i < length - 1; i++) {
+            int digit = i - (length - 1 - digits.length());
+            header[offset + i] = (byte) (digit < 0 ? '0' : digits.charAt(digit));
+        }
+        header[offset + length - 1] = 0;
+    }
+
+    private ByteBuffer zipLocalHeader(byte[] name, long size, Instant modified) throws IOException {
+        if (position + 30 + name.length + size > ZIP_MAX_OFFSET) {
+            throw new IOException("Archive " + archive + " would exceed 4 GiB, which needs zip64; use tar");
+        }
+        if (index.getEntries().size() >= ZIP_MAX_ENTRIES) {
+            throw new IOException("Archive " + archive + " would exceed " + ZIP_MAX_ENTRIES + " entries; use tar");
+        }
+        ByteBuffer header = ByteBuffer.allocate(30 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(ZIP_LOCAL_HEADER)
+            .putShort((short) ZIP_VERSION_STORED)
+            .putShort((short) ZIP_FLAG_UTF8)
+            .putShort((short) 0)
+            .putInt(dosTime(modified))
+            // CRC-32, patched once the data is written
+            .putInt(0)
+            .putInt((int) size)
+            .putInt((int) size)
+            .putShort((short) name.length)
+            .putShort((short) 0)
+            .put(name);
+        return header.flip();
+    }
+
+    private void writeZipCentralDirectory() throws IOException {
+        long start = position;
+        int count = 0;
+        for (ArchiveIndex.Entry entry : index.getEntries()) {
+            byte[] name = entry.getName().getBytes(StandardCharsets.UTF_8);
+            // Reuse the modification time recorded in the local header
+            ByteBuffer time = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(time, entry.getHeaderOffset() + 10);
+            ByteBuffer header = ByteBuffer.allocate(46 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(ZIP_CENTRAL_HEADER)
+                .putShort((short) ZIP_VERSION_STORED)
+                .putShort((short) ZIP_VERSION_STORED)
+                .putShort((short) ZIP_FLAG_UTF8)
+                .putShort((short) 0)
+                .putInt(time.getInt(0))
+                .putInt((int) entry.getCrc32())
+                .putInt((int) entry.getSize())
+                .putInt((int) entry.getSize())
+                .putShort((short) name.length)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putInt(0)
+                .putInt((int) entry.getHeaderOffset())
+                .put(name);
+            writeFully(header.flip());
+            count++;
+        }
+        ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+        end.putInt(ZIP_END_OF_CENTRAL_DIRECTORY)
+            .putShort((short) 0)
+            .putShort((short) 0)
+            .putShort((short) count)
+            .putShort((short) count)
+            .putInt((int) (position - start))
+            .putInt((int) start)
+            .putShort((short) 0);
+        writeFully(end.flip());
+    }
+
+    /**
+     * Converts a time to the MS-DOS date and time zip headers use, in local time.
+     */
+    private static int dosTime(Instant instant) {
+        LocalDateTime time = LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            time = LocalDateTime.of(1980, 1, 1, 0, 0);
+        }
+        int date = (time.getYear() - 1980) << 9 | time.getMonthValue() << 5 | time.getDayOfMonth();
+        int clock = time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() / 2;
+        return date << 16 | clock;
+    }
+}
@@ -0,0 +1,107 @@
+package com.nasarover.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Circuit breaker for a single host. After a number of consecutive failures the circuit opens
+ * and requests fail at once, without reaching the host; once the open period has passed, a
+ * single trial request is let through, closing the circuit again if it succeeds.
+ */
+public class CircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    /**
+     * State of the circuit.
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    /**
+     * Creates a closed circuit.
+     *
+     * @param name the name of the protected host, used in messages
+     * @param failureThreshold the number of consecutive failures that opens the circuit
+     * @param openDuration how long the circuit stays open before a trial request
+     */
+    public CircuitBreaker(String name, int failureThreshold, Duration openDuration) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = openDuration.toNanos();
+    }
+
+    /**
+     * Asks for permission to send a request. A granted request must be followed by a call to
+     * {@link #recordSuccess()} or {@link #recordFailure()}.
+     *
+     * @throws OpenException if the circuit is open
+     */
+    public synchronized void acquire() throws OpenException {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.CLOSED) {
+            return;
+        }
+        if (state == State.HALF_OPEN && !trialInFlight) {
+            trialInFlight = true;
+            return;
+        }
+        throw new OpenException(name);
+    }
+
+    /**
+     * Records a request the host answered properly, even if with a client error.
+     */
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            logger.info("Circuit for {} closed", name);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    /**
+     * Records a request that failed because of the host or the network.
+     */
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                logger.warn("Circuit for {} opened after {} consecutive failures", name, consecutiveFailures);
+            }
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            trialInFlight = false;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Signals a request rejected because the circuit is open.
+     */
+    public static class OpenException extends IOException {
+        public OpenException(String name) {
+            super("Circuit open for " + name);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.nasarover.util;
+
+import java.nio.file.Path;
+
+/**
+ * Result of downloading a file to disk.
+ */
+public class DownloadResult {
+
+    private final Path file;
+    private final long size;
+    private final String sha256;
+    private final String etag;
+    private final String lastModified;
+    private final boolean notModified;
+
+    public DownloadResult(Path file, long size, String sha256, String etag, String lastModified,
+                          boolean notModified) {
+        this.file = file;
+        this.size = size;
+        this.sha256 = sha256;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.notModified = notModified;
+    }
+
+    /**
+     * Creates the result of a conditional request the server answered with 304 Not Modified.
+     *
+     * @param file the existing local file
+     * @param etag the ETag sent by the server, if any
+     * @param lastModified the Last-Modified date sent by the server, if any
+     * @return the result
+     */
+    public static DownloadResult notModified(Path file, String etag, String lastModified) {
+        return new DownloadResult(file, -1, null, etag, lastModified, true);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the size of the downloaded file, or -1 if the file was not modified.
+     *
+     * @return the size in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the hex encoded SHA-256 digest of the file, or null if the file was not modified.
+     *
+     * @return the checksum
+     */
+    public String getSha256() {
+        return sha256;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    @Override
+    public String toString() {
+        return "DownloadResult{" +
+                "file=" + file +
+                ", size=" + size +
+                ", sha256='" + sha256 + '\'' +
+                ", etag='" + etag + '\'' +
+                ", lastModified='" + lastModified + '\'' +
+                ", notModified=" + notModified +
+                '}';
+    }
+}
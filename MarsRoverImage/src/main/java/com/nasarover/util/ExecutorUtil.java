@@ -0,0 +1,81 @@
+package com.nasarover.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Utility class for creating and shutting down executors.
+ */
+public class ExecutorUtil {
+    private static final Logger logger = LoggerFactory.getLogger(ExecutorUtil.class);
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private ExecutorUtil() {
+    }
+
+    /**
+     * Creates an executor for I/O bound tasks. When virtual threads are requested and the
+     * running JDK provides them (Java 21+), a virtual-thread-per-task executor is returned;
+     * otherwise a fixed pool of daemon platform threads is used.
+     *
+     * @param name prefix for the thread names
+     * @param threads number of platform threads to use when virtual threads are not available
+     * @param virtualThreads whether virtual threads should be used if available
+     * @return the executor
+     */
+    public static ExecutorService newIoExecutor(String name, int threads, boolean virtualThreads) {
+        if (virtualThreads) {
+            try {
+                // Looked up reflectively so the project still compiles for Java 11
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                logger.debug("Using virtual threads for {}", name);
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                logger.warn("Virtual threads are not supported by this JDK, using {} platform threads for {}",
+                        threads, name);
+            }
+        }
+        return Executors.newFixedThreadPool(Math.max(1, threads), daemonThreadFactory(name));
+    }
+
+    /**
+     * Creates a thread factory producing named daemon threads.
+     *
+     * @param name prefix for the thread names
+     * @return the thread factory
+     */
+    public static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Shuts down an executor, waiting for running tasks to finish.
+     *
+     * @param executor the executor to shut down
+     */
+    public static void shutdown(ExecutorService executor) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("Executor did not terminate in time, forcing shutdown");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.nasarover.util;
+
+import com.nasarover.config.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP transport shared by the API calls and the image downloads.
+ * All requests go through one {@link HttpClient}, which keeps connections alive in its pool
+ * and negotiates HTTP/2 where the server supports it, so requests to the same host reuse
+ * connections (or multiplex over one) instead of paying a new TCP and TLS handshake each time.
+ * Redirects are followed manually, and the number of concurrent requests per host is capped.
+ */
+public class HttpTransport implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(HttpTransport.class);
+
+    private static final int MAX_REDIRECTS = 5;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 16;
+    private static final int DEFAULT_KEEPALIVE_SECONDS = 60;
+    private static final int DEFAULT_CONNECT_TIMEOUT = 10000; // 10 seconds
+    private static final int DEFAULT_READ_TIMEOUT = 30000; // 30 seconds
+
+    private final HttpClient client;
+    private final int maxConnectionsPerHost;
+    private final Duration readTimeout;
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService watchdog;
+
+    /**
+     * Callback consuming a streamed response body.
+     *
+     * @param <R> the result type
+     */
+    @FunctionalInterface
+    public interface StreamHandler<R> {
+        /**
+         * Handles the final (non-redirect) response.
+         *
+         * @param response the response, used for the status code and headers
+         * @param body the response body, closed by the transport afterwards
+         * @return the result
+         * @throws IOException if reading the body fails
+         */
+        R handle(HttpResponse<?> response, InputStream body) throws IOException;
+    }
+
+    public HttpTransport(AppConfig config) {
+        // The JDK connection pool reads these once, before the first client is created
+        setDefaultProperty("jdk.httpclient.connectionPoolSize",
+                Math.max(0, config.getHttpConnectionPoolSize()));
+        setDefaultProperty("jdk.httpclient.keepalive.timeout",
+                positiveOr(config.getHttpKeepAliveSeconds(), DEFAULT_KEEPALIVE_SECONDS));
+
+        this.maxConnectionsPerHost = positiveOr(config.getHttpMaxConnectionsPerHost(),
+                DEFAULT_MAX_CONNECTIONS_PER_HOST);
+        this.readTimeout = Duration.ofMillis(positiveOr(config.getHttpReadTimeout(), DEFAULT_READ_TIMEOUT));
+        HttpClient.Version version = "HTTP_1_1".equalsIgnoreCase(config.getHttpVersion())
+                ? HttpClient.Version.HTTP_1_1
+                : HttpClient.Version.HTTP_2;
+        this.client = HttpClient.newBuilder()
+                .version(version)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofMillis(positiveOr(config.getHttpConnectTimeout(), DEFAULT_CONNECT_TIMEOUT)))
+                .build();
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(
+                ExecutorUtil.daemonThreadFactory("http-read-timeout"));
+        logger.debug("Created HTTP transport ({}, max {} connections per host)", version, maxConnectionsPerHost);
+    }
+
+    /**
+     * Sends a GET request, following redirects.
+     *
+     * @param url the URL to request
+     * @param bodyHandler the handler for the response body
+     * @return the final (non-redirect) response
+     * @throws ProtocolException if a redirect is malformed or there are too many redirects
+     * @throws IOException if the request fails
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public <T> HttpResponse<T> send(String url, HttpResponse.BodyHandler<T> bodyHandler)
+            throws IOException, InterruptedException {
+        return send(url, Collections.emptyMap(), bodyHandler);
+    }
+
+    /**
+     * Sends a GET request with extra headers, following redirects.
+     *
+     * @param url the URL to request
+     * @param headers the request headers
+     * @param bodyHandler the handler for the response body
+     * @return the final (non-redirect) response
+     * @throws ProtocolException if a redirect is malformed or there are too many redirects
+     * @throws IOException if the request fails
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public <T> HttpResponse<T> send(String url, Map<String, String> headers, HttpResponse.BodyHandler<T> bodyHandler)
+            throws IOException, InterruptedException {
+        URI uri = URI.create(url);
+        int redirectCount = 0;
+
+        while (redirectCount < MAX_REDIRECTS) {
+            Semaphore permit = acquirePermit(uri);
+            HttpResponse<T> response;
+            try {
+                response = client.send(newRequest(uri, headers), bodyHandler);
+            } finally {
+                permit.release();
+            }
+
+            URI location = redirectLocation(uri, response);
+            if (location == null) {
+                return response;
+            }
+            if (response.body() instanceof InputStream) {
+                ((InputStream) response.body()).close();
+            }
+            redirectCount++;
+            uri = location;
+        }
+
+        throw new ProtocolException("Too many redirects");
+    }
+
+    /**
+     * Sends a GET request, following redirects, and streams the final response body to a handler.
+     * The per-host permit is held until the handler returns, and a body read that stalls for
+     * longer than the read timeout fails with an {@link HttpTimeoutException}.
+     *
+     * @param url the URL to request
+     * @param headers the request headers
+     * @param handler the handler consuming the response
+     * @return the result of the handler
+     * @throws ProtocolException if a redirect is malformed or there are too many redirects
+     * @throws IOException if the request or the handler fails
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public <R> R stream(String url, Map<String, String> headers, StreamHandler<R> handler)
+            throws IOException, InterruptedException {
+        URI uri = URI.create(url);
+        int redirectCount = 0;
+
+        while (redirectCount < MAX_REDIRECTS) {
+            Semaphore permit = acquirePermit(uri);
+            try {
+                HttpResponse<InputStream> response = client.send(newRequest(uri, headers),
+                        HttpResponse.BodyHandlers.ofInputStream());
+                try (IdleTimeoutInputStream body = new IdleTimeoutInputStream(response.body())) {
+                    URI location = redirectLocation(uri, response);
+                    if (location == null) {
+                        return handler.handle(response, body);
+                    }
+                    redirectCount++;
+                    uri = location;
+                }
+            } finally {
+                permit.release();
+            }
+        }
+
+        throw new ProtocolException("Too many redirects");
+    }
+
+    private HttpRequest newRequest(URI uri, Map<String, String> headers) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(uri)
+                .timeout(readTimeout)
+                .GET();
+        headers.forEach(builder::header);
+        return builder.build();
+    }
+
+    /**
+     * Gets the target of a redirect response.
+     *
+     * @return the absolute redirect target, or null if the response is not a redirect
+     */
+    private URI redirectLocation(URI current, HttpResponse<?> response) throws ProtocolException {
+        int status = response.statusCode();
+        if (status != 301 && status != 302 && status != 303 && status != 307 && status != 308) {
+            return null;
+        }
+        String location = response.headers().firstValue("Location").orElse(null);
+        if (location == null) {
+            throw new ProtocolException("Redirect with no location header");
+        }
+        // Handles both absolute and relative redirects
+        return current.resolve(location);
+    }
+
+    private Semaphore acquirePermit(URI uri) throws InterruptedException {
+        String host = uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+        Semaphore permit = hostPermits.computeIfAbsent(host, key -> new Semaphore(maxConnectionsPerHost));
+        permit.acquire();
+        return permit;
+    }
+
+    private static int positiveOr(int value, int defaultValue) {
+        return value > 0 ? value : defaultValue;
+    }
+
+    private static void setDefaultProperty(String key, int value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, String.valueOf(value));
+        }
+    }
+
+    /**
+     * Stops the read timeout watchdog. Pooled connections are released when the client is
+     * garbage collected.
+     */
+    @Override
+    public void close() {
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * Body stream that is closed by the watchdog when no data arrives within the read timeout.
+     * Closing the JDK body stream makes a blocked read return end-of-stream, so reads after a
+     * timeout are turned into an exception instead of a silently truncated body.
+     */
+    private class IdleTimeoutInputStream extends FilterInputStream {
+        private volatile long lastActivity = System.nanoTime();
+        private volatile boolean timedOut;
+        private final ScheduledFuture<?> check;
+
+        IdleTimeoutInputStream(InputStream in) {
+            super(in);
+            long period = readTimeout.toMillis();
+            this.check = watchdog.scheduleWithFixedDelay(this::checkIdle, period, period, TimeUnit.MILLISECONDS);
+        }
+
+        private void checkIdle() {
+            if (System.nanoTime() - lastActivity > readTimeout.toNanos()) {
+                timedOut = true;
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // The read side reports the timeout
+                }
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            return afterRead(b);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            return afterRead(n);
+        }
+
+        private int afterRead(int result) throws IOException {
+            if (timedOut) {
+                throw new HttpTimeoutException("Read timed out");
+            }
+            lastActivity = System.nanoTime();
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            check.cancel(false);
+            super.close();
+        }
+    }
+}
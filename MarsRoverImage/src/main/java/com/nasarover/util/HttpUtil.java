@@ -1,12 +1,35 @@
 package com.nasarover.util;
 
+import com.nasarover.config.AppConfig;
 import com.nasarover.exception.ImageDownloadException;
+import com.nasarover.metrics.Counter;
+import com.nasarover.metrics.Histogram;
+import com.nasarover.metrics.MetricsRegistry;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.ProtocolException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Utility class for HTTP operations.
@@ -14,9 +37,36 @@ import java.net.URL;
 public class HttpUtil {
     
     private static final int BUFFER_SIZE = 8192;
-    private static final int MAX_REDIRECTS = 5;
-    private static final int CONNECT_TIMEOUT = 10000; // 10 seconds
-    private static final int READ_TIMEOUT = 30000; // 30 seconds
+    private static final int DIRECT_BUFFER_SIZE = 64 * 1024;
+    private static final int HTTP_PARTIAL_CONTENT = 206;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes (\\d+)-\\d+/(\\d+|\\*)");
+    
+    // Direct buffers are expensive to allocate, so they are shared between downloads
+    private static final ConcurrentLinkedQueue<ByteBuffer> BUFFER_POOL = new ConcurrentLinkedQueue<>();
+    
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+    private static final Histogram DOWNLOAD_SECONDS = METRICS.histogram("nasarover_download_seconds",
+            "Time of a download request, from sending it to the end of the body", Histogram.LATENCY_BUCKETS);
+    private static final Histogram DOWNLOAD_TTFB_SECONDS = METRICS.histogram("nasarover_download_ttfb_seconds",
+            "Time from sending a download request to the response headers", Histogram.LATENCY_BUCKETS);
+    private static final Histogram DOWNLOAD_THROUGHPUT = METRICS.histogram("nasarover_download_throughput_bytes_per_second",
+            "Body transfer rate of downloads that received a body", Histogram.THROUGHPUT_BUCKETS);
+    private static final Counter DOWNLOAD_BYTES = METRICS.counter("nasarover_download_bytes_total",
+            "Response body bytes received by downloads");
+    private static final Counter DOWNLOAD_ERRORS = METRICS.counter("nasarover_download_errors_total",
+            "Download requests that failed");
+    private static final Histogram FILE_WRITE_SECONDS = METRICS.histogram("nasarover_file_write_seconds",
+            "Time spent writing the body of a download to disk", Histogram.LATENCY_BUCKETS);
+    private static final Counter FILE_WRITE_BYTES = METRICS.counter("nasarover_file_write_bytes_total",
+            "Bytes of downloads written to disk");
+    
+    /**
+     * Holds the transport used by the overloads without an explicit transport.
+     */
+    private static class DefaultTransportHolder {
+        static final HttpTransport INSTANCE = new HttpTransport(new AppConfig());
+    }
     
     /**
      * Downloads a file from a URL and returns it as a byte array.
@@ -26,69 +76,392 @@ public class HttpUtil {
      * @throws ImageDownloadException if the download fails
      */
     public static byte[] downloadFile(String fileUrl) throws ImageDownloadException {
-        int redirectCount = 0;
-        String currentUrl = fileUrl;
+        return downloadFile(DefaultTransportHolder.INSTANCE, fileUrl);
+    }
+    
+    /**
+     * Downloads a file from a URL through the given transport and returns it as a byte array.
+     * 
+     * @param transport the transport to send the request through
+     * @param fileUrl the URL of the file to download
+     * @return byte array containing the file data
+     * @throws ImageDownloadException if the download fails
+     */
+    public static byte[] downloadFile(HttpTransport transport, String fileUrl) throws ImageDownloadException {
+        return execute(transport, fileUrl, Collections.emptyMap(), (response, inputStream) -> {
+            requireStatus(response, HttpURLConnection.HTTP_OK);
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, bytesRead);
+            }
+            return outputStream.toByteArray();
+        });
+    }
+    
+    /**
+     * Downloads a file from a URL straight to disk.
+     * 
+     * @param fileUrl the URL of the file to download
+     * @param target the path to write the file to
+     * @return the result of the download
+     * @throws ImageDownloadException if the download fails
+     */
+    public static DownloadResult downloadToFile(String fileUrl, Path target) throws ImageDownloadException {
+        return downloadToFile(DefaultTransportHolder.INSTANCE, fileUrl, target);
+    }
+    
+    /**
+     * Downloads a file from a URL through the given transport straight to disk.
+     * 
+     * @param transport the transport to send the request through
+     * @param fileUrl the URL of the file to download
+     * @param target the path to write the file to
+     * @return the result of the download
+     * @throws ImageDownloadException if the download fails
+     */
+    public static DownloadResult downloadToFile(HttpTransport transport, String fileUrl, Path target)
+            throws ImageDownloadException {
+        return downloadToFile(transport, fileUrl, target, null, null);
+    }
+    
+    /**
+     * Downloads a file from a URL through the given transport straight to disk. The body is
+     * streamed through a pooled direct buffer into {@code <target>.part}, hashed on the way,
+     * and atomically renamed once the transfer is complete, so memory use does not grow with
+     * the file size and a failed transfer never leaves a truncated target behind.
+     * <p>
+     * The expected length and the validators of the transfer are recorded next to the part
+     * file. If a previous attempt was interrupted, the download resumes with a range request
+     * guarded by {@code If-Range}; a server that no longer has the same file answers with the
+     * full body, which replaces the stale part.
+     * <p>
+     * When validators of an existing target are given, the request is made conditional and a
+     * 304 response leaves the target untouched.
+     * 
+     * @param transport the transport to send the request through
+     * @param fileUrl the URL of the file to download
+     * @param target the path to write the file to
+     * @param ifNoneMatch the ETag of the existing target, or null
+     * @param ifModifiedSince the Last-Modified date of the existing target, or null
+     * @return the result of the download
+     * @throws ImageDownloadException if the download fails
+     */
+    public static DownloadResult downloadToFile(HttpTransport transport, String fileUrl, Path target,
+                                                String ifNoneMatch, String ifModifiedSince)
+            throws ImageDownloadException {
+        PartialDownload partial = new PartialDownload(target);
+        Map<String, String> headers = new HashMap<>();
+        long resumeFrom = 0;
+        try {
+            if (partial.load(fileUrl)) {
+                resumeFrom = partial.size();
+                headers.put("Range", "bytes=" + resumeFrom + "-");
+                headers.put("If-Range", partial.validator());
+            }
+        } catch (IOException e) {
+            resumeFrom = 0;
+            headers.clear();
+        }
+        boolean conditional = resumeFrom == 0 && Files.exists(target)
+                && (ifNoneMatch != null || ifModifiedSince != null);
+        if (conditional) {
+            if (ifNoneMatch != null) {
+                headers.put("If-None-Match", ifNoneMatch);
+            }
+            if (ifModifiedSince != null) {
+                headers.put("If-Modified-Since", ifModifiedSince);
+            }
+        }
         
-        while (redirectCount < MAX_REDIRECTS) {
-            HttpURLConnection connection = null;
-            try {
-                URL url = new URL(currentUrl);
-                connection = (HttpURLConnection) url.openConnection();
-                connection.setConnectTimeout(CONNECT_TIMEOUT);
-                connection.setReadTimeout(READ_TIMEOUT);
-                connection.setInstanceFollowRedirects(false);
-                
-                int status = connection.getResponseCode();
-                
-                // Handle redirects
-                if (status == HttpURLConnection.HTTP_MOVED_TEMP || 
-                    status == HttpURLConnection.HTTP_MOVED_PERM || 
-                    status == HttpURLConnection.HTTP_SEE_OTHER) {
-                    
-                    redirectCount++;
-                    String newUrl = connection.getHeaderField("Location");
-                    connection.disconnect();
-                    
-                    if (newUrl == null) {
-                        throw new ImageDownloadException("Redirect with no location header");
-                    }
-                    
-                    // Handle relative redirects
-                    if (!newUrl.startsWith("http")) {
-                        URL base = new URL(currentUrl);
-                        URL next = new URL(base, newUrl);
-                        newUrl = next.toExternalForm();
-                    }
-                    
-                    currentUrl = newUrl;
-                    continue;
+        long offset = resumeFrom;
+        try {
+            return execute(transport, fileUrl, headers, (response, inputStream) -> {
+                if (conditional && response.statusCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    return DownloadResult.notModified(target,
+                            response.headers().firstValue("ETag").orElse(ifNoneMatch),
+                            response.headers().firstValue("Last-Modified").orElse(ifModifiedSince));
                 }
                 
-                // Handle successful response
-                if (status == HttpURLConnection.HTTP_OK) {
-                    try (InputStream inputStream = connection.getInputStream();
-                         ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-                        
-                        byte[] buffer = new byte[BUFFER_SIZE];
-                        int bytesRead;
-                        while ((bytesRead = inputStream.read(buffer)) != -1) {
-                            outputStream.write(buffer, 0, bytesRead);
-                        }
-                        
-                        return outputStream.toByteArray();
-                    }
+                long start = 0;
+                if (offset > 0 && response.statusCode() == HTTP_PARTIAL_CONTENT) {
+                    start = checkResumedResponse(response, fileUrl, partial, offset);
+                } else if (response.statusCode() == HTTP_RANGE_NOT_SATISFIABLE && offset > 0) {
+                    throw new RangeNotSatisfiableException();
                 } else {
-                    throw new ImageDownloadException("Download failed with status code: " + status);
+                    requireStatus(response, HttpURLConnection.HTTP_OK);
+                    partial.save(fileUrl,
+                            response.headers().firstValueAsLong("Content-Length").orElse(-1),
+                            response.headers().firstValue("ETag").orElse(null),
+                            response.headers().firstValue("Last-Modified").orElse(null));
                 }
-            } catch (IOException e) {
-                throw new ImageDownloadException("Download failed: " + e.getMessage(), e);
-            } finally {
-                if (connection != null) {
-                    connection.disconnect();
+                
+                MessageDigest digest = newSha256();
+                if (start > 0) {
+                    hashPrefix(partial.getPartFile(), start, digest);
                 }
+                long size = start + transfer(Channels.newChannel(inputStream), partial.getPartFile(), start, digest);
+                long expected = partial.getExpectedLength();
+                if (expected >= 0 && size != expected) {
+                    if (size > expected) {
+                        partial.discard();
+                    }
+                    throw new IOException("Incomplete download: received " + size + " of " + expected + " bytes");
+                }
+                moveAtomically(partial.getPartFile(), target);
+                partial.complete();
+                return new DownloadResult(target, size, toHex(digest.digest()),
+                        partial.getEtag(), partial.getLastModified(), false);
+            });
+        } catch (ImageDownloadException e) {
+            if (e.getCause() instanceof RangeNotSatisfiableException) {
+                // The recorded part no longer matches the remote file, start over
+                partial.discard();
+                return downloadToFile(transport, fileUrl, target, ifNoneMatch, ifModifiedSince);
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Checks that a 206 response continues the recorded partial body.
+     * 
+     * @return the offset the response body starts at
+     * @throws IOException if the response does not match the partial download
+     */
+    private static long checkResumedResponse(HttpResponse<?> response, String fileUrl,
+                                             PartialDownload partial, long offset)
+            throws IOException {
+        String contentRange = response.headers().firstValue("Content-Range").orElse("");
+        Matcher matcher = CONTENT_RANGE_PATTERN.matcher(contentRange);
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        boolean sameEntity = etag == null || partial.getEtag() == null || etag.equals(partial.getEtag());
+        if (!matcher.matches() || Long.parseLong(matcher.group(1)) != offset || !sameEntity) {
+            partial.discard();
+            throw new IOException("Unexpected partial response: " + contentRange);
+        }
+        if (!"*".equals(matcher.group(2)) && partial.getExpectedLength() < 0) {
+            partial.save(fileUrl, Long.parseLong(matcher.group(2)), partial.getEtag(), partial.getLastModified());
+        }
+        return offset;
+    }
+    
+    /**
+     * Requests a URL and hands the final response body to the handler.
+     * 
+     * @param transport the transport to send the request through
+     * @param fileUrl the URL to request
+     * @param headers the request headers
+     * @param handler the handler consuming the response body
+     * @return the result of the handler
+     * @throws ImageDownloadException if the request or the handler fails
+     */
+    private static <R> R execute(HttpTransport transport, String fileUrl, Map<String, String> headers,
+                                 HttpTransport.StreamHandler<R> handler) throws ImageDownloadException {
+        long start = System.nanoTime();
+        CountingInputStream[] counted = new CountingInputStream[1];
+        boolean failed = true;
+        try {
+            R result = transport.stream(fileUrl, headers, (response, body) -> {
+                long headersAt = System.nanoTime();
+                DOWNLOAD_TTFB_SECONDS.observeNanos(headersAt - start);
+                counted[0] = new CountingInputStream(body, headersAt);
+                return handler.handle(response, counted[0]);
+            });
+            failed = false;
+            return result;
+        } catch (StatusCodeException e) {
+            throw new ImageDownloadException("Download failed with status code: " + e.status, e.status);
+        } catch (ProtocolException e) {
+            // Malformed redirects and redirect loops
+            throw new ImageDownloadException(e.getMessage(), e);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new ImageDownloadException("Download failed: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ImageDownloadException("Download interrupted: " + fileUrl, e);
+        } finally {
+            recordDownload(start, counted[0], failed);
+        }
+    }
+    
+    private static void recordDownload(long start, CountingInputStream body, boolean failed) {
+        long end = System.nanoTime();
+        DOWNLOAD_SECONDS.observeNanos(end - start);
+        if (failed) {
+            DOWNLOAD_ERRORS.increment();
+        }
+        if (body != null && body.count > 0) {
+            DOWNLOAD_BYTES.add(body.count);
+            long nanos = end - body.startedAt;
+            if (!failed && nanos > 0) {
+                DOWNLOAD_THROUGHPUT.observe(body.count * 1e9 / nanos);
+            }
+        }
+    }
+    
+    /**
+     * Counts the bytes read from a response body.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        final long startedAt;
+        long count;
+        
+        CountingInputStream(InputStream in, long startedAt) {
+            super(in);
+            this.startedAt = startedAt;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
             }
+            return b;
         }
         
-        throw new ImageDownloadException("Too many redirects");
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+    
+    private static void requireStatus(HttpResponse<?> response, int expected) throws StatusCodeException {
+        if (response.statusCode() != expected) {
+            throw new StatusCodeException(response.statusCode());
+        }
+    }
+    
+    /**
+     * Signals an unexpected status code out of a stream handler.
+     */
+    private static class StatusCodeException extends IOException {
+        final int status;
+        
+        StatusCodeException(int status) {
+            super("Unexpected status code: " + status);
+            this.status = status;
+        }
+    }
+    
+    /**
+     * Signals that the server rejected the range of a resumed download.
+     */
+    private static class RangeNotSatisfiableException extends IOException {
+        RangeNotSatisfiableException() {
+            super("Requested range not satisfiable");
+        }
+    }
+    
+    /**
+     * Copies a channel into a file through a pooled direct buffer.
+     * 
+     * @param source the channel to read from
+     * @param file the file to write to
+     * @param position the offset to start writing at; anything after it is discarded
+     * @param digest the digest updated with the copied bytes
+     * @return the number of bytes copied
+     * @throws IOException if reading or writing fails
+     */
+    static long transfer(ReadableByteChannel source, Path file, long position, MessageDigest digest)
+            throws IOException {
+        ByteBuffer buffer = acquireBuffer();
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            out.truncate(position);
+            out.position(position);
+            long total = 0;
+            // Only the writes are timed, reading the source waits on the network
+            long writeNanos = 0;
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer.duplicate());
+                long writeStart = System.nanoTime();
+                while (buffer.hasRemaining()) {
+                    total += out.write(buffer);
+                }
+                writeNanos += System.nanoTime() - writeStart;
+                buffer.clear();
+            }
+            FILE_WRITE_SECONDS.observeNanos(writeNanos);
+            FILE_WRITE_BYTES.add(total);
+            return total;
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+    
+    /**
+     * Feeds the first bytes of an existing file into a digest.
+     */
+    private static void hashPrefix(Path file, long length, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = acquireBuffer();
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long remaining = length;
+            while (remaining > 0) {
+                buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                int read = in.read(buffer);
+                if (read < 0) {
+                    throw new IOException("Partial download is shorter than recorded");
+                }
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+                remaining -= read;
+            }
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+    
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+    
+    private static ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = BUFFER_POOL.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+    }
+    
+    private static void releaseBuffer(ByteBuffer buffer) {
+        buffer.clear();
+        BUFFER_POOL.offer(buffer);
+    }
+    
+    /**
+     * Moves a file into place atomically, falling back to a plain replace when the file
+     * system does not support atomic moves.
+     */
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
     }
 }
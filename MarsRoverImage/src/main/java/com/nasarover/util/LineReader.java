@@ -0,0 +1,151 @@
+package com.nasarover.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the non-blank lines of a UTF-8 text file one at a time, trimmed, through a file
+ * channel and a fixed size buffer, so a file of any size costs the same memory and the first
+ * lines are available before the rest is read.
+ * <p>
+ * Lines are split on the raw bytes and decoded one by one, so a read or decoding error is
+ * reported with the number of the line it occurred in. As an {@link Iterator} cannot throw
+ * checked exceptions, errors are thrown as {@link UncheckedIOException}.
+ */
+public class LineReader implements Iterator<String>, Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private int lineNumber;
+    private boolean endOfFile;
+    private String next;
+
+    public LineReader(Path path) throws IOException {
+        this(path, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Opens a file.
+     *
+     * @param path the file
+     * @param bufferSize the number of bytes read from the file at a time
+     * @throws IOException if the file cannot be opened
+     */
+    public LineReader(Path path, int bufferSize) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.buffer = ByteBuffer.allocate(Math.max(1, bufferSize));
+        buffer.flip();
+    }
+
+    /**
+     * @throws UncheckedIOException if the file cannot be read, with the line number in the message
+     */
+    @Override
+    public boolean hasNext() {
+        while (next == null) {
+            String read;
+            try {
+                read = readLine();
+            } catch (CharacterCodingException e) {
+                throw new UncheckedIOException(new IOException(
+                        "Error reading " + path + " at line " + lineNumber + ": not valid UTF-8", e));
+            } catch (IOException e) {
+                // The line being read is not counted yet
+                throw new UncheckedIOException(new IOException(
+                        "Error reading " + path + " at line " + (lineNumber + 1) + ": " + e.getMessage(), e));
+            }
+            if (read == null) {
+                return false;
+            }
+            read = read.trim();
+            if (!read.isEmpty()) {
+                next = read;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String result = next;
+        next = null;
+        return result;
+    }
+
+    /**
+     * Gets the number of the line last read, starting at 1.
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads the next line, without its line terminator.
+     *
+     * @return the line, or null at the end of the file
+     */
+    private String readLine() throws IOException {
+        lineLength = 0;
+        while (true) {
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (b == '\n') {
+                    return decodeLine();
+                }
+                if (lineLength == line.length) {
+                    line = Arrays.copyOf(line, line.length * 2);
+                }
+                line[lineLength++] = b;
+            }
+            if (endOfFile) {
+                return lineLength > 0 ? decodeLine() : null;
+            }
+            buffer.clear();
+            int count = channel.read(buffer);
+            buffer.flip();
+            if (count < 0) {
+                endOfFile = true;
+            }
+        }
+    }
+
+    private String decodeLine() throws CharacterCodingException {
+        lineNumber++;
+        int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+        String decoded = decoder.decode(ByteBuffer.wrap(line, 0, length)).toString();
+        // A byte order mark some editors write at the start of the file
+        if (lineNumber == 1 && decoded.startsWith("\uFEFF")) {
+            decoded = decoded.substring(1);
+        }
+        return decoded;
+    }
+}
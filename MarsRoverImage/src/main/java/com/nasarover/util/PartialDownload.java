@@ -0,0 +1,128 @@
+package com.nasarover.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * State of an interrupted download: the partial body in {@code <file>.part} and, next to it
+ * in {@code <file>.part.meta}, the source URL, the expected length and the validators the
+ * server sent, so the transfer can later be resumed with a range request.
+ */
+class PartialDownload {
+
+    private static final String PART_SUFFIX = ".part";
+    private static final String META_SUFFIX = ".part.meta";
+
+    private final Path partFile;
+    private final Path metaFile;
+
+    private String url;
+    private long expectedLength = -1;
+    private String etag;
+    private String lastModified;
+
+    PartialDownload(Path target) {
+        String fileName = target.getFileName().toString();
+        Path dir = target.toAbsolutePath().getParent();
+        this.partFile = dir.resolve(fileName + PART_SUFFIX);
+        this.metaFile = dir.resolve(fileName + META_SUFFIX);
+    }
+
+    /**
+     * Loads the recorded state of a previous attempt.
+     *
+     * @return true if a partial body for the given URL exists and can be resumed
+     */
+    boolean load(String expectedUrl) {
+        if (!Files.isRegularFile(partFile) || !Files.isRegularFile(metaFile)) {
+            return false;
+        }
+        Properties meta = new Properties();
+        try (InputStream input = Files.newInputStream(metaFile)) {
+            meta.load(input);
+            url = meta.getProperty("url");
+            expectedLength = Long.parseLong(meta.getProperty("length", "-1"));
+            etag = meta.getProperty("etag");
+            lastModified = meta.getProperty("lastModified");
+            long size = Files.size(partFile);
+            // Without a validator there is no way to tell whether the remote file changed
+            return expectedUrl.equals(url) && (etag != null || lastModified != null)
+                    && size > 0 && (expectedLength < 0 || size < expectedLength);
+        } catch (IOException | NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Records the state of the transfer that is about to start.
+     */
+    void save(String url, long expectedLength, String etag, String lastModified) throws IOException {
+        this.url = url;
+        this.expectedLength = expectedLength;
+        this.etag = etag;
+        this.lastModified = lastModified;
+
+        Properties meta = new Properties();
+        meta.setProperty("url", url);
+        meta.setProperty("length", String.valueOf(expectedLength));
+        if (etag != null) {
+            meta.setProperty("etag", etag);
+        }
+        if (lastModified != null) {
+            meta.setProperty("lastModified", lastModified);
+        }
+        try (OutputStream output = Files.newOutputStream(metaFile)) {
+            meta.store(output, null);
+        }
+    }
+
+    /**
+     * Gets the validator to send in an If-Range header, preferring the ETag.
+     */
+    String validator() {
+        return etag != null ? etag : lastModified;
+    }
+
+    long size() throws IOException {
+        return Files.exists(partFile) ? Files.size(partFile) : 0;
+    }
+
+    Path getPartFile() {
+        return partFile;
+    }
+
+    long getExpectedLength() {
+        return expectedLength;
+    }
+
+    String getEtag() {
+        return etag;
+    }
+
+    String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Removes the metadata once the body has been moved into place.
+     */
+    void complete() throws IOException {
+        Files.deleteIfExists(metaFile);
+    }
+
+    /**
+     * Removes both the partial body and its metadata.
+     */
+    void discard() {
+        try {
+            Files.deleteIfExists(partFile);
+            Files.deleteIfExists(metaFile);
+        } catch (IOException e) {
+            // A leftover part file is detected as stale on the next attempt
+        }
+    }
+}
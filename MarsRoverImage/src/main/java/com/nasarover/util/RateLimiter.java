@@ -0,0 +1,146 @@
+package com.nasarover.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket shared by all calls against a rate limited API.
+ * <p>
+ * The bucket starts from a configured limit per window and corrects itself from the
+ * {@code X-RateLimit-Limit} and {@code X-RateLimit-Remaining} headers of each response: the
+ * limit sets the capacity and refill rate, and the remaining count caps the tokens, so the
+ * bucket never believes it has more requests left than the server does. After a 429 response
+ * the bucket is emptied and callers wait, either for the time the server asked for in
+ * {@code Retry-After} or until the next token is due.
+ */
+public class RateLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(RateLimiter.class);
+
+    private final long windowNanos;
+    private double capacity;
+    private double tokens;
+    private long lastRefill;
+    private long blockedUntil;
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param limit the number of requests allowed per window, until the server reports its own
+     * @param window the length of the rate limit window
+     */
+    public RateLimiter(int limit, Duration window) {
+        this.windowNanos = Math.max(1, window.toNanos());
+        this.capacity = Math.max(1, limit);
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+        this.blockedUntil = lastRefill;
+    }
+
+    /**
+     * Takes a token, waiting until one is available.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (true) {
+            long now = System.nanoTime();
+            refill(now);
+            long waitNanos;
+            if (now - blockedUntil < 0) {
+                waitNanos = blockedUntil - now;
+            } else if (tokens >= 1) {
+                tokens--;
+                return;
+            } else {
+                waitNanos = (long) Math.ceil((1 - tokens) * nanosPerToken());
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, Math.max(1, waitNanos));
+        }
+    }
+
+    /**
+     * Adjusts the bucket to the rate limit state reported by the server.
+     *
+     * @param headers the response headers
+     */
+    public synchronized void update(HttpHeaders headers) {
+        OptionalLong limit = longHeader(headers, "X-RateLimit-Limit");
+        OptionalLong remaining = longHeader(headers, "X-RateLimit-Remaining");
+        refill(System.nanoTime());
+        if (limit.isPresent() && limit.getAsLong() > 0 && limit.getAsLong() != (long) capacity) {
+            logger.debug("API rate limit is {} requests per window", limit.getAsLong());
+            capacity = limit.getAsLong();
+        }
+        if (remaining.isPresent()) {
+            tokens = Math.min(tokens, remaining.getAsLong());
+        }
+        tokens = Math.min(tokens, capacity);
+    }
+
+    /**
+     * Records a 429 response: empties the bucket and blocks all callers until the server's
+     * {@code Retry-After} delay has passed, or else until the next token is due.
+     *
+     * @param headers the headers of the 429 response
+     * @return the time callers will wait
+     */
+    public synchronized Duration throttled(HttpHeaders headers) {
+        update(headers);
+        long now = System.nanoTime();
+        long pauseNanos = retryAfter(headers)
+                .orElse(Duration.ofNanos((long) Math.ceil(nanosPerToken())))
+                .toNanos();
+        tokens = 0;
+        lastRefill = now + pauseNanos;
+        if (now + pauseNanos - blockedUntil > 0) {
+            blockedUntil = now + pauseNanos;
+        }
+        notifyAll();
+        return Duration.ofNanos(blockedUntil - now);
+    }
+
+    /**
+     * Gets the number of tokens currently available, for diagnostics.
+     */
+    public synchronized double available() {
+        refill(System.nanoTime());
+        return tokens;
+    }
+
+    private void refill(long now) {
+        if (now - lastRefill <= 0) {
+            return;
+        }
+        tokens = Math.min(capacity, tokens + (now - lastRefill) / nanosPerToken());
+        lastRefill = now;
+    }
+
+    private double nanosPerToken() {
+        return windowNanos / capacity;
+    }
+
+    /**
+     * Reads a {@code Retry-After} header given in seconds; an HTTP date is ignored in favour
+     * of the refill rate.
+     */
+    private static Optional<Duration> retryAfter(HttpHeaders headers) {
+        OptionalLong seconds = longHeader(headers, "Retry-After");
+        return seconds.isPresent() && seconds.getAsLong() >= 0
+                ? Optional.of(Duration.ofSeconds(seconds.getAsLong()))
+                : Optional.empty();
+    }
+
+    private static OptionalLong longHeader(HttpHeaders headers, String name) {
+        try {
+            return headers.firstValueAsLong(name);
+        } catch (NumberFormatException e) {
+            return OptionalLong.empty();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.nasarover.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.nasarover.exception.ApiRequestException;
+import com.nasarover.exception.ImageDownloadException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.file.FileSystemException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Retries transient failures with exponential backoff and full jitter.
+ * <p>
+ * Only failures that another attempt can fix are retried: server errors, throttling and
+ * timeouts, and network errors without a response. Client errors, malformed responses,
+ * redirect loops and local file system errors fail at once. Retries are also bounded by a
+ * budget shared by all calls through the policy, so that an outage does not multiply the
+ * load on the server by the number of attempts.
+ */
+public class RetryPolicy {
+    private static final Logger logger = LoggerFactory.getLogger(RetryPolicy.class);
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final double budgetRatio;
+    private final int budgetMinimum;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+
+    /**
+     * A unit of work that may be attempted several times.
+     *
+     * @param <T> the result type
+     * @param <E> the failure type
+     */
+    @FunctionalInterface
+    public interface Attempt<T, E extends Exception> {
+        T run() throws E, InterruptedException;
+    }
+
+    /**
+     * Callback invoked before each retry.
+     */
+    @FunctionalInterface
+    public interface RetryListener {
+        /**
+         * @param attempt the number of the attempt that failed, starting at 1
+         * @param failure the failure
+         * @param delay the time until the next attempt
+         */
+        void onRetry(int attempt, Exception failure, Duration delay);
+    }
+
+    /**
+     * Creates a policy.
+     *
+     * @param maxAttempts the maximum number of attempts per call, 1 for no retries
+     * @param baseDelay the delay cap of the first retry, doubled for each further retry
+     * @param maxDelay the upper bound of the delay cap
+     * @param budgetRatio the number of retries allowed per call, across all calls
+     * @param budgetMinimum the number of retries allowed regardless of the ratio
+     */
+    public RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay, double budgetRatio, int budgetMinimum) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMillis = Math.max(0, baseDelay.toMillis());
+        this.maxDelayMillis = Math.max(baseDelayMillis, maxDelay.toMillis());
+        this.budgetRatio = Math.max(0, budgetRatio);
+        this.budgetMinimum = Math.max(0, budgetMinimum);
+    }
+
+    /**
+     * Runs an attempt, retrying retryable failures.
+     *
+     * @param attempt the work to run
+     * @param listener the callback invoked before each retry
+     * @return the result of the first successful attempt
+     * @throws E the failure of the last attempt
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public <T, E extends Exception> T call(Attempt<T, E> attempt, RetryListener listener)
+            throws E, InterruptedException {
+        return call(attempt, failure -> true, listener);
+    }
+
+    /**
+     * Runs an attempt, retrying retryable failures that the caller also allows to be retried.
+     *
+     * @param attempt the work to run
+     * @param retryAllowed checks whether a failure may be retried, e.g. because the failed
+     *                     attempt had no side effects
+     * @param listener the callback invoked before each retry
+     * @return the result of the first successful attempt
+     * @throws E the failure of the last attempt
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public <T, E extends Exception> T call(Attempt<T, E> attempt, Predicate<Exception> retryAllowed,
+                                           RetryListener listener) throws E, InterruptedException {
+        calls.incrementAndGet();
+        for (int attemptNumber = 1; ; attemptNumber++) {
+            try {
+                return attempt.run();
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                if (attemptNumber >= maxAttempts || !isRetryable(e) || !retryAllowed.test(e) || !takeRetry()) {
+                    throw e;
+                }
+                Duration delay = backoff(attemptNumber);
+                listener.onRetry(attemptNumber, e, delay);
+                Thread.sleep(delay.toMillis());
+            }
+        }
+    }
+
+    /**
+     * Gets the delay before a retry: a random time up to the base delay doubled per failed
+     * attempt, so that callers that failed together do not retry together.
+     *
+     * @param failedAttempts the number of attempts that failed so far
+     * @return the delay
+     */
+    Duration backoff(int failedAttempts) {
+        long cap = baseDelayMillis << Math.min(failedAttempts - 1, 30);
+        if (cap <= 0 || cap > maxDelayMillis) {
+            cap = maxDelayMillis;
+        }
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(cap + 1));
+    }
+
+    /**
+     * Gets the number of retries made so far.
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    private boolean takeRetry() {
+        long allowed = budgetMinimum + (long) (budgetRatio * calls.get());
+        if (retries.incrementAndGet() > allowed) {
+            retries.decrementAndGet();
+            logger.warn("Retry budget exhausted ({} retries for {} calls), not retrying", allowed, calls.get());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Classifies a failure as retryable or fatal.
+     *
+     * @param failure the failure
+     * @return true if another attempt may succeed
+     */
+    public static boolean isRetryable(Throwable failure) {
+        int status = statusCode(failure);
+        if (status > 0) {
+            return status == 408 || status == 425 || status == 429
+                    || (status >= 500 && status != 501 && status != 505);
+        }
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CircuitBreaker.OpenException
+                    || cause instanceof ProtocolException
+                    || cause instanceof FileSystemException
+                    || cause instanceof JsonProcessingException) {
+                return false;
+            }
+        }
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                // Timeouts, resets and truncated bodies
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int statusCode(Throwable failure) {
+        if (failure instanceof ApiRequestException) {
+            return ((ApiRequestException) failure).getStatusCode();
+        }
+        if (failure instanceof ImageDownloadException) {
+            return ((ImageDownloadException) failure).getStatusCode();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,69 @@
+package com.nasarover.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for the MetricsRegistry class.
+ */
+public class MetricsRegistryTest {
+
+    @Test
+    public void testWritesPrometheusTextFormat() throws IOException {
+        MetricsRegistry registry = new MetricsRegistry();
+        Histogram latency = registry.histogram("test_seconds", "Test latency", new double[] {0.5, 0.1, 1});
+        Counter errors = registry.counter("test_errors_total", "Test errors");
+
+        latency.observe(0.05);
+        latency.observe(0.1);
+        latency.observe(0.75);
+        latency.observe(3);
+        errors.add(2);
+
+        StringBuilder text = new StringBuilder();
+        registry.writePrometheus(text);
+
+        assertEquals("# HELP test_errors_total Test errors\n"
+                + "# TYPE test_errors_total counter\n"
+                + "test_errors_total 2\n"
+                + "# HELP test_seconds Test latency\n"
+                + "# TYPE test_seconds histogram\n"
+                + "test_seconds_bucket{le=\"0.1\"} 2\n"
+                + "test_seconds_bucket{le=\"0.5\"} 2\n"
+                + "test_seconds_bucket{le=\"1\"} 3\n"
+                + "test_seconds_bucket{le=\"+Inf\"} 4\n"
+                + "test_seconds_sum 3.9\n"
+                + "test_seconds_count 4\n", text.toString());
+    }
+
+    @Test
+    public void testReturnsExistingMetricAndRejectsTypeClash() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter counter = registry.counter("test_total", "Test");
+
+        assertEquals(counter, registry.counter("test_total", "Test"));
+        assertThrows(IllegalArgumentException.class,
+                () -> registry.histogram("test_total", "Test", Histogram.LATENCY_BUCKETS));
+    }
+
+    @Test
+    public void testRegistersMetricsCreatedAfterJmxIsEnabled() throws JMException {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("test_before_total", "Test").increment();
+        registry.registerMBeans(server);
+        Histogram after = registry.histogram("test_after_seconds", "Test", Histogram.LATENCY_BUCKETS);
+        after.observeNanos(2_000_000);
+
+        assertEquals(1L, server.getAttribute(MetricsRegistry.objectName("test_before_total"), "Value"));
+        assertEquals(1L, server.getAttribute(MetricsRegistry.objectName("test_after_seconds"), "Count"));
+        assertEquals(0.002, (Double) server.getAttribute(MetricsRegistry.objectName("test_after_seconds"), "Mean"), 1e-9);
+    }
+}
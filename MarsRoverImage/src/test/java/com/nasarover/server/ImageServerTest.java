@@ -0,0 +1,139 @@
+package com.nasarover.server;
+
+import com.nasarover.util.ArchiveWriter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the ImageServer class.
+ */
+public class ImageServerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private ImageServer server;
+
+    @AfterEach
+    public void tearDown() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testServesImagesWithRangesAndConditionalRequests() throws Exception {
+        byte[] image = new byte[100_000];
+        new Random(1).nextBytes(image);
+        Path dateDir = Files.createDirectories(tempDir.resolve("curiosity").resolve("2015-06-03"));
+        Files.write(dateDir.resolve("FLB_1.JPG"), image);
+        Files.write(dateDir.resolve("FLB_2.JPG.part"), new byte[10]);
+        server = new ImageServer(new ImageDirectory(tempDir), 0, 2, Duration.ofMinutes(1));
+
+        String dates = send(get("/api/dates")).body();
+        assertEquals("{\"rovers\":{\"curiosity\":[\"2015-06-03\"]}}", dates);
+        String listing = send(get("/api/dates/curiosity/2015-06-03")).body();
+        assertTrue(listing.contains("\"url\":\"/images/curiosity/2015-06-03/FLB_1.JPG\""), listing);
+        assertTrue(!listing.contains(".part"), listing);
+
+        HttpResponse<byte[]> full = sendBytes(get("/images/curiosity/2015-06-03/FLB_1.JPG"));
+        assertEquals(200, full.statusCode());
+        assertArrayEquals(image, full.body());
+        assertEquals("image/jpeg", full.headers().firstValue("Content-Type").orElse(null));
+        String etag = full.headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<byte[]> range = sendBytes(get("/images/curiosity/2015-06-03/FLB_1.JPG")
+                .header("Range", "bytes=1000-1999").build());
+        assertEquals(206, range.statusCode());
+        assertEquals("bytes 1000-1999/100000", range.headers().firstValue("Content-Range").orElse(null));
+        assertArrayEquals(Arrays.copyOfRange(image, 1000, 2000), range.body());
+
+        HttpResponse<byte[]> suffix = sendBytes(get("/images/curiosity/2015-06-03/FLB_1.JPG")
+                .header("Range", "bytes=-10").build());
+        assertArrayEquals(Arrays.copyOfRange(image, 99_990, 100_000), suffix.body());
+
+        // A range of a representation the client no longer has returns the whole image
+        HttpResponse<byte[]> stale = sendBytes(get("/images/curiosity/2015-06-03/FLB_1.JPG")
+                .header("Range", "bytes=0-9").header("If-Range", "\"stale\"").build());
+        assertEquals(200, stale.statusCode());
+
+        assertEquals(416, sendBytes(get("/images/curiosity/2015-06-03/FLB_1.JPG")
+                .header("Range", "bytes=100000-").build()).statusCode());
+        assertEquals(304, sendBytes(get("/images/curiosity/2015-06-03/FLB_1.JPG")
+                .header("If-None-Match", etag).build()).statusCode());
+        assertEquals(304, sendBytes(get("/images/curiosity/2015-06-03/FLB_1.JPG")
+                .header("If-Modified-Since", full.headers().firstValue("Last-Modified").orElseThrow()).build())
+                .statusCode());
+        assertEquals(404, sendBytes(get("/images/curiosity/2015-06-03/FLB_2.JPG.part").build()).statusCode());
+        assertEquals(405, sendBytes(HttpRequest.newBuilder(uri("/api/dates"))
+                .POST(HttpRequest.BodyPublishers.noBody()).build()).statusCode());
+    }
+
+    @Test
+    public void testServesArchiveEntriesAndPicksUpNewDates() throws Exception {
+        Random random = new Random(2);
+        byte[] first = new byte[3000];
+        random.nextBytes(first);
+        byte[] second = new byte[513];
+        random.nextBytes(second);
+        Path roverDir = Files.createDirectories(tempDir.resolve("opportunity"));
+        try (ArchiveWriter writer = new ArchiveWriter(roverDir.resolve("2005-01-15.tar"), ArchiveWriter.Format.TAR)) {
+            writer.append("first.jpg", Files.write(tempDir.resolve("first.jpg"), first), "abc");
+            writer.append("second.jpg", Files.write(tempDir.resolve("second.jpg"), second), null);
+        }
+        ImageDirectory directory = new ImageDirectory(tempDir);
+        server = new ImageServer(directory, 0, 2, Duration.ofMinutes(1));
+
+        HttpResponse<byte[]> response = sendBytes(get("/images/opportunity/2005-01-15/second.jpg"));
+        assertArrayEquals(second, response.body());
+        HttpResponse<byte[]> range = sendBytes(get("/images/opportunity/2005-01-15/first.jpg")
+                .header("Range", "bytes=2990-").build());
+        assertEquals(206, range.statusCode());
+        assertEquals("\"abc\"", range.headers().firstValue("ETag").orElse(null));
+        assertArrayEquals(Arrays.copyOfRange(first, 2990, 3000), range.body());
+
+        assertEquals(404, sendBytes(get("/api/dates/opportunity/2005-01-16").build()).statusCode());
+        Files.write(Files.createDirectories(roverDir.resolve("2005-01-16")).resolve("third.jpg"), first);
+        directory.refresh();
+        assertEquals(200, sendBytes(get("/api/dates/opportunity/2005-01-16").build()).statusCode());
+        assertEquals(3, directory.size());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + server.getPort() + path);
+    }
+
+    private HttpRequest.Builder get(String path) {
+        return HttpRequest.newBuilder(uri(path)).GET();
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    private HttpResponse<byte[]> sendBytes(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return sendBytes(request.build());
+    }
+
+    private HttpResponse<byte[]> sendBytes(HttpRequest request) throws IOException, InterruptedException {
+        return client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
@@ -0,0 +1,76 @@
+package com.nasarover.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the ContentStore class.
+ */
+public class ContentStoreTest {
+
+    private static final byte[] IMAGE = "image bytes".getBytes();
+    private static final String SHA256 = "f2e3b0a7b7ae1b8a8e8f2c1b2e6a1f3c9d5c2f4e8a6b0c3d7e9f1a2b4c6d8e0f";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testHardLinksIdenticalDownloadsToOneObject() throws IOException {
+        ContentStore store = new ContentStore(tempDir.resolve(".objects"), ContentStore.Mode.HARDLINK);
+        Path first = write("2017-02-27/a.jpg");
+        Path second = write("2018-06-02/b.jpg");
+
+        store.add(first, SHA256);
+        store.add(second, SHA256);
+        // Adding a file that is already linked is a no-op
+        store.add(first, SHA256);
+
+        Path object = store.objectPath(SHA256, first);
+        assertEquals(1, countObjects());
+        assertTrue(Files.isSameFile(first, object));
+        assertTrue(Files.isSameFile(second, object));
+        assertFalse(Files.isSymbolicLink(first));
+        assertArrayEquals(IMAGE, Files.readAllBytes(second));
+        assertFalse(Files.exists(first.resolveSibling("a.jpg.link")));
+    }
+
+    @Test
+    public void testPlacesRelativeSymbolicLinks() throws IOException {
+        ContentStore store = new ContentStore(tempDir.resolve(".objects"), ContentStore.Mode.SYMLINK);
+        Path downloaded = write("2017-02-27/a.jpg");
+        Path copy = tempDir.resolve("2016-07-13/a.jpg");
+        Files.createDirectories(copy.getParent());
+
+        assertFalse(store.place(SHA256, copy));
+        store.add(downloaded, SHA256);
+        assertTrue(store.place(SHA256, copy));
+
+        assertTrue(Files.isSymbolicLink(downloaded));
+        assertTrue(Files.isSymbolicLink(copy));
+        assertFalse(Files.readSymbolicLink(copy).isAbsolute());
+        assertArrayEquals(IMAGE, Files.readAllBytes(copy));
+        assertEquals(1, countObjects());
+    }
+
+    private Path write(String name) throws IOException {
+        Path file = tempDir.resolve(name);
+        Files.createDirectories(file.getParent());
+        return Files.write(file, IMAGE);
+    }
+
+    private long countObjects() throws IOException {
+        try (Stream<Path> files = Files.walk(tempDir.resolve(".objects"))) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+}
@@ -2,6 +2,9 @@ package com.nasarover.service;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -11,8 +14,14 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 import com.nasarover.exception.DateParsingException;
+import com.nasarover.model.RoverMission;
 
 /**
  * Unit tests for the DateParser class.
@@ -123,5 +132,125 @@ public class DateParserTest {
         // Verify the error message
         assertTrue(exception.getMessage().contains("Date must be after Curiosity's landing date"));
     }
+    
+    @Test
+    public void testParseDateForRetiredRovers() throws DateParsingException {
+        DateParser parser = new DateParser(Arrays.asList(RoverMission.SPIRIT, RoverMission.OPPORTUNITY));
+        
+        // Before Curiosity landed, but within the Spirit and Opportunity missions
+        assertEquals(LocalDate.of(2005, 1, 15), parser.parseDate("Jan-15-2005"));
+        
+        DateParsingException exception = assertThrows(DateParsingException.class,
+                () -> parser.parseDate("June 2, 2019"));
+        assertEquals("Invalid date: June 2, 2019. None of the selected rovers (Spirit, Opportunity) was active on this date.",
+                exception.getMessage());
+    }
+    
+    @Test
+    public void testParseDateAfterEndOfMission() {
+        DateParsingException exception = assertThrows(DateParsingException.class,
+                () -> dateParser.parseDate("June 2, 2018", Collections.singletonList(RoverMission.SPIRIT)));
+        
+        assertEquals("Invalid date: June 2, 2018. Date must be before Spirit's end of mission (March 22, 2010).",
+                exception.getMessage());
+    }
+    
+    @Test
+    public void testParseRovers() throws DateParsingException {
+        assertEquals(Arrays.asList(RoverMission.PERSEVERANCE, RoverMission.CURIOSITY),
+                dateParser.parseRovers(" Perseverance, curiosity"));
+        
+        DateParsingException exception = assertThrows(DateParsingException.class,
+                () -> dateParser.parseRovers("sojourner"));
+        assertTrue(exception.getMessage().startsWith("Unknown rover: sojourner"));
+    }
+    
+    @Test
+    public void testResolverParsesEachSpellingOnce() throws DateParsingException {
+        DateParser parser = spy(new DateParser());
+        DateParser.Resolver resolver = parser.newResolver();
+        
+        for (String line : Arrays.asList("02/27/17", "June 2, 2018", "Feb-27-2017", "February 27, 2017", "02/27/17")) {
+            resolver.resolve(line);
+        }
+        DateParser.Resolved prefixed = resolver.resolve("spirit, opportunity: Jan-15-2005");
+        for (int i = 0; i < 2; i++) {
+            DateParsingException exception = assertThrows(DateParsingException.class,
+                    () -> resolver.resolve("April 31, 2018"));
+            assertTrue(exception.getMessage().contains("April has only 30 days"));
+        }
+        
+        assertEquals(3, resolver.getUniqueDates());
+        assertEquals(LocalDate.of(2005, 1, 15), prefixed.getDate());
+        assertEquals(Arrays.asList(RoverMission.SPIRIT, RoverMission.OPPORTUNITY), prefixed.getRovers());
+        verify(parser, times(1)).parseDate(eq("02/27/17"), anyCollection());
+        verify(parser, times(1)).parseDate(eq("April 31, 2018"), anyCollection());
+    }
+    
+    @Test
+    public void testExpandDateRange() throws DateParsingException {
+        assertEquals(Arrays.asList("2017-02-01", "2017-02-08", "2017-02-15", "2017-02-22"),
+                dateParser.expand("2017-02-01..2017-02-28 every 7 days").collect(Collectors.toList()));
+        assertEquals(Arrays.asList("spirit: 2005-01-30", "spirit: 2005-01-31", "spirit: 2005-02-01"),
+                dateParser.expand("spirit: Jan-30-2005 .. February 1, 2005").collect(Collectors.toList()));
+        assertEquals(Collections.singletonList("June 2, 2018"),
+                dateParser.expand("June 2, 2018").collect(Collectors.toList()));
+        assertEquals(LocalDate.of(2017, 2, 27), dateParser.parseDate("2017-02-27"));
+    }
+    
+    @Test
+    public void testExpandSolRange() throws DateParsingException {
+        DateParser allRovers = new DateParser(Arrays.asList(RoverMission.values()));
+        assertEquals(Arrays.asList("curiosity: 2012-08-06", "curiosity: 2012-08-08", "curiosity: 2012-08-10"),
+                allRovers.expand("curiosity: sol 0..4 every 2 sols").collect(Collectors.toList()));
+        // Spirit's mission ended during sol 2208, so only Opportunity goes on
+        assertEquals(Arrays.asList("spirit: 2010-03-21", "opportunity: 2010-04-11", "opportunity: 2010-04-12"),
+                allRovers.expand("spirit, opportunity: sol 2208..2209").collect(Collectors.toList()));
+        // Expanded lazily, so an open-ended range is cheap
+        assertEquals(3, allRovers.expand("sol 0..999999999").limit(3).count());
+    }
+    
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "2017-02-28..2017-02-01|Invalid date range: 2017-02-28..2017-02-01. The end date is before the start date.",
+        "2017-02-01..2017-02-28 every 0 days|Invalid step: 2017-02-01..2017-02-28 every 0 days. The step must be at least 1.",
+        "2017-02-01..2017-02-28 every 2 sols|Invalid step: 2017-02-01..2017-02-28 every 2 sols. A day range steps in days.",
+        "sol 20..10|Invalid sol range: sol 20..10. The last sol is before the first sol.",
+        "2017-02-01..|Invalid date range: 2017-02-01... Use start..end, optionally followed by every N days."
+    })
+    public void testExpandRejectsMalformedRanges(String line, String message) {
+        DateParsingException exception = assertThrows(DateParsingException.class, () -> dateParser.expand(line));
+        assertEquals(message, exception.getMessage());
+    }
+    
+    @Test
+    public void testFastPathMatchesFormatters() {
+        String[] months = {"Jan", "Feb", "Apr", "May", "Sep", "February", "April", "May", "June",
+                "September", "june", "JUNE", "Sept", "Mayday"};
+        String[] days = {"0", "1", "01", "9", "28", "29", "30", "31", "32", "001"};
+        String[] years = {"16", "2016", "2017", "0000", "20170", "17x"};
+        for (String day : days) {
+            for (String year : years) {
+                for (String month : new String[] {"0", "2", "02", "4", "12", "13", "012"}) {
+                    assertSameParse(month + "/" + day + "/" + year);
+                }
+                for (String month : months) {
+                    assertSameParse(month + "-" + day + "-" + year);
+                    assertSameParse(month + " " + day + ", " + year);
+                    assertSameParse(month + " " + day + " " + year);
+                    assertSameParse(month + " " + day + "," + year);
+                    assertSameParse(month + "-" + day + ", " + year);
+                }
+            }
+        }
+        for (String input : new String[] {"2017-02-27", "2016-02-29", "2017-02-29", "2017-13-01", "2017-2-27",
+                "0000-01-01", "20170-02-27", "", " 02/27/17", "02/27/17 ", "02-27-17", "2/27", "June",
+                "June 2,", "June 15", "Invalid Date Format", "Not June 2, 2018", "Junes 2, 2018", "+02/27/17"}) {
+            assertSameParse(input);
+        }
+    }
+    
+    private void assertSameParse(String input) {
+        assertEquals(dateParser.parseWithFormatters(input), dateParser.tryParse(input), input);
+    }
 }
-
@@ -0,0 +1,229 @@
+package com.nasarover.service;
+
+import com.nasarover.config.AppConfig;
+import com.nasarover.exception.ApiRequestException;
+import com.nasarover.model.Photo;
+import com.nasarover.model.RoverMission;
+import com.nasarover.model.RoverResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for the DatePipeline class.
+ */
+public class DatePipelineTest {
+    
+    private RoverImageService roverService;
+    private DatePipeline pipeline;
+    
+    @BeforeEach
+    public void setUp() {
+        roverService = spy(new RoverImageService(mock(AppConfig.class)));
+        pipeline = new DatePipeline(new DateParser(), roverService, 3, 2, 1);
+    }
+    
+    @AfterEach
+    public void tearDown() {
+        roverService.close();
+    }
+    
+    @Test
+    public void testRunCountsOutcomesAndKeepsInvalidLines() throws Exception {
+        RoverResponse withPhotos = new RoverResponse();
+        withPhotos.setPhotos(Collections.singletonList(new Photo()));
+        RoverResponse empty = new RoverResponse();
+        empty.setPhotos(Collections.emptyList());
+        
+        doReturn(withPhotos).when(roverService).fetchRoverData(any(RoverMission.class), any(LocalDate.class));
+        doReturn(empty).when(roverService).fetchRoverData(eq(RoverMission.CURIOSITY), eq(LocalDate.of(2016, 7, 13)));
+        doThrow(new ApiRequestException("NASA API request failed with status code: 500"))
+                .when(roverService).fetchRoverData(eq(RoverMission.CURIOSITY), eq(LocalDate.of(2018, 6, 2)));
+        doReturn(true).when(roverService).downloadPhotos(any(RoverMission.class), any(LocalDate.class), anyList());
+        doReturn(false).when(roverService).downloadPhotos(any(RoverMission.class), eq(LocalDate.of(2016, 7, 13)), anyList());
+        
+        List<String> dates = Arrays.asList("02/27/17", "June 2, 2018", "Jul-13-2016", "April 31, 2018", "Mar-5-2022");
+        DatePipeline.Summary summary = pipeline.run(dates.iterator());
+        
+        assertEquals(5, summary.getTotal());
+        assertEquals(2, summary.count(DatePipeline.Outcome.SUCCESS));
+        assertEquals(1, summary.count(DatePipeline.Outcome.INVALID_DATE));
+        assertEquals(2, summary.count(DatePipeline.Outcome.NO_IMAGES));
+        List<DatePipeline.DateResult> details = summary.getDetails();
+        assertEquals(1, details.size());
+        assertEquals(3, details.get(0).getIndex());
+        assertEquals("April 31, 2018", details.get(0).getInput());
+        assertEquals(DatePipeline.Outcome.INVALID_DATE, details.get(0).getOutcome());
+    }
+    
+    @Test
+    public void testRunFansOutToActiveRovers() throws Exception {
+        DatePipeline multiRover = new DatePipeline(new DateParser(Arrays.asList(RoverMission.values())),
+                roverService, 3, 2, 1);
+        RoverResponse withPhotos = new RoverResponse();
+        withPhotos.setPhotos(Collections.singletonList(new Photo()));
+        
+        doReturn(withPhotos).when(roverService).fetchRoverData(any(RoverMission.class), any(LocalDate.class));
+        doReturn(true).when(roverService).downloadPhotos(any(RoverMission.class), any(LocalDate.class), anyList());
+        doReturn(false).when(roverService).downloadPhotos(eq(RoverMission.OPPORTUNITY), any(LocalDate.class), anyList());
+        
+        // Curiosity and Opportunity were both active in 2016; the second line names its rover
+        List<String> dates = Arrays.asList("Jul-13-2016", "spirit: Jan-15-2005", "pathfinder: Jul-13-2016");
+        DatePipeline.Summary summary = multiRover.run(dates.iterator());
+        
+        assertEquals(3, summary.getTotal());
+        assertEquals(2, summary.count(DatePipeline.Outcome.SUCCESS));
+        assertEquals(EnumSet.of(RoverMission.CURIOSITY, RoverMission.OPPORTUNITY, RoverMission.SPIRIT),
+                summary.getRovers());
+        assertEquals(1, summary.count(RoverMission.CURIOSITY, DatePipeline.Outcome.SUCCESS));
+        assertEquals(1, summary.count(RoverMission.SPIRIT, DatePipeline.Outcome.SUCCESS));
+        assertEquals(2, summary.getDetails().get(0).getIndex());
+        assertEquals(1, summary.count(RoverMission.OPPORTUNITY, DatePipeline.Outcome.NO_IMAGES));
+        verify(roverService, never()).fetchRoverData(eq(RoverMission.PERSEVERANCE), any(LocalDate.class));
+    }
+    
+    @Test
+    public void testRunFetchesEachDayOnce() throws Exception {
+        RoverResponse withPhotos = new RoverResponse();
+        withPhotos.setPhotos(Collections.singletonList(new Photo()));
+        
+        doReturn(withPhotos).when(roverService).fetchRoverData(any(RoverMission.class), any(LocalDate.class));
+        doReturn(true).when(roverService).downloadPhotos(any(RoverMission.class), any(LocalDate.class), anyList());
+        doThrow(new IllegalStateException("Disk full")).when(roverService)
+                .downloadPhotos(eq(RoverMission.CURIOSITY), eq(LocalDate.of(2018, 6, 3)), anyList());
+        doReturn(2).when(roverService).takeRetries(RoverMission.CURIOSITY, LocalDate.of(2017, 2, 27));
+        
+        List<String> dates = Arrays.asList("02/27/17", "Feb-27-2017", "June 2, 2018", "February 27, 2017",
+                "June 3, 2018", "Jun-03-2018");
+        DatePipeline.Summary summary = pipeline.run(dates.iterator());
+        
+        assertEquals(6, summary.getTotal());
+        assertEquals(4, summary.count(DatePipeline.Outcome.SUCCESS));
+        assertEquals(2, summary.count(DatePipeline.Outcome.FAILED));
+        assertEquals(3, summary.getUniqueDates());
+        // The retries were made once, for the first line of the day
+        assertEquals(2, summary.getTotalRetries());
+        assertEquals(Arrays.asList("02/27/17", "June 3, 2018", "Jun-03-2018"),
+                summary.getDetails().stream().map(DatePipeline.DateResult::getInput).collect(Collectors.toList()));
+        verify(roverService, times(1)).fetchRoverData(RoverMission.CURIOSITY, LocalDate.of(2017, 2, 27));
+        verify(roverService, times(1)).downloadPhotos(eq(RoverMission.CURIOSITY), eq(LocalDate.of(2017, 2, 27)), anyList());
+    }
+    
+    @Test
+    public void testRunAppliesLineFilters() throws Exception {
+        RoverResponse withPhotos = new RoverResponse();
+        withPhotos.setPhotos(Collections.singletonList(new Photo()));
+        
+        doReturn(withPhotos).when(roverService).fetchPhotos(any(RoverMission.class), any(LocalDate.class),
+                any(PhotoFilter.class));
+        doReturn(true).when(roverService).downloadPhotos(any(RoverMission.class), any(LocalDate.class), anyList());
+        
+        List<String> dates = Arrays.asList("2017-02-27 camera=NAVCAM", "02/27/17", "Feb-27-2017 camera=navcam",
+                "Feb-27-2017 rover=opportunity", "2017-02-27 lens=wide");
+        DatePipeline.Summary summary = pipeline.run(dates.iterator());
+        
+        assertEquals(5, summary.getTotal());
+        assertEquals(3, summary.count(DatePipeline.Outcome.SUCCESS));
+        assertEquals(1, summary.count(DatePipeline.Outcome.NO_IMAGES));
+        assertEquals(4, summary.getDetails().get(0).getIndex());
+        LocalDate date = LocalDate.of(2017, 2, 27);
+        // Lines with the same filter share a job; other filters get their own
+        verify(roverService, times(1)).fetchPhotos(RoverMission.CURIOSITY, date,
+                PhotoFilter.parse("camera=NAVCAM", PhotoFilter.NONE));
+        verify(roverService, times(1)).fetchPhotos(RoverMission.CURIOSITY, date, PhotoFilter.NONE);
+        verify(roverService, never()).fetchPhotos(eq(RoverMission.OPPORTUNITY), any(LocalDate.class),
+                any(PhotoFilter.class));
+    }
+    
+    @Test
+    public void testRunExpandsDateRanges() throws Exception {
+        RoverResponse withPhotos = new RoverResponse();
+        withPhotos.setPhotos(Collections.singletonList(new Photo()));
+        
+        doReturn(withPhotos).when(roverService).fetchRoverData(any(RoverMission.class), any(LocalDate.class));
+        doReturn(true).when(roverService).downloadPhotos(any(RoverMission.class), any(LocalDate.class), anyList());
+        
+        List<String> dates = Arrays.asList("Feb-27-2017..2017-03-01", "2017-03-01..2017-02-01");
+        DatePipeline.Summary summary = pipeline.run(dates.iterator());
+        
+        assertEquals(4, summary.getTotal());
+        assertEquals(3, summary.getUniqueDates());
+        assertEquals("2017-03-01..2017-02-01", summary.getDetails().get(0).getInput());
+        assertEquals(3, summary.getDetails().get(0).getIndex());
+        assertEquals(3, summary.count(DatePipeline.Outcome.SUCCESS));
+        assertEquals(1, summary.count(DatePipeline.Outcome.INVALID_DATE));
+    }
+    
+    @Test
+    public void testRunKeepsNothingOfCompletedRangeDates() throws Exception {
+        RoverResponse withPhotos = new RoverResponse();
+        withPhotos.setPhotos(Collections.singletonList(new Photo()));
+        
+        doReturn(withPhotos).when(roverService).fetchRoverData(any(RoverMission.class), any(LocalDate.class));
+        doReturn(true).when(roverService).downloadPhotos(any(RoverMission.class), any(LocalDate.class), anyList());
+        
+        // Two years, and the same days again through a second range
+        DatePipeline.Summary summary = pipeline.run(Arrays.asList("2015-01-01..2016-12-31",
+                "2016-12-01..2016-12-31").iterator());
+        
+        assertEquals(731 + 31, summary.getTotal());
+        assertEquals(731 + 31, summary.count(DatePipeline.Outcome.SUCCESS));
+        assertEquals(731, summary.getUniqueDates());
+        assertEquals(Collections.emptyList(), summary.getDetails());
+        verify(roverService, times(731)).downloadPhotos(eq(RoverMission.CURIOSITY), any(LocalDate.class), anyList());
+    }
+    
+    @Test
+    public void testRunCompletesDatesReadBeforeReadError() throws Exception {
+        RoverResponse withPhotos = new RoverResponse();
+        withPhotos.setPhotos(Collections.singletonList(new Photo()));
+        
+        doReturn(withPhotos).when(roverService).fetchRoverData(any(RoverMission.class), any(LocalDate.class));
+        doReturn(true).when(roverService).downloadPhotos(any(RoverMission.class), any(LocalDate.class), anyList());
+        
+        Iterator<String> failing = new Iterator<String>() {
+            private boolean read;
+            
+            @Override
+            public boolean hasNext() {
+                if (read) {
+                    throw new UncheckedIOException(new IOException("Error reading dates.txt at line 2: Disk error"));
+                }
+                return true;
+            }
+            
+            @Override
+            public String next() {
+                read = true;
+                return "02/27/17";
+            }
+        };
+        DatePipeline.Summary summary = pipeline.run(failing);
+        
+        assertEquals(1, summary.getTotal());
+        assertEquals(1, summary.count(DatePipeline.Outcome.SUCCESS));
+        assertEquals("Error reading dates.txt at line 2: Disk error", summary.getReadError().getMessage());
+    }
+}
@@ -0,0 +1,88 @@
+package com.nasarover.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the DownloadManifest class.
+ */
+public class DownloadManifestTest {
+    
+    private Path testDir;
+    private Path manifestFile;
+    
+    @BeforeEach
+    public void setUp() throws IOException {
+        testDir = Files.createTempDirectory("nasa_rover_manifest_test");
+        manifestFile = testDir.resolve(".manifest.jsonl");
+    }
+    
+    @AfterEach
+    public void tearDown() throws IOException {
+        Files.walk(testDir)
+            .sorted(Comparator.reverseOrder())
+            .map(Path::toFile)
+            .forEach(File::delete);
+    }
+    
+    @Test
+    public void testEntriesSurviveReload() {
+        try (DownloadManifest manifest = new DownloadManifest(manifestFile)) {
+            manifest.record(new DownloadManifest.Entry(1, "https://example.com/a.jpg", "a.jpg", 10, "aa", "\"e1\"", null));
+            manifest.record(new DownloadManifest.Entry(2, "https://example.com/b.jpg", "b.jpg", 20, "bb", null, null));
+            // A later entry for the same photo replaces the earlier one
+            manifest.record(new DownloadManifest.Entry(1, "https://example.com/a.jpg", "a.jpg", 11, "ab", "\"e2\"", null));
+        }
+        
+        try (DownloadManifest reloaded = new DownloadManifest(manifestFile)) {
+            assertEquals(2, reloaded.size());
+            assertEquals(11, reloaded.findByPhotoId(1).getSize());
+            assertEquals("\"e2\"", reloaded.findByPhotoId(1).getEtag());
+            assertEquals("b.jpg", reloaded.findByUrl("https://example.com/b.jpg").getFile());
+            assertNull(reloaded.findByPhotoId(3));
+        }
+    }
+    
+    @Test
+    public void testTruncatedLineIsSkipped() throws IOException {
+        try (DownloadManifest manifest = new DownloadManifest(manifestFile)) {
+            manifest.record(new DownloadManifest.Entry(1, "https://example.com/a.jpg", "a.jpg", 10, "aa", null, null));
+        }
+        Files.write(manifestFile, "{\"photoId\":2,\"imgSrc\":\"https://exa".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        
+        try (DownloadManifest reloaded = new DownloadManifest(manifestFile)) {
+            assertEquals(1, reloaded.size());
+            assertNull(reloaded.findByPhotoId(2));
+        }
+    }
+    
+    @Test
+    public void testEntryMatchesOnlyExistingFileOfRecordedSize() throws IOException {
+        Path image = testDir.resolve("a.jpg");
+        DownloadManifest.Entry entry = new DownloadManifest.Entry(1, "https://example.com/a.jpg",
+                image.toString(), 3, null, null, null);
+        assertFalse(entry.matches("https://example.com/a.jpg", image));
+        
+        Files.write(image, new byte[] {1, 2, 3});
+        assertTrue(entry.matches("https://example.com/a.jpg", image));
+        assertFalse(entry.matches("https://example.com/other.jpg", image));
+        
+        Files.write(image, new byte[] {1, 2});
+        assertFalse(entry.matches("https://example.com/a.jpg", image));
+    }
+}
@@ -0,0 +1,128 @@
+package com.nasarover.service;
+
+import com.nasarover.model.Camera;
+import com.nasarover.model.Photo;
+import com.nasarover.model.Rover;
+import com.nasarover.model.RoverResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Unit tests for the MetadataCache class.
+ */
+public class MetadataCacheTest {
+    
+    private static final Instant NOW = Instant.parse("2020-01-10T12:00:00Z");
+    
+    private Path testDir;
+    
+    @BeforeEach
+    public void setUp() throws IOException {
+        testDir = Files.createTempDirectory("nasa_rover_cache_test");
+    }
+    
+    @AfterEach
+    public void tearDown() throws IOException {
+        Files.walk(testDir)
+            .sorted(Comparator.reverseOrder())
+            .map(Path::toFile)
+            .forEach(File::delete);
+    }
+    
+    @Test
+    public void testRoundTripSharesCamerasAndRovers() {
+        MetadataCache cache = newCache(Clock.fixed(NOW, ZoneOffset.UTC), 10);
+        LocalDate date = LocalDate.of(2017, 2, 27);
+        cache.put("curiosity", date, 1, createResponse(3));
+        
+        RoverResponse cached = newCache(Clock.fixed(NOW, ZoneOffset.UTC), 10).get("curiosity", date, 1);
+        
+        assertNotNull(cached);
+        assertEquals(3, cached.getPhotos().size());
+        Photo photo = cached.getPhotos().get(2);
+        assertEquals(3, photo.getId());
+        assertEquals("https://example.com/photo3.jpg", photo.getImgSrc());
+        assertEquals("NAVCAM", photo.getCamera().getName());
+        assertEquals("Curiosity", photo.getRover().getName());
+        assertSame(cached.getPhotos().get(0).getRover(), photo.getRover());
+    }
+    
+    @Test
+    public void testRecentDatesExpireSooner() {
+        LocalDate recentDate = LocalDate.of(2020, 1, 9);
+        LocalDate oldDate = LocalDate.of(2017, 2, 27);
+        MetadataCache cache = newCache(Clock.fixed(NOW, ZoneOffset.UTC), 10);
+        cache.put("curiosity", recentDate, 1, createResponse(1));
+        cache.put("curiosity", oldDate, 1, createResponse(1));
+        
+        MetadataCache later = newCache(Clock.fixed(NOW.plus(Duration.ofHours(2)), ZoneOffset.UTC), 10);
+        
+        assertNull(later.get("curiosity", recentDate, 1));
+        assertNotNull(later.get("curiosity", oldDate, 1));
+    }
+    
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        MetadataCache cache = newCache(Clock.fixed(NOW, ZoneOffset.UTC), 2);
+        LocalDate first = LocalDate.of(2017, 2, 25);
+        LocalDate second = LocalDate.of(2017, 2, 26);
+        LocalDate third = LocalDate.of(2017, 2, 27);
+        cache.put("curiosity", first, 1, createResponse(1));
+        cache.put("curiosity", second, 1, createResponse(1));
+        cache.get("curiosity", first, 1);
+        cache.put("curiosity", third, 1, createResponse(1));
+        
+        assertNotNull(cache.get("curiosity", first, 1));
+        assertNull(cache.get("curiosity", second, 1));
+        assertNotNull(cache.get("curiosity", third, 1));
+    }
+    
+    private MetadataCache newCache(Clock clock, int maxEntries) {
+        return new MetadataCache(testDir, Duration.ofHours(1), Duration.ofDays(30), 7, maxEntries, clock);
+    }
+    
+    private RoverResponse createResponse(int photoCount) {
+        Rover rover = new Rover();
+        rover.setId(5);
+        rover.setName("Curiosity");
+        rover.setStatus("active");
+        Camera camera = new Camera();
+        camera.setId(26);
+        camera.setName("NAVCAM");
+        camera.setRoverId(5);
+        
+        List<Photo> photos = new ArrayList<>();
+        for (int i = 1; i <= photoCount; i++) {
+            Photo photo = new Photo();
+            photo.setId(i);
+            photo.setSol(1600);
+            photo.setImgSrc("https://example.com/photo" + i + ".jpg");
+            photo.setEarthDate("2017-02-27");
+            photo.setCamera(camera);
+            photo.setRover(rover);
+            photos.add(photo);
+        }
+        RoverResponse response = new RoverResponse();
+        response.setPhotos(photos);
+        return response;
+    }
+}
@@ -0,0 +1,57 @@
+package com.nasarover.service;
+
+import com.nasarover.model.Camera;
+import com.nasarover.model.Photo;
+import com.nasarover.model.RoverMission;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the PhotoFilter class.
+ */
+public class PhotoFilterTest {
+
+    @Test
+    public void testParsesCriteriaOverDefaults() {
+        PhotoFilter defaults = PhotoFilter.parse("camera=fhaz,RHAZ max=20 rover=curiosity", PhotoFilter.NONE);
+        PhotoFilter filter = PhotoFilter.parse("camera=navcam sol=1000..1100", defaults);
+
+        assertEquals("camera=NAVCAM rover=curiosity sol=1000..1100 max=20", filter.toString());
+        assertEquals("NAVCAM", filter.getApiCamera());
+        assertNull(defaults.getApiCamera(), "Several cameras cannot be passed to the API");
+        assertEquals(20, filter.getMaxPhotos());
+        assertTrue(filter.matches(RoverMission.CURIOSITY, 1000));
+        assertFalse(filter.matches(RoverMission.CURIOSITY, 1101));
+        assertFalse(filter.matches(RoverMission.OPPORTUNITY, 1000));
+        assertTrue(filter.matches(photo("NavCam", 1050)));
+        assertFalse(filter.matches(photo("FHAZ", 1050)));
+        assertFalse(filter.matches(photo(null, 1050)));
+        assertTrue(PhotoFilter.NONE.matches(photo(null, 5)));
+        assertEquals(PhotoFilter.NONE, PhotoFilter.parse(" ", PhotoFilter.NONE));
+        assertThrows(IllegalArgumentException.class, () -> PhotoFilter.parse("lens=wide", PhotoFilter.NONE));
+        assertThrows(IllegalArgumentException.class, () -> PhotoFilter.parse("rover=pathfinder", PhotoFilter.NONE));
+    }
+
+    @Test
+    public void testFindsCriteriaAfterTheDate() {
+        assertEquals(-1, PhotoFilter.indexOfCriteria("spirit, opportunity: Jan-15-2005"));
+        assertEquals(11, PhotoFilter.indexOfCriteria("2015-06-03 camera=NAVCAM max=5"));
+        assertEquals(28, PhotoFilter.indexOfCriteria("curiosity: sol 1000..1010   max=5"));
+    }
+
+    private static Photo photo(String cameraName, long sol) {
+        Photo photo = new Photo();
+        photo.setSol(sol);
+        if (cameraName != null) {
+            Camera camera = new Camera();
+            camera.setName(cameraName);
+            photo.setCamera(camera);
+        }
+        return photo;
+    }
+}
@@ -0,0 +1,132 @@
+package com.nasarover.service;
+
+import com.nasarover.model.Camera;
+import com.nasarover.model.Photo;
+import com.nasarover.model.Rover;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Unit tests for the PhotoIndex class.
+ */
+public class PhotoIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testQueriesPersistedSegmentsByEveryColumn() {
+        try (PhotoIndex index = new PhotoIndex(tempDir)) {
+            index.add(photo(3, 1000, "2015-05-30", "NAVCAM", "Curiosity"));
+            index.add(photo(1, 1004, "2015-06-03", "FHAZ", "Curiosity"));
+            index.flush();
+            index.add(photo(2, 4000, "2015-06-03", "PANCAM", "Opportunity"));
+            // Already in a segment
+            index.add(photo(3, 1000, "2015-05-30", "NAVCAM", "Curiosity"));
+        }
+
+        PhotoIndex index = new PhotoIndex(tempDir);
+        assertEquals(3, index.size());
+        assertEquals(Arrays.asList(1L, 2L, 3L), ids(index.query(new PhotoIndex.Filter())));
+        assertEquals(Arrays.asList(1L, 2L), ids(index.query(new PhotoIndex.Filter()
+                .dates(LocalDate.of(2015, 6, 1), LocalDate.of(2015, 6, 30)))));
+        assertEquals(Arrays.asList(1L, 3L), ids(index.query(new PhotoIndex.Filter().sols(1000, 1100))));
+        assertEquals(Collections.singletonList(3L), ids(index.query(new PhotoIndex.Filter()
+                .cameras(Arrays.asList("navcam", "PANCAM")).rovers(Collections.singletonList("curiosity")))));
+        assertEquals(Collections.emptyList(), ids(index.query(new PhotoIndex.Filter()
+                .cameras(Collections.singletonList("MAHLI")))));
+
+        Photo photo = index.query(new PhotoIndex.Filter().sols(4000, 4000)).get(0);
+        assertEquals("2015-06-03", photo.getEarthDate());
+        assertEquals("PANCAM", photo.getCamera().getName());
+        assertEquals("Opportunity", photo.getRover().getName());
+        assertEquals("http://example.com/2.jpg", photo.getImgSrc());
+    }
+
+    @Test
+    public void testMergesSegmentsAndKeepsRecordsWithoutDates() throws IOException {
+        PhotoIndex index = new PhotoIndex(tempDir);
+        for (int i = 0; i < 12; i++) {
+            index.add(photo(i, i, i == 0 ? null : "2016-01-0" + (1 + i % 9), "NAVCAM", "Curiosity"));
+            index.flush();
+        }
+
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(4, files.count());
+        }
+        PhotoIndex reopened = new PhotoIndex(tempDir);
+        assertEquals(12, reopened.size());
+        assertNull(reopened.query(new PhotoIndex.Filter().sols(0, 0)).get(0).getEarthDate());
+        assertEquals(11, reopened.query(new PhotoIndex.Filter().dates(null, LocalDate.of(2016, 1, 9))).size());
+    }
+
+    @Test
+    public void testMergeRemapsDictionariesAndKeepsIdOrder() throws IOException {
+        String[] cameras = {"NAVCAM", "FHAZ", "PANCAM"};
+        PhotoIndex index = new PhotoIndex(tempDir);
+        // Each segment sees the cameras in a different order, so its codes differ
+        for (int i = 0; i < 9; i++) {
+            index.add(photo(100 - i, 1000 + i, "2016-02-0" + (1 + i), cameras[i % 3],
+                    i % 2 == 0 ? "Curiosity" : "Opportunity"));
+            index.add(photo(i, 2000 + i, "2017-03-0" + (1 + i), cameras[(i + 1) % 3], "Spirit"));
+            index.flush();
+        }
+
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+        PhotoIndex reopened = new PhotoIndex(tempDir);
+        assertEquals(18, reopened.size());
+        List<Photo> all = reopened.query(new PhotoIndex.Filter());
+        assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 92L, 93L, 94L, 95L, 96L, 97L, 98L, 99L, 100L),
+                ids(all));
+        for (Photo photo : all) {
+            assertEquals("http://example.com/" + photo.getId() + ".jpg", photo.getImgSrc());
+        }
+        assertEquals(Arrays.asList(1L, 4L, 7L, 92L, 95L, 98L),
+                ids(reopened.query(new PhotoIndex.Filter().cameras(Collections.singletonList("PANCAM")))));
+        assertEquals(Arrays.asList(93L, 95L, 97L, 99L),
+                ids(reopened.query(new PhotoIndex.Filter().rovers(Collections.singletonList("opportunity")))));
+        assertEquals(Arrays.asList(96L, 97L, 98L), ids(reopened.query(new PhotoIndex.Filter()
+                .dates(LocalDate.of(2016, 2, 3), LocalDate.of(2016, 2, 5)).sols(1000, 1100))));
+        Photo photo = reopened.query(new PhotoIndex.Filter().sols(2003, 2003)).get(0);
+        assertEquals(3L, photo.getId());
+        assertEquals("FHAZ", photo.getCamera().getName());
+        assertEquals("Spirit", photo.getRover().getName());
+        assertEquals("2017-03-04", photo.getEarthDate());
+    }
+
+    private static List<Long> ids(List<Photo> photos) {
+        return photos.stream().map(Photo::getId).collect(Collectors.toList());
+    }
+
+    private static Photo photo(long id, long sol, String earthDate, String cameraName, String roverName) {
+        Camera camera = new Camera();
+        camera.setId(cameraName.hashCode());
+        camera.setName(cameraName);
+        Rover rover = new Rover();
+        rover.setId(roverName.hashCode());
+        rover.setName(roverName);
+        Photo photo = new Photo();
+        photo.setId(id);
+        photo.setSol(sol);
+        photo.setEarthDate(earthDate);
+        photo.setCamera(camera);
+        photo.setRover(rover);
+        photo.setImgSrc("http://example.com/" + id + ".jpg");
+        return photo;
+    }
+}
@@ -0,0 +1,93 @@
+package com.nasarover.service;
+
+import com.nasarover.config.AppConfig;
+import com.nasarover.model.Photo;
+import com.nasarover.model.RoverMission;
+import com.nasarover.model.RoverResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for the PollingDaemon class.
+ */
+public class PollingDaemonTest {
+
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2017-03-01T12:00:00Z"), ZoneOffset.UTC);
+
+    private RoverImageService roverService;
+    private DatePipeline pipeline;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        roverService = spy(new RoverImageService(mock(AppConfig.class)));
+        pipeline = new DatePipeline(new DateParser(), roverService, 2, 2, 1);
+        RoverResponse withPhotos = new RoverResponse();
+        withPhotos.setPhotos(Collections.singletonList(new Photo()));
+        doReturn(withPhotos).when(roverService).fetchRoverData(any(RoverMission.class), any(LocalDate.class));
+        doReturn(true).when(roverService).downloadPhotos(any(RoverMission.class), any(LocalDate.class), anyList());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        roverService.close();
+    }
+
+    @Test
+    public void testPollsTheRecentDates() throws Exception {
+        PollingDaemon daemon = new PollingDaemon(pipeline, roverService,
+                Collections.singletonList(RoverMission.CURIOSITY), Duration.ofHours(1), 2, CLOCK);
+        // Spirit's mission had ended by then
+        PollingDaemon ended = new PollingDaemon(pipeline, roverService,
+                Collections.singletonList(RoverMission.SPIRIT), Duration.ofHours(1), 2, CLOCK);
+
+        DatePipeline.Summary summary = daemon.poll();
+
+        assertEquals(Arrays.asList("2017-02-27", "2017-02-28", "2017-03-01"), daemon.recentDates());
+        assertEquals(Collections.emptyList(), ended.recentDates());
+        assertEquals(3, summary.count(DatePipeline.Outcome.SUCCESS));
+        verify(roverService).flush();
+    }
+
+    @Test
+    public void testStopEndsTheWaitBetweenPolls() throws Exception {
+        PollingDaemon daemon = new PollingDaemon(pipeline, roverService,
+                Collections.singletonList(RoverMission.CURIOSITY), Duration.ofHours(1), 0, CLOCK);
+        CompletableFuture<Void> running = CompletableFuture.runAsync(() -> {
+            try {
+                daemon.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // The first poll starts at once; the next one would be an hour later
+        verify(roverService, timeout(5000)).flush();
+        daemon.stop();
+        running.get(5, TimeUnit.SECONDS);
+
+        assertTrue(daemon.isStopping());
+        verify(roverService, times(1)).fetchRoverData(RoverMission.CURIOSITY, LocalDate.of(2017, 3, 1));
+    }
+}
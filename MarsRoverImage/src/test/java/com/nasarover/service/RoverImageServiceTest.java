@@ -2,10 +2,14 @@ package com.nasarover.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.nasarover.config.AppConfig;
+import com.nasarover.exception.ImageDownloadException;
 import com.nasarover.model.Camera;
 import com.nasarover.model.Photo;
+import com.nasarover.model.RoverMission;
 import com.nasarover.model.RoverResponse;
 import com.nasarover.model.Rover;
+import com.nasarover.util.ArchiveIndex;
+import com.sun.net.httpserver.HttpServer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -15,14 +19,20 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -53,7 +63,7 @@ public class RoverImageServiceTest {
         emptyResponse.setPhotos(new ArrayList<>());
         
         // Configure the mock to return the empty response
-        doReturn(emptyResponse).when(roverImageService).fetchRoverData(any(LocalDate.class));
+        doReturn(emptyResponse).when(roverImageService).fetchRoverData(any(RoverMission.class), any(LocalDate.class));
         
         // Test with a sample date
         LocalDate testDate = LocalDate.of(2017, 2, 27);
@@ -61,7 +71,7 @@ public class RoverImageServiceTest {
         
         // Verify the result
         assertFalse(result, "Should return false when no photos are found");
-        verify(roverImageService).fetchRoverData(testDate);
+        verify(roverImageService).fetchRoverData(RoverMission.CURIOSITY, testDate);
     }
     
     @Test
@@ -74,7 +84,7 @@ public class RoverImageServiceTest {
         RoverResponse mockResponse = createMockResponse();
         
         // Mock the API and download methods
-        doReturn(mockResponse).when(roverImageService).fetchRoverData(any(LocalDate.class));
+        doReturn(mockResponse).when(roverImageService).fetchRoverData(any(RoverMission.class), any(LocalDate.class));
         doNothing().when(roverImageService).downloadImage(any(Photo.class), anyString());
         
         // Test with a sample date
@@ -83,7 +93,7 @@ public class RoverImageServiceTest {
         
         // Verify the result
         assertTrue(result, "Should return true when photos are found and processed");
-        verify(roverImageService).fetchRoverData(testDate);
+        verify(roverImageService).fetchRoverData(RoverMission.CURIOSITY, testDate);
         verify(roverImageService, times(2)).downloadImage(any(Photo.class), anyString());
         
         // Clean up
@@ -93,6 +103,388 @@ public class RoverImageServiceTest {
             .forEach(File::delete);
     }
     
+    @Test
+    public void testDownloadRoverImagesInParallelCountsFailures() throws Exception {
+        Path testDir = Files.createTempDirectory("nasa_rover_test");
+        when(mockConfig.getOutputDirectory()).thenReturn(testDir.toString());
+        when(mockConfig.getDownloadConcurrency()).thenReturn(4);
+        RoverImageService parallelService = spy(new RoverImageService(mockConfig));
+        
+        // Every download of the first photo fails, the second one succeeds
+        RoverResponse mockResponse = createMockResponse();
+        Photo failingPhoto = mockResponse.getPhotos().get(0);
+        doReturn(mockResponse).when(parallelService).fetchRoverData(any(RoverMission.class), any(LocalDate.class));
+        doThrow(new ImageDownloadException("Download failed with status code: 500"))
+                .when(parallelService).downloadImage(eq(failingPhoto), anyString());
+        doNothing().when(parallelService).downloadImage(argThat(photo -> photo != failingPhoto), anyString());
+        
+        boolean result = parallelService.downloadRoverImages(LocalDate.of(2017, 2, 27));
+        parallelService.close();
+        
+        assertTrue(result, "Should return true when at least one photo is downloaded");
+        verify(parallelService, times(2)).downloadImage(any(Photo.class), anyString());
+        
+        // Clean up
+        Files.walk(testDir)
+            .sorted(java.util.Comparator.reverseOrder())
+            .map(Path::toFile)
+            .forEach(File::delete);
+    }
+    
+    @Test
+    public void testStreamingParseDownloadsEachPhoto() throws Exception {
+        Path testDir = Files.createTempDirectory("nasa_rover_test");
+        String body = "{\"meta\":{\"count\":[1,2]},\"photos\":["
+                + "{\"id\":1,\"sol\":1600,\"img_src\":\"https://example.com/photo1.jpg\",\"extra\":{\"a\":[1]}},"
+                + "{\"id\":2,\"sol\":1600,\"img_src\":\"https://example.com/photo2.jpg\"},"
+                + "{\"id\":3,\"sol\":1600,\"img_src\":\"https://example.com/photo3.jpg\"}"
+                + "],\"next\":null}";
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/mars-photos/api/v1/rovers/curiosity/photos", exchange -> {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        
+        when(mockConfig.getOutputDirectory()).thenReturn(testDir.toString());
+        when(mockConfig.getApiBaseUrl()).thenReturn("http://127.0.0.1:" + server.getAddress().getPort());
+        when(mockConfig.getApiKey()).thenReturn("DEMO_KEY");
+        when(mockConfig.isApiStreamingParse()).thenReturn(true);
+        RoverImageService streamingService = spy(new RoverImageService(mockConfig));
+        doNothing().when(streamingService).downloadImage(any(Photo.class), anyString());
+        
+        try {
+            boolean result = streamingService.downloadRoverImages(LocalDate.of(2017, 2, 27));
+            
+            assertTrue(result, "Should return true when streamed photos are downloaded");
+            verify(streamingService, never()).fetchRoverData(any(RoverMission.class), any(LocalDate.class));
+            verify(streamingService, times(3)).downloadImage(any(Photo.class), anyString());
+            verify(streamingService).downloadImage(argThat(photo -> photo.getId() == 3
+                    && "https://example.com/photo3.jpg".equals(photo.getImgSrc())), anyString());
+        } finally {
+            streamingService.close();
+            server.stop(0);
+            Files.walk(testDir)
+                .sorted(java.util.Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+        }
+    }
+    
+    @Test
+    public void testPaginatedFetchMergesPagesInOrder() throws Exception {
+        HttpServer server = startPagedServer(2, 2, 1);
+        when(mockConfig.getApiBaseUrl()).thenReturn("http://127.0.0.1:" + server.getAddress().getPort());
+        when(mockConfig.getApiKey()).thenReturn("DEMO_KEY");
+        when(mockConfig.isApiPaginationEnabled()).thenReturn(true);
+        when(mockConfig.getApiPagePrefetch()).thenReturn(3);
+        RoverImageService pagedService = new RoverImageService(mockConfig);
+        
+        try {
+            // Without a page size, only the empty fourth page ends the list
+            List<Photo> photos = pagedService.fetchRoverData(RoverMission.CURIOSITY, LocalDate.of(2017, 2, 27)).getPhotos();
+            
+            assertEquals(5, photos.size());
+            for (int i = 0; i < photos.size(); i++) {
+                assertEquals(i + 1, photos.get(i).getId(), "Photos should keep the page order");
+            }
+        } finally {
+            pagedService.close();
+            server.stop(0);
+        }
+    }
+    
+    @Test
+    public void testFilterPassesSingleCameraToApiAndCapsPhotos() throws Exception {
+        List<String> queries = new ArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/mars-photos/api/v1/rovers/curiosity/photos", exchange -> {
+            queries.add(exchange.getRequestURI().getQuery());
+            byte[] bytes = ("{\"photos\":["
+                    + "{\"id\":1,\"sol\":1000,\"camera\":{\"id\":1,\"name\":\"NAVCAM\"}},"
+                    + "{\"id\":2,\"sol\":1000,\"camera\":{\"id\":2,\"name\":\"MAST\"}},"
+                    + "{\"id\":3,\"sol\":1000,\"camera\":{\"id\":3,\"name\":\"FHAZ\"}},"
+                    + "{\"id\":4,\"sol\":1000,\"camera\":{\"id\":1,\"name\":\"NAVCAM\"}}]}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        when(mockConfig.getApiBaseUrl()).thenReturn("http://127.0.0.1:" + server.getAddress().getPort());
+        when(mockConfig.getApiKey()).thenReturn("DEMO_KEY");
+        RoverImageService filteredService = new RoverImageService(mockConfig);
+        LocalDate date = LocalDate.of(2015, 6, 3);
+        
+        try {
+            filteredService.fetchPhotos(RoverMission.CURIOSITY, date,
+                    PhotoFilter.parse("camera=NAVCAM", PhotoFilter.NONE));
+            assertTrue(queries.get(0).endsWith("&camera=navcam"), "A single camera should be requested from the API");
+            
+            List<Photo> photos = filteredService.fetchPhotos(RoverMission.CURIOSITY, date,
+                    PhotoFilter.parse("camera=NAVCAM,FHAZ max=2", PhotoFilter.NONE)).getPhotos();
+            assertFalse(queries.get(1).contains("camera="), "Several cameras should be filtered locally");
+            assertEquals(2, photos.size());
+            assertEquals(1, photos.get(0).getId());
+            assertEquals(3, photos.get(1).getId());
+        } finally {
+            filteredService.close();
+            server.stop(0);
+        }
+    }
+    
+    @Test
+    public void testPhotosExcludedByFilterAreIndexed() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/mars-photos/api/v1/rovers/curiosity/photos", exchange -> {
+            String date = exchange.getRequestURI().getQuery().contains("2015-06-03") ? "2015-06-03" : "2015-06-04";
+            int firstId = date.equals("2015-06-03") ? 1 : 11;
+            byte[] bytes = ("{\"photos\":["
+                    + "{\"id\":" + firstId + ",\"sol\":1000,\"earth_date\":\"" + date + "\",\"camera\":{\"id\":1,\"name\":\"NAVCAM\"}},"
+                    + "{\"id\":" + (firstId + 1) + ",\"sol\":1000,\"earth_date\":\"" + date + "\",\"camera\":{\"id\":2,\"name\":\"MAST\"}},"
+                    + "{\"id\":" + (firstId + 2) + ",\"sol\":1000,\"earth_date\":\"" + date + "\",\"camera\":{\"id\":3,\"name\":\"FHAZ\"}}]}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        Path outputDir = Files.createTempDirectory("nasa_rover_test");
+        when(mockConfig.getApiBaseUrl()).thenReturn("http://127.0.0.1:" + server.getAddress().getPort());
+        when(mockConfig.getApiKey()).thenReturn("DEMO_KEY");
+        when(mockConfig.getOutputDirectory()).thenReturn(outputDir.toString());
+        when(mockConfig.isPhotoIndexEnabled()).thenReturn(true);
+        when(mockConfig.getPhotoIndexDirectory()).thenReturn(".photo-index");
+        RoverImageService indexingService = new RoverImageService(mockConfig);
+        PhotoFilter filter = PhotoFilter.parse("camera=NAVCAM,FHAZ max=1", PhotoFilter.NONE);
+        
+        try {
+            List<Photo> photos = indexingService.fetchPhotos(RoverMission.CURIOSITY, LocalDate.of(2015, 6, 3), filter)
+                    .getPhotos();
+            assertEquals(1, photos.size());
+            List<Photo> streamed = new ArrayList<>();
+            indexingService.streamRoverPhotos(RoverMission.CURIOSITY, LocalDate.of(2015, 6, 4), filter, streamed::add);
+            assertEquals(1, streamed.size());
+        } finally {
+            indexingService.close();
+            server.stop(0);
+        }
+        
+        PhotoIndex index = new PhotoIndex(outputDir.resolve(".photo-index"));
+        assertEquals(6, index.size());
+        assertEquals(2, index.query(new PhotoIndex.Filter().cameras(List.of("MAST"))).size());
+    }
+    
+    @Test
+    public void testPaginatedStreamingDownloadsAllPages() throws Exception {
+        Path testDir = Files.createTempDirectory("nasa_rover_test");
+        HttpServer server = startPagedServer(2, 2, 1);
+        when(mockConfig.getOutputDirectory()).thenReturn(testDir.toString());
+        when(mockConfig.getApiBaseUrl()).thenReturn("http://127.0.0.1:" + server.getAddress().getPort());
+        when(mockConfig.getApiKey()).thenReturn("DEMO_KEY");
+        when(mockConfig.isApiStreamingParse()).thenReturn(true);
+        when(mockConfig.isApiPaginationEnabled()).thenReturn(true);
+        when(mockConfig.getApiPagePrefetch()).thenReturn(2);
+        when(mockConfig.getApiPageSize()).thenReturn(2);
+        RoverImageService pagedService = spy(new RoverImageService(mockConfig));
+        doNothing().when(pagedService).downloadImage(any(Photo.class), anyString());
+        
+        try {
+            boolean result = pagedService.downloadRoverImages(LocalDate.of(2017, 2, 27));
+            
+            assertTrue(result, "Should return true when paged photos are downloaded");
+            verify(pagedService, times(5)).downloadImage(any(Photo.class), anyString());
+            verify(pagedService).downloadImage(argThat(photo -> photo.getId() == 5), anyString());
+        } finally {
+            pagedService.close();
+            server.stop(0);
+            Files.walk(testDir)
+                .sorted(java.util.Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+        }
+    }
+    
+    @Test
+    public void testRateLimitedRequestIsRepeated() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/mars-photos/api/v1/rovers/curiosity/photos", exchange -> {
+            // 100 requests per second, the first one is rejected
+            boolean limited = requests.incrementAndGet() == 1;
+            exchange.getResponseHeaders().add("X-RateLimit-Limit", "100");
+            exchange.getResponseHeaders().add("X-RateLimit-Remaining", limited ? "0" : "99");
+            byte[] bytes = (limited ? "{\"error\":\"OVER_RATE_LIMIT\"}"
+                    : "{\"photos\":[{\"id\":1,\"img_src\":\"https://example.com/photo1.jpg\"}]}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(limited ? 429 : 200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        
+        when(mockConfig.getApiBaseUrl()).thenReturn("http://127.0.0.1:" + server.getAddress().getPort());
+        when(mockConfig.getApiKey()).thenReturn("DEMO_KEY");
+        when(mockConfig.isApiRateLimitEnabled()).thenReturn(true);
+        when(mockConfig.getApiRateLimit()).thenReturn(1000);
+        when(mockConfig.getApiRateLimitWindowSeconds()).thenReturn(1);
+        when(mockConfig.getApiRateLimitMaxWaitSeconds()).thenReturn(10);
+        RoverImageService limitedService = new RoverImageService(mockConfig);
+        
+        try {
+            List<Photo> photos = limitedService.fetchRoverData(RoverMission.CURIOSITY, LocalDate.of(2017, 2, 27))
+                    .getPhotos();
+            
+            assertEquals(1, photos.size(), "Should return the photos of the repeated request");
+            assertEquals(2, requests.get());
+        } finally {
+            limitedService.close();
+            server.stop(0);
+        }
+    }
+    
+    @Test
+    public void testTransientDownloadFailureIsRetried() throws Exception {
+        Path testDir = Files.createTempDirectory("nasa_rover_test");
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/photo1.jpg", exchange -> {
+            // The first request hits a temporarily unavailable server
+            if (requests.incrementAndGet() == 1) {
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+            byte[] bytes = "image".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        
+        when(mockConfig.getOutputDirectory()).thenReturn(testDir.toString());
+        when(mockConfig.getRetryMaxAttempts()).thenReturn(3);
+        when(mockConfig.getRetryBaseDelay()).thenReturn(1);
+        when(mockConfig.getRetryMaxDelay()).thenReturn(5);
+        when(mockConfig.getRetryBudgetMin()).thenReturn(5);
+        RoverImageService retryingService = spy(new RoverImageService(mockConfig));
+        RoverResponse response = createMockResponse();
+        response.setPhotos(response.getPhotos().subList(0, 1));
+        response.getPhotos().get(0).setImgSrc("http://127.0.0.1:" + server.getAddress().getPort() + "/photo1.jpg");
+        doReturn(response).when(retryingService).fetchRoverData(any(RoverMission.class), any(LocalDate.class));
+        LocalDate date = LocalDate.of(2017, 2, 27);
+        
+        try {
+            assertTrue(retryingService.downloadRoverImages(date), "Should succeed after a retry");
+            
+            assertEquals(2, requests.get());
+            assertEquals(1, retryingService.takeRetries(RoverMission.CURIOSITY, date));
+            assertEquals(0, retryingService.takeRetries(RoverMission.CURIOSITY, date), "Retries are reported once");
+            assertTrue(Files.exists(testDir.resolve("curiosity").resolve("2017-02-27").resolve("photo1.jpg")));
+        } finally {
+            retryingService.close();
+            server.stop(0);
+            Files.walk(testDir)
+                .sorted(java.util.Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+        }
+    }
+    
+    @Test
+    public void testArchiveDownloadsSharedUrlOnce() throws Exception {
+        Path testDir = Files.createTempDirectory("nasa_rover_test");
+        byte[] bytes = "shared image".getBytes(StandardCharsets.UTF_8);
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/shared.jpg", exchange -> {
+            requests.incrementAndGet();
+            try {
+                // Slow enough for both photos to be in flight at once
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.setExecutor(java.util.concurrent.Executors.newFixedThreadPool(4));
+        server.start();
+        
+        when(mockConfig.getOutputDirectory()).thenReturn(testDir.toString());
+        when(mockConfig.getOutputFormat()).thenReturn("tar");
+        when(mockConfig.getDownloadConcurrency()).thenReturn(4);
+        RoverImageService archivingService = spy(new RoverImageService(mockConfig));
+        RoverResponse response = createMockResponse();
+        for (Photo photo : response.getPhotos()) {
+            photo.setImgSrc("http://127.0.0.1:" + server.getAddress().getPort() + "/shared.jpg");
+        }
+        doReturn(response).when(archivingService).fetchRoverData(any(RoverMission.class), any(LocalDate.class));
+        
+        try {
+            assertTrue(archivingService.downloadRoverImages(LocalDate.of(2017, 2, 27)));
+            
+            assertEquals(1, requests.get(), "Photos sharing a URL should share one transfer");
+            Path archive = testDir.resolve("curiosity").resolve("2017-02-27.tar");
+            ArchiveIndex index = ArchiveIndex.read(archive);
+            assertEquals(1, index.getEntries().size());
+            ArchiveIndex.Entry entry = index.get("shared.jpg");
+            byte[] archived = new byte[(int) entry.getSize()];
+            try (java.io.RandomAccessFile file = new java.io.RandomAccessFile(archive.toFile(), "r")) {
+                file.seek(entry.getDataOffset());
+                file.readFully(archived);
+            }
+            assertArrayEquals(bytes, archived);
+        } finally {
+            archivingService.close();
+            server.stop(0);
+            Files.walk(testDir)
+                .sorted(java.util.Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+        }
+    }
+    
+    /**
+     * Starts a photos endpoint that serves pages with the given numbers of photos, numbered
+     * consecutively, and empty pages after them.
+     */
+    private HttpServer startPagedServer(int... pageSizes) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/mars-photos/api/v1/rovers/curiosity/photos", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            int page = Integer.parseInt(query.substring(query.indexOf("page=") + 5));
+            StringBuilder body = new StringBuilder("{\"photos\":[");
+            int firstId = 1;
+            for (int i = 0; i < page - 1 && i < pageSizes.length; i++) {
+                firstId += pageSizes[i];
+            }
+            int size = page <= pageSizes.length ? pageSizes[page - 1] : 0;
+            for (int i = 0; i < size; i++) {
+                int id = firstId + i;
+                body.append(i > 0 ? "," : "")
+                    .append("{\"id\":").append(id)
+                    .append(",\"img_src\":\"https://example.com/photo").append(id).append(".jpg\"}");
+            }
+            byte[] bytes = body.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        return server;
+    }
+    
     /**
      * Creates a mock RoverResponse with sample photos.
      */
@@ -0,0 +1,88 @@
+package com.nasarover.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the ArchiveWriter class.
+ */
+public class ArchiveWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testZipIsAppendedAcrossRunsAndReadableByZipFile() throws IOException {
+        Path archive = tempDir.resolve("2017-02-27.zip");
+        byte[] first = image(100_000, 1);
+        byte[] second = image(70_000, 2);
+
+        try (ArchiveWriter writer = new ArchiveWriter(archive, ArchiveWriter.Format.ZIP)) {
+            writer.append("first.jpg", file("first.jpg", first), null);
+        }
+        try (ArchiveWriter writer = new ArchiveWriter(archive, ArchiveWriter.Format.ZIP)) {
+            assertTrue(writer.contains("first.jpg"));
+            writer.append("second.jpg", file("second.jpg", second), "abc");
+            // An entry of the same name is not written twice
+            writer.append("second.jpg", file("second.jpg", first), null);
+        }
+
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            assertEquals(2, zip.size());
+            ZipEntry entry = zip.getEntry("second.jpg");
+            assertEquals(ZipEntry.STORED, entry.getMethod());
+            assertArrayEquals(first, zip.getInputStream(zip.getEntry("first.jpg")).readAllBytes());
+            assertArrayEquals(second, zip.getInputStream(entry).readAllBytes());
+        }
+        ArchiveIndex index = ArchiveIndex.read(archive);
+        assertEquals(2, index.getEntries().size());
+        assertEquals("abc", index.get("second.jpg").getSha256());
+    }
+
+    @Test
+    public void testTarEntriesAreIndexedForRandomAccess() throws IOException {
+        Path archive = tempDir.resolve("2018-06-02.tar");
+        byte[] first = image(1000, 3);
+        byte[] second = image(513, 4);
+
+        try (ArchiveWriter writer = new ArchiveWriter(archive, ArchiveWriter.Format.TAR)) {
+            writer.append("first.jpg", file("first.jpg", first), null);
+            writer.append("second.jpg", file("second.jpg", second), null);
+        }
+
+        // Headers and data are padded to 512 byte blocks, followed by two zero blocks
+        assertEquals(512 + 1024 + 512 + 1024 + 1024, Files.size(archive));
+        byte[] bytes = Files.readAllBytes(archive);
+        assertEquals("ustar", new String(bytes, 257, 5, StandardCharsets.US_ASCII));
+        assertEquals("00000001750", new String(bytes, 124, 11, StandardCharsets.US_ASCII));
+        ArchiveIndex index = ArchiveIndex.read(archive);
+        ArchiveIndex.Entry entry = index.get("second.jpg");
+        assertEquals(512 + 1024 + 512, entry.getDataOffset());
+        try (InputStream in = ArchiveIndex.openEntry(archive, entry)) {
+            assertArrayEquals(second, in.readAllBytes());
+        }
+    }
+
+    private Path file(String name, byte[] content) throws IOException {
+        return Files.write(tempDir.resolve(name), content);
+    }
+
+    private static byte[] image(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
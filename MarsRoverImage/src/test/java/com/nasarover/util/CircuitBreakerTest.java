@@ -0,0 +1,49 @@
+package com.nasarover.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for the CircuitBreaker class.
+ */
+public class CircuitBreakerTest {
+    
+    @Test
+    public void testOpensAfterConsecutiveFailures() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("images.example.com", 2, Duration.ofMinutes(1));
+        
+        breaker.acquire();
+        breaker.recordFailure();
+        breaker.acquire();
+        breaker.recordSuccess();
+        breaker.acquire();
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(), "A success resets the failure count");
+        
+        breaker.acquire();
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertThrows(CircuitBreaker.OpenException.class, breaker::acquire);
+    }
+    
+    @Test
+    public void testTrialRequestAfterOpenPeriod() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("images.example.com", 1, Duration.ofMillis(20));
+        breaker.acquire();
+        breaker.recordFailure();
+        Thread.sleep(30);
+        
+        // Only one trial request is let through
+        breaker.acquire();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertThrows(CircuitBreaker.OpenException.class, breaker::acquire);
+        
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.acquire();
+    }
+}
@@ -0,0 +1,204 @@
+package com.nasarover.util;
+
+import com.nasarover.config.AppConfig;
+import com.nasarover.exception.ImageDownloadException;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the HttpUtil class, run against a local HTTP server.
+ */
+public class HttpUtilTest {
+    
+    private static final String ETAG = "\"v1\"";
+    
+    private HttpServer server;
+    private String baseUrl;
+    private Path testDir;
+    private byte[] imageData;
+    private Set<InetSocketAddress> clientAddresses;
+    private List<String> rangeRequests;
+    
+    @BeforeEach
+    public void setUp() throws IOException {
+        imageData = new byte[300_000];
+        new Random(42).nextBytes(imageData);
+        clientAddresses = ConcurrentHashMap.newKeySet();
+        rangeRequests = new CopyOnWriteArrayList<>();
+        
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/image.jpg", exchange -> {
+            clientAddresses.add(exchange.getRemoteAddress());
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            exchange.getResponseHeaders().add("ETag", ETAG);
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            int start = 0;
+            if (range != null && ETAG.equals(ifRange)) {
+                rangeRequests.add(range);
+                start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                exchange.getResponseHeaders().add("Content-Range",
+                        "bytes " + start + "-" + (imageData.length - 1) + "/" + imageData.length);
+                exchange.sendResponseHeaders(206, imageData.length - start);
+            } else {
+                exchange.sendResponseHeaders(200, imageData.length);
+            }
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(imageData, start, imageData.length - start);
+            }
+        });
+        server.createContext("/redirect", exchange -> {
+            exchange.getResponseHeaders().add("Location", "/image.jpg");
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+        });
+        server.createContext("/loop", exchange -> {
+            exchange.getResponseHeaders().add("Location", "/loop");
+            exchange.sendResponseHeaders(301, -1);
+            exchange.close();
+        });
+        server.createContext("/missing.jpg", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        testDir = Files.createTempDirectory("nasa_rover_http_test");
+    }
+    
+    @AfterEach
+    public void tearDown() throws IOException {
+        server.stop(0);
+        Files.walk(testDir)
+            .sorted(Comparator.reverseOrder())
+            .map(Path::toFile)
+            .forEach(File::delete);
+    }
+    
+    @Test
+    public void testDownloadToFileFollowsRelativeRedirect() throws Exception {
+        Path target = testDir.resolve("image.jpg");
+        
+        long size = HttpUtil.downloadToFile(baseUrl + "/redirect", target).getSize();
+        
+        assertEquals(imageData.length, size);
+        assertArrayEquals(imageData, Files.readAllBytes(target));
+        assertEquals(1, testDir.toFile().list().length, "No temporary files should be left behind");
+    }
+    
+    @Test
+    public void testDownloadToFileFailureLeavesNoFile() {
+        Path target = testDir.resolve("missing.jpg");
+        
+        ImageDownloadException exception = assertThrows(ImageDownloadException.class, () -> {
+            HttpUtil.downloadToFile(baseUrl + "/missing.jpg", target);
+        });
+        
+        assertEquals("Download failed with status code: 404", exception.getMessage());
+        assertFalse(Files.exists(target));
+        assertEquals(0, testDir.toFile().list().length);
+    }
+    
+    @Test
+    public void testDownloadFileReturnsBytes() throws Exception {
+        assertArrayEquals(imageData, HttpUtil.downloadFile(baseUrl + "/image.jpg"));
+    }
+    
+    @Test
+    public void testTooManyRedirects() {
+        ImageDownloadException exception = assertThrows(ImageDownloadException.class, () -> {
+            HttpUtil.downloadFile(baseUrl + "/loop");
+        });
+        
+        assertEquals("Too many redirects", exception.getMessage());
+    }
+    
+    @Test
+    public void testDownloadsReuseConnection() throws Exception {
+        try (HttpTransport transport = new HttpTransport(new AppConfig())) {
+            for (int i = 0; i < 3; i++) {
+                HttpUtil.downloadToFile(transport, baseUrl + "/image.jpg", testDir.resolve("image" + i + ".jpg"));
+            }
+        }
+        
+        assertEquals(1, clientAddresses.size(), "Sequential downloads should share one kept-alive connection");
+    }
+    
+    @Test
+    public void testDownloadToFileResumesPartialDownload() throws Exception {
+        Path target = testDir.resolve("image.jpg");
+        writePartialDownload(target, 100_000, ETAG);
+        
+        long size = HttpUtil.downloadToFile(baseUrl + "/image.jpg", target).getSize();
+        
+        assertEquals(imageData.length, size);
+        assertEquals(Arrays.asList("bytes=100000-"), rangeRequests);
+        assertArrayEquals(imageData, Files.readAllBytes(target));
+        assertEquals(1, testDir.toFile().list().length, "Part and metadata files should be removed");
+    }
+    
+    @Test
+    public void testDownloadToFileRestartsWhenRemoteFileChanged() throws Exception {
+        Path target = testDir.resolve("image.jpg");
+        writePartialDownload(target, 100_000, "\"v0\"");
+        
+        long size = HttpUtil.downloadToFile(baseUrl + "/image.jpg", target).getSize();
+        
+        assertEquals(imageData.length, size);
+        assertTrue(rangeRequests.isEmpty(), "A stale validator should get the full body");
+        assertArrayEquals(imageData, Files.readAllBytes(target));
+    }
+    
+    /**
+     * Simulates an interrupted earlier download by writing the start of the image and its metadata.
+     */
+    private void writePartialDownload(Path target, int length, String etag) throws IOException {
+        Files.write(testDir.resolve("image.jpg.part"), Arrays.copyOf(imageData, length));
+        Files.write(testDir.resolve("image.jpg.part.meta"), Arrays.asList(
+                "url=" + baseUrl + "/image.jpg",
+                "length=" + imageData.length,
+                "etag=" + etag));
+    }
+    
+    @Test
+    public void testConditionalDownloadOfUnchangedFile() throws Exception {
+        Path target = testDir.resolve("image.jpg");
+        Files.write(target, imageData);
+        
+        try (HttpTransport transport = new HttpTransport(new AppConfig())) {
+            DownloadResult unchanged = HttpUtil.downloadToFile(transport, baseUrl + "/image.jpg", target, ETAG, null);
+            DownloadResult changed = HttpUtil.downloadToFile(transport, baseUrl + "/image.jpg", target, "\"v0\"", null);
+            
+            assertTrue(unchanged.isNotModified());
+            assertFalse(changed.isNotModified());
+            assertEquals(imageData.length, changed.getSize());
+            assertEquals(ETAG, changed.getEtag());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.nasarover.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the LineReader class.
+ */
+public class LineReaderTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    @Test
+    public void testReadsTrimmedNonBlankLines() throws IOException {
+        Path file = tempDir.resolve("dates.txt");
+        String longLine = "x".repeat(100);
+        Files.write(file, ("\uFEFF02/27/17\r\n\n  June 2, 2018  \n" + longLine + "\nJul-13-2016").getBytes(StandardCharsets.UTF_8));
+        
+        List<String> lines = new ArrayList<>();
+        // A buffer smaller than a line makes lines span several reads
+        try (LineReader reader = new LineReader(file, 7)) {
+            reader.forEachRemaining(lines::add);
+            assertEquals(5, reader.getLineNumber());
+        }
+        
+        assertEquals(Arrays.asList("02/27/17", "June 2, 2018", longLine, "Jul-13-2016"), lines);
+    }
+    
+    @Test
+    public void testReportsLineOfInvalidUtf8() throws IOException {
+        Path file = tempDir.resolve("dates.txt");
+        byte[] bytes = "02/27/17\nJune 2, 2018\nJul-13-2016 \n".getBytes(StandardCharsets.UTF_8);
+        bytes[bytes.length - 2] = (byte) 0xC3;
+        Files.write(file, bytes);
+        
+        try (LineReader reader = new LineReader(file, 4)) {
+            assertEquals("02/27/17", reader.next());
+            assertEquals("June 2, 2018", reader.next());
+            UncheckedIOException exception = assertThrows(UncheckedIOException.class, reader::hasNext);
+            assertTrue(exception.getCause().getMessage().endsWith("at line 3: not valid UTF-8"),
+                    exception.getCause().getMessage());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.nasarover.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the RateLimiter class.
+ */
+public class RateLimiterTest {
+    
+    @Test
+    public void testRemainingHeaderCapsTokens() {
+        RateLimiter limiter = new RateLimiter(1000, Duration.ofHours(1));
+        
+        limiter.update(headers("X-RateLimit-Limit", "40", "X-RateLimit-Remaining", "3"));
+        
+        assertEquals(3, limiter.available(), 0.01);
+    }
+    
+    @Test
+    public void testAcquireWaitsForRefill() throws InterruptedException {
+        // 10 requests per second: one token every 100 ms
+        RateLimiter limiter = new RateLimiter(10, Duration.ofSeconds(1));
+        limiter.update(headers("X-RateLimit-Remaining", "0"));
+        
+        long start = System.nanoTime();
+        limiter.acquire();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        
+        assertTrue(elapsedMillis >= 80, "Should wait for the next token, waited " + elapsedMillis + " ms");
+    }
+    
+    @Test
+    public void testThrottledBlocksCallers() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(1000, Duration.ofSeconds(1));
+        
+        // Without Retry-After, callers wait for the next token of the reported limit
+        Duration pause = limiter.throttled(headers("X-RateLimit-Limit", "20", "X-RateLimit-Remaining", "0"));
+        long start = System.nanoTime();
+        limiter.acquire();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        
+        assertEquals(50, pause.toMillis(), 1);
+        assertTrue(elapsedMillis >= 40, "Should wait after a rate limit response, waited " + elapsedMillis + " ms");
+    }
+    
+    private static HttpHeaders headers(String... namesAndValues) {
+        Map<String, List<String>> map = new HashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            map.put(namesAndValues[i], List.of(namesAndValues[i + 1]));
+        }
+        return HttpHeaders.of(map, (name, value) -> true);
+    }
+}
@@ -0,0 +1,95 @@
+package com.nasarover.util;
+
+import com.nasarover.exception.ApiRequestException;
+import com.nasarover.exception.ImageDownloadException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.AccessDeniedException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the RetryPolicy class.
+ */
+public class RetryPolicyTest {
+    
+    @Test
+    public void testClassifiesFailures() {
+        assertTrue(RetryPolicy.isRetryable(new ImageDownloadException("Download failed with status code: 503", 503)));
+        assertTrue(RetryPolicy.isRetryable(new ApiRequestException("NASA API request failed with status code: 429", 429)));
+        assertTrue(RetryPolicy.isRetryable(new ImageDownloadException("Download failed: timed out",
+                new HttpTimeoutException("Read timed out"))));
+        
+        assertFalse(RetryPolicy.isRetryable(new ImageDownloadException("Download failed with status code: 404", 404)));
+        assertFalse(RetryPolicy.isRetryable(new ImageDownloadException("Too many redirects",
+                new ProtocolException("Too many redirects"))));
+        assertFalse(RetryPolicy.isRetryable(new ImageDownloadException("Download failed: denied",
+                new AccessDeniedException("/images/photo.jpg"))));
+        assertFalse(RetryPolicy.isRetryable(new IllegalStateException("bug")));
+    }
+    
+    @Test
+    public void testRetriesUntilSuccess() throws Exception {
+        RetryPolicy policy = new RetryPolicy(3, Duration.ofMillis(1), Duration.ofMillis(5), 0, 10);
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicInteger retries = new AtomicInteger();
+        
+        String result = policy.call(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IOException("Connection reset");
+            }
+            return "done";
+        }, (attempt, failure, delay) -> retries.incrementAndGet());
+        
+        assertEquals("done", result);
+        assertEquals(3, attempts.get());
+        assertEquals(2, retries.get());
+    }
+    
+    @Test
+    public void testFatalFailureIsNotRetried() {
+        RetryPolicy policy = new RetryPolicy(3, Duration.ofMillis(1), Duration.ofMillis(5), 0, 10);
+        AtomicInteger attempts = new AtomicInteger();
+        
+        assertThrows(ImageDownloadException.class, () -> policy.call(() -> {
+            attempts.incrementAndGet();
+            throw new ImageDownloadException("Download failed with status code: 404", 404);
+        }, (attempt, failure, delay) -> { }));
+        assertEquals(1, attempts.get());
+    }
+    
+    @Test
+    public void testRetryBudgetLimitsRetries() {
+        // One retry for the whole run
+        RetryPolicy policy = new RetryPolicy(5, Duration.ofMillis(1), Duration.ofMillis(5), 0, 1);
+        AtomicInteger attempts = new AtomicInteger();
+        
+        for (int i = 0; i < 2; i++) {
+            assertThrows(IOException.class, () -> policy.call(() -> {
+                attempts.incrementAndGet();
+                throw new IOException("Connection reset");
+            }, (attempt, failure, delay) -> { }));
+        }
+        
+        assertEquals(3, attempts.get());
+        assertEquals(1, policy.getRetries());
+    }
+    
+    @Test
+    public void testBackoffIsCapped() {
+        RetryPolicy policy = new RetryPolicy(10, Duration.ofMillis(100), Duration.ofMillis(300), 0, 10);
+        
+        for (int attempt = 1; attempt <= 8; attempt++) {
+            Duration delay = policy.backoff(attempt);
+            assertTrue(delay.toMillis() >= 0 && delay.toMillis() <= Math.min(300, 100L << (attempt - 1)));
+        }
+    }
+}